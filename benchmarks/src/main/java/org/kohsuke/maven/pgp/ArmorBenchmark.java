@@ -0,0 +1,62 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of ASCII armoring in {@link Signer#sign(java.io.InputStream, java.io.OutputStream)},
+ * compared to just computing the signature.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class ArmorBenchmark {
+    @Param({"RSA2048","RSA4096"})
+    public String keyType;
+
+    @Param({"0","1024","65536"})
+    public int size;
+
+    private Signer signer;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        PGPKeyPair kp = TestKeys.get(keyType);
+        signer = new Signer(kp.getPrivateKey(), kp.getPublicKey());
+        data = new byte[size];
+        new Random(size).nextBytes(data);
+    }
+
+    @Benchmark
+    public Object signature() throws Exception {
+        return signer.sign(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public Object armored() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        signer.sign(new ByteArrayInputStream(data),out);
+        return out;
+    }
+}
@@ -0,0 +1,45 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decrypting the private key in {@link Signer#Signer(PGPSecretKey, char[])},
+ * which is paid once per build.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class KeyExtractionBenchmark {
+    @Param({"RSA2048","RSA4096","DSA2048"})
+    public String keyType;
+
+    private PGPSecretKey secretKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        secretKey = TestKeys.generateSecretKey(keyType,"benchmark <benchmark@example.com>");
+    }
+
+    @Benchmark
+    public Object extract() {
+        return new Signer(secretKey,TestKeys.PASSPHRASE);
+    }
+}
@@ -0,0 +1,97 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.kohsuke.maven.pgp.loaders.KeyFileLoader;
+import org.kohsuke.maven.pgp.loaders.KeyRingLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time it takes for {@link KeyRingLoader} and {@link KeyFileLoader} to find a key,
+ * depending on the number of keys in the file.
+ *
+ * <p>
+ * The key looked up is the last one in the key ring, which is the worst case for a linear scan.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class KeyLoaderBenchmark {
+    @Param({"1","10","100"})
+    public int keys;
+
+    private File keyRing;
+    private File armoredKeyRing;
+    private String id;
+    private long timestamp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        PGPSecretKey[] all = new PGPSecretKey[keys];
+        for (int i=0; i<keys; i++)
+            all[i] = TestKeys.generateSecretKey("RSA2048","Key "+i+" <key"+i+"@example.com>");
+        id = Long.toHexString(all[keys-1].getKeyID());
+
+        keyRing = TestKeys.write(all,false);
+        armoredKeyRing = TestKeys.write(all,true);
+        timestamp = keyRing.lastModified();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        keyRing.delete();
+        armoredKeyRing.delete();
+    }
+
+    /**
+     * Lookup that hits the cached index of the key ring.
+     */
+    @Benchmark
+    public Object keyRing() throws Exception {
+        return new KeyRingLoader().load(null,"keyring="+keyRing+"&id="+id);
+    }
+
+    /**
+     * Lookup right after the key ring was modified, which requires the index to be rebuilt.
+     */
+    @Benchmark
+    public Object keyRingModified() throws Exception {
+        keyRing.setLastModified(timestamp += 1000);
+        return new KeyRingLoader().load(null,"keyring="+keyRing+"&id="+id);
+    }
+
+    /**
+     * Lookup in an ASCII armored key ring, which cannot be indexed.
+     */
+    @Benchmark
+    public Object armoredKeyRing() throws Exception {
+        return new KeyRingLoader().load(null,"keyring="+armoredKeyRing+"&id="+id);
+    }
+
+    /**
+     * {@link KeyFileLoader} only reads the first key, so this doesn't depend on the number of keys.
+     */
+    @Benchmark
+    public Object keyFile() throws Exception {
+        return new KeyFileLoader().load(null,armoredKeyRing.getPath());
+    }
+}
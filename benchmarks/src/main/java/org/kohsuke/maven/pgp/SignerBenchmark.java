@@ -0,0 +1,91 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Signer#sign(File, File)} per hash algorithm, key type, and file size.
+ *
+ * <p>
+ * Divide the size by the score to get the throughput in bytes per millisecond.
+ * EdDSA keys are not covered, as the BouncyCastle version the plugin uses doesn't support them.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class SignerBenchmark {
+    @Param({"SHA1","SHA256","SHA384","SHA512"})
+    public String hashAlgorithm;
+
+    @Param({"RSA2048","RSA4096","DSA2048"})
+    public String keyType;
+
+    @Param({"1024","1048576","67108864"})
+    public int size;
+
+    private Signer signer;
+    private File data;
+    private File signature;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        PGPKeyPair kp = TestKeys.get(keyType);
+        signer = new Signer(kp.getPrivateKey(), kp.getPublicKey(), Signer.parseHashAlgorithm(hashAlgorithm));
+        data = createData(size);
+        signature = File.createTempFile("bench",".asc");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        data.delete();
+        signature.delete();
+    }
+
+    @Benchmark
+    public void sign() throws Exception {
+        signer.sign(data,signature);
+    }
+
+    /**
+     * Creates a temporary file filled with random bytes.
+     */
+    static File createData(long size) throws IOException {
+        File f = File.createTempFile("bench",".bin");
+        Random r = new Random(size);
+        byte[] buf = new byte[64*1024];
+        OutputStream o = new FileOutputStream(f);
+        try {
+            for (long pos=0; pos<size; pos+=buf.length) {
+                r.nextBytes(buf);
+                o.write(buf,0,(int)Math.min(buf.length,size-pos));
+            }
+        } finally {
+            o.close();
+        }
+        return f;
+    }
+}
@@ -0,0 +1,75 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of signing small files with {@link SigningContext}, compared to {@link Signer}.
+ * Run with the GC profiler, and compare "gc.alloc.rate.norm", which is the bytes allocated per signature:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar SigningContextBenchmark -prof gc
+ * </pre>
+ *
+ * What remains with the context is mostly the signature itself, plus the file streams.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class SigningContextBenchmark {
+    @Param({"RSA2048","DSA2048"})
+    public String keyType;
+
+    @Param({"256","4096"})
+    public int size;
+
+    private Signer signer;
+    private SigningContext context;
+    private File data;
+    private File signature;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        PGPKeyPair kp = TestKeys.get(keyType);
+        signer = new Signer(kp.getPrivateKey(), kp.getPublicKey());
+        context = signer.newContext();
+        data = SignerBenchmark.createData(size);
+        signature = File.createTempFile("bench",".asc");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        data.delete();
+        signature.delete();
+    }
+
+    @Benchmark
+    public void signer() throws Exception {
+        signer.sign(data,signature);
+    }
+
+    @Benchmark
+    public void context() throws Exception {
+        context.sign(data,signature,null);
+    }
+}
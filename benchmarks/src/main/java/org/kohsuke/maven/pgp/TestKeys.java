@@ -0,0 +1,86 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSignature;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates throw-away keys for benchmarks.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class TestKeys {
+    private static final Map<String,PGPKeyPair> KEYS = new HashMap<String,PGPKeyPair>();
+
+    /**
+     * @param type
+     *      "RSA2048", "RSA4096", "DSA1024", or "DSA2048".
+     */
+    static synchronized PGPKeyPair get(String type) throws Exception {
+        PGPKeyPair kp = KEYS.get(type);
+        if (kp==null) {
+            KEYS.put(type, kp=generate(type));
+        }
+        return kp;
+    }
+
+    private static PGPKeyPair generate(String type) throws Exception {
+        int bits = Integer.parseInt(type.substring(3));
+        if (type.startsWith("RSA")) {
+            KeyPairGenerator g = KeyPairGenerator.getInstance("RSA", Signer.PROVIDER);
+            g.initialize(bits);
+            return new PGPKeyPair(PGPPublicKey.RSA_GENERAL, g.generateKeyPair(), new Date());
+        }
+        if (type.startsWith("DSA")) {
+            // the JDK provider knows how to generate FIPS 186-3 parameters for bigger keys
+            KeyPairGenerator g = KeyPairGenerator.getInstance("DSA");
+            g.initialize(bits);
+            return new PGPKeyPair(PGPPublicKey.DSA, g.generateKeyPair(), new Date());
+        }
+        throw new IllegalArgumentException("Unknown key type: "+type);
+    }
+
+    /**
+     * Generates a new passphrase protected secret key.
+     */
+    static PGPSecretKey generateSecretKey(String type, String userId) throws Exception {
+        return new PGPSecretKey(PGPSignature.DEFAULT_CERTIFICATION, generate(type), userId,
+                SymmetricKeyAlgorithmTags.CAST5, PASSPHRASE, true, null, null, new SecureRandom(), Signer.PROVIDER);
+    }
+
+    /**
+     * Writes the given keys into a file, either as a binary key ring like "secring.gpg",
+     * or ASCII armored like the output of "gpg --export-secret-keys --armor".
+     */
+    static File write(PGPSecretKey[] keys, boolean armor) throws IOException {
+        File f = File.createTempFile("bench", armor ? ".asc" : ".gpg");
+        OutputStream o = new BufferedOutputStream(new FileOutputStream(f));
+        if (armor)
+            o = new ArmoredOutputStream(o);
+        try {
+            for (PGPSecretKey k : keys)
+                o.write(k.getEncoded());
+        } finally {
+            o.close();
+        }
+        return f;
+    }
+
+    static final char[] PASSPHRASE = "benchmark".toCharArray();
+
+    private TestKeys() {}
+}
@@ -0,0 +1,66 @@
+package org.kohsuke.maven.pgp;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Waits for the signatures that the "sign" goal is generating in the background with "pgp.async",
+ * and fails the build if the signing failed.
+ *
+ * <p>
+ * Bind this goal to a phase before the signatures are installed or deployed.
+ *
+ * @goal await
+ * @phase verify
+ * @author Kohsuke Kawaguchi
+ */
+public class AwaitMojo extends AbstractMojo {
+    /**
+     * @parameter default-value="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+
+    /**
+     * @component
+     * @required
+     * @readonly
+     */
+    private SigningSession session;
+
+    /**
+     * @parameter default-value="${reactorProjects}"
+     * @required
+     * @readonly
+     */
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * @parameter default-value="${session}"
+     * @required
+     * @readonly
+     */
+    private MavenSession mavenSession;
+
+    public void execute() throws MojoExecutionException {
+        try {
+            Future<?> f = session.take(project);
+            if (f==null) {
+                getLog().debug("Nothing is being signed in the background");
+                return;
+            }
+            if (!f.isDone())
+                getLog().info("Waiting for the signatures to be generated");
+            PgpMojo.get(f);
+        } finally {
+            if (PgpMojo.isEndOfBuild(session,mavenSession,reactorProjects,project))
+                session.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.kohsuke.maven.pgp;
+
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Computes the checksums that Maven repositories keep next to each file, such as "foo.jar.sha1",
+ * from the data that's being signed, so that the file doesn't have to be read again for them.
+ *
+ * <p>
+ * This is an {@link OutputStream} to be given to {@link Signer} as the tee. One instance is for one file.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class Checksums extends OutputStream {
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    /**
+     * True once the data is written, as opposed to the signature reused without reading the file.
+     */
+    private boolean fed;
+
+    /**
+     * @param algorithms
+     *      Checksum algorithms, as returned from {@link #parse(String)}.
+     */
+    Checksums(String[] algorithms) {
+        this.algorithms = algorithms;
+        this.digests = new MessageDigest[algorithms.length];
+        for (int i=0; i<algorithms.length; i++)
+            digests[i] = newDigest(algorithms[i]);
+    }
+
+    @Override
+    public void write(int b) {
+        fed = true;
+        for (MessageDigest md : digests)
+            md.update((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        fed = true;
+        for (MessageDigest md : digests)
+            md.update(b,off,len);
+    }
+
+    /**
+     * Writes the checksums of the file as "NAME.ALGORITHM" files in the given directory,
+     * reading the file only if the data wasn't written to this stream already.
+     * Checksum files that are already up to date are left untouched, to keep their timestamps.
+     */
+    void write(File file, File dir) throws IOException {
+        if (!fed)
+            Signer.copy(file,this);
+
+        for (int i=0; i<algorithms.length; i++) {
+            String sum = new String(Hex.encode(digests[i].digest()));
+            File f = fileOf(file.getName(),dir,algorithms[i]);
+            if (!f.exists() || !FileUtils.readFileToString(f,"US-ASCII").trim().equals(sum))
+                FileUtils.writeStringToFile(f,sum,"US-ASCII");
+        }
+    }
+
+    static File fileOf(String name, File dir, String algorithm) {
+        return new File(dir,name+'.'+algorithm);
+    }
+
+    /**
+     * Parses a comma separated list of checksum algorithms, such as "md5,sha1".
+     *
+     * @return
+     *      The algorithms in lower case, which is also the extension of the checksum files.
+     */
+    static String[] parse(String spec) {
+        List<String> r = new ArrayList<String>();
+        if (spec!=null) {
+            for (String s : spec.split(",")) {
+                s = s.trim().replace("-","").toLowerCase(Locale.ENGLISH);
+                if (s.length()==0)  continue;
+                newDigest(s);   // validate
+                r.add(s);
+            }
+        }
+        return r.toArray(new String[r.size()]);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        String name;
+        if (algorithm.equals("md5"))            name = "MD5";
+        else if (algorithm.equals("sha1"))      name = "SHA-1";
+        else if (algorithm.equals("sha256"))    name = "SHA-256";
+        else if (algorithm.equals("sha512"))    name = "SHA-512";
+        else
+            throw new IllegalArgumentException("Unsupported checksum algorithm: "+algorithm+". Valid values are md5, sha1, sha256, and sha512");
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every JRE has them
+        }
+    }
+}
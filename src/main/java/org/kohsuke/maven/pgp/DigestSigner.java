@@ -0,0 +1,47 @@
+package org.kohsuke.maven.pgp;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Performs the private key operation of signing on a digest computed by {@link Signer},
+ * for private keys that don't live in this JVM, such as ones in GPG agent.
+ *
+ * <p>
+ * Implementations need to be thread-safe, as multiple artifacts are signed concurrently.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see SignerLoader
+ */
+public abstract class DigestSigner {
+    /**
+     * Signs the digest.
+     *
+     * @return
+     *      The signature value, which is one integer "s" for RSA, and two integers "r" and "s" for DSA.
+     *      See {@link PendingSignature#complete(BigInteger...)}.
+     */
+    public abstract BigInteger[] sign(PendingSignature signature) throws IOException, GeneralSecurityException;
+
+    /**
+     * Creates the digest that documents are hashed with before they are signed by this signer.
+     * Signers that hand the digest to another process return {@link ResumableDigest}, so that
+     * {@link PendingSignature#getDocumentState()} is available.
+     *
+     * @param hashAlgorithm
+     *      One of the hash algorithm constants in {@link org.bouncycastle.openpgp.PGPUtil}.
+     */
+    public MessageDigest newDigest(int hashAlgorithm) throws NoSuchAlgorithmException {
+        return PendingSignature.newDigest(hashAlgorithm);
+    }
+
+    /**
+     * Releases the private key and the resources held for it, at the end of the build.
+     * The signer is not used after this method is called.
+     */
+    public void close() {
+    }
+}
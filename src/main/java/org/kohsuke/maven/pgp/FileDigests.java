@@ -0,0 +1,178 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers SHA-256 digests of files, so that files that haven't changed
+ * (judging from their timestamp and size) do not have to be read again.
+ *
+ * <p>
+ * The index is kept in a text file, one file per line. This class is thread-safe, and builds that share
+ * the index merge their updates into it under a file lock, instead of overwriting each other's.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class FileDigests {
+    private final File index;
+    private final Map<String,Entry> entries = new HashMap<String,Entry>();
+    /**
+     * Paths whose entries are updated by us and need to be written back.
+     */
+    private final Set<String> updated = new HashSet<String>();
+
+    private static final class Entry {
+        final long timestamp;
+        final long size;
+        final String digest;
+
+        Entry(long timestamp, long size, String digest) {
+            this.timestamp = timestamp;
+            this.size = size;
+            this.digest = digest;
+        }
+
+        boolean matches(File f) {
+            return f.lastModified()==timestamp && f.length()==size;
+        }
+    }
+
+    FileDigests(File index) throws IOException {
+        this.index = index;
+        load(entries);
+    }
+
+    private void load(Map<String,Entry> entries) throws IOException {
+        if (!index.exists())    return;
+
+        BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(index),"UTF-8"));
+        try {
+            String line;
+            while ((line=r.readLine())!=null) {
+                // timestamp size digest path
+                String[] tokens = line.split(" ",4);
+                if (tokens.length!=4)   continue;   // corrupted
+                try {
+                    entries.put(tokens[3], new Entry(Long.parseLong(tokens[0]),Long.parseLong(tokens[1]),tokens[2]));
+                } catch (NumberFormatException e) {
+                    // corrupted. ignore
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Returns the digest of the file, if it's known and the file hasn't changed since.
+     */
+    synchronized String get(File f) {
+        Entry e = entries.get(f.getAbsolutePath());
+        if (e!=null && e.matches(f))
+            return e.digest;
+        return null;
+    }
+
+    /**
+     * Records the digest of the file computed elsewhere.
+     *
+     * @param timestamp
+     *      Timestamp of the file before it was read to compute the digest.
+     */
+    synchronized void put(File f, long timestamp, long size, String digest) {
+        String path = f.getAbsolutePath();
+        entries.put(path, new Entry(timestamp,size,digest));
+        updated.add(path);
+    }
+
+    /**
+     * Writes back the index, dropping files that no longer exist.
+     *
+     * <p>
+     * The index is read again under the lock, so that the entries recorded by other builds
+     * since we read it are kept, and only the entries that we updated are overwritten.
+     */
+    synchronized void save() throws IOException {
+        if (updated.isEmpty())  return;
+
+        index.getParentFile().mkdirs();
+        RandomAccessFile lock = new RandomAccessFile(new File(index.getPath()+".lock"),"rw");
+        try {
+            lock.getChannel().lock();
+
+            Map<String,Entry> current = new HashMap<String,Entry>();
+            load(current);
+            for (String path : updated)
+                current.put(path,entries.get(path));
+
+            File tmp = new File(index.getPath()+".tmp");
+            PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp),"UTF-8"));
+            try {
+                for (Map.Entry<String,Entry> e : current.entrySet()) {
+                    if (!new File(e.getKey()).exists())
+                        continue;
+                    Entry v = e.getValue();
+                    w.println(v.timestamp+" "+v.size+" "+v.digest+" "+e.getKey());
+                }
+            } finally {
+                w.close();
+            }
+            index.delete();
+            if (!tmp.renameTo(index))
+                throw new IOException("Failed to update "+index);
+            updated.clear();
+        } finally {
+            lock.close();   // releases the lock
+        }
+    }
+
+    /**
+     * Computes the SHA-256 digest of the file in hex.
+     */
+    static String compute(File f) throws IOException {
+        MessageDigest md = newDigest();
+        Signer.copy(f, sink(md));
+        return new String(Hex.encode(md.digest()));
+    }
+
+    /**
+     * {@link OutputStream} that feeds the digest.
+     */
+    static OutputStream sink(final MessageDigest md) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                md.update((byte)b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                md.update(b,off,len);
+            }
+        };
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every JRE has SHA-256
+        }
+    }
+}
@@ -21,7 +21,8 @@ public abstract class PassphraseLoader {
      * @param mojo
      *      Mojo that's driving the execution.
      * @param secretKey
-     *      The key for which the pass-phrase is retrieved.
+     *      The key for which the pass-phrase is retrieved. Null if the pass-phrase isn't for an OpenPGP key,
+     *      such as the PIN of a PKCS#11 token.
      * @param specifier
      *      The pass phrase loader parameter specified to {@link PgpMojo}, except the first scheme part.
      *      If the loader needs to take additional parameters, it should do so from this string.
@@ -30,4 +31,28 @@ public abstract class PassphraseLoader {
      *      the passphrase.
      */
     public abstract String load(PgpMojo mojo, PGPSecretKey secretKey, String specifier) throws IOException, MojoExecutionException;
+
+    /**
+     * Obtains the pass-phrase that the validator accepts.
+     *
+     * <p>
+     * By default, the pass-phrase is checked once. Loaders that can ask again, such as GPG agent,
+     * should override this method to do so when the pass-phrase is incorrect.
+     *
+     * @param validator
+     *      Checks the pass-phrase, or null if the secret key can check it by itself.
+     */
+    public String load(PgpMojo mojo, PGPSecretKey secretKey, String specifier, PassphraseValidator validator) throws IOException, MojoExecutionException {
+        String phrase = load(mojo,secretKey,specifier);
+        if (validator!=null && !validator.isValid(phrase.toCharArray()))
+            throw new MojoExecutionException("Passphrase is incorrect");
+        return phrase;
+    }
+
+    /**
+     * Forgets the pass-phrase that turned out to be incorrect, such as the PIN that the PKCS#11 token rejected,
+     * so that it isn't given out again. By default there's nothing to forget.
+     */
+    public void forget(PgpMojo mojo, PGPSecretKey secretKey, String specifier) throws IOException {
+    }
 }
@@ -0,0 +1,20 @@
+package org.kohsuke.maven.pgp;
+
+import java.io.IOException;
+
+/**
+ * Checks a pass-phrase against what it's supposed to unlock, for keys that
+ * {@link org.bouncycastle.openpgp.PGPSecretKey#extractPrivateKey} can't check, such as those kept by GPG agent.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see PassphraseLoader#load(PgpMojo, org.bouncycastle.openpgp.PGPSecretKey, String, PassphraseValidator)
+ */
+public interface PassphraseValidator {
+    /**
+     * @return
+     *      false if the pass-phrase is incorrect.
+     * @throws IOException
+     *      if the pass-phrase can't be checked for other reasons.
+     */
+    boolean isValid(char[] passphrase) throws IOException;
+}
@@ -0,0 +1,201 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.bcpg.MPInteger;
+import org.bouncycastle.bcpg.SignaturePacket;
+import org.bouncycastle.bcpg.SignatureSubpacket;
+import org.bouncycastle.bcpg.sig.IssuerKeyID;
+import org.bouncycastle.bcpg.sig.SignatureCreationTime;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPObjectFactory;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/**
+ * A signature whose digest is computed but which is not signed yet.
+ *
+ * <p>
+ * This is what {@link Signer} hands to a {@link DigestSigner}: the digest covers the document
+ * as well as the hashed portion of the signature packet (the version 4 signature "trailer"),
+ * so all that remains is the public key operation, after which {@link #complete(BigInteger...)}
+ * assembles the OpenPGP signature packet.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class PendingSignature {
+    private final long keyID;
+    private final int keyAlgorithm;
+    private final int hashAlgorithm;
+    private final Date creationTime;
+    private final byte[] digest;
+    /**
+     * State of the digest of the document alone, before the signature trailer. Null if unknown.
+     */
+    private final byte[] documentState;
+
+    public PendingSignature(long keyID, int keyAlgorithm, int hashAlgorithm, Date creationTime, byte[] digest) {
+        this(keyID,keyAlgorithm,hashAlgorithm,creationTime,digest,null);
+    }
+
+    private PendingSignature(long keyID, int keyAlgorithm, int hashAlgorithm, Date creationTime, byte[] digest, byte[] documentState) {
+        this.keyID = keyID;
+        this.keyAlgorithm = keyAlgorithm;
+        this.hashAlgorithm = hashAlgorithm;
+        this.creationTime = creationTime;
+        this.digest = digest;
+        this.documentState = documentState;
+    }
+
+    /**
+     * Finishes the digest of a document to be signed.
+     *
+     * <p>
+     * This hashes the trailer of a binary document signature, which consists of the creation time and
+     * the key and hash algorithms. The signing daemon also builds the trailer only through this method,
+     * so that it signs nothing but binary document signatures.
+     *
+     * @param md
+     *      The digest that the document has been fed to. If it's {@link ResumableDigest},
+     *      its state before the trailer is kept as {@link #getDocumentState()}.
+     * @param creationTime
+     *      Signature creation time. Only the precision to the second is retained.
+     */
+    public static PendingSignature create(long keyID, int keyAlgorithm, int hashAlgorithm, MessageDigest md, Date creationTime) throws IOException {
+        creationTime = new Date(creationTime.getTime()/1000*1000);
+        byte[] documentState = md instanceof ResumableDigest ? ((ResumableDigest)md).getState() : null;
+
+        ByteArrayOutputStream hashed = new ByteArrayOutputStream();
+        hashed.write(4);    // version
+        hashed.write(PGPSignature.BINARY_DOCUMENT);
+        hashed.write(keyAlgorithm);
+        hashed.write(hashAlgorithm);
+
+        ByteArrayOutputStream subpackets = new ByteArrayOutputStream();
+        for (SignatureSubpacket p : hashedSubpackets(creationTime))
+            p.encode(subpackets);
+        hashed.write(subpackets.size()>>8);
+        hashed.write(subpackets.size());
+        subpackets.writeTo(hashed);
+
+        byte[] h = hashed.toByteArray();
+        md.update(h);
+        md.update(new byte[]{4, (byte)0xFF, (byte)(h.length>>24), (byte)(h.length>>16), (byte)(h.length>>8), (byte)h.length});
+
+        return new PendingSignature(keyID,keyAlgorithm,hashAlgorithm,creationTime,md.digest(),documentState);
+    }
+
+    private static SignatureSubpacket[] hashedSubpackets(Date creationTime) {
+        return new SignatureSubpacket[]{new SignatureCreationTime(false,creationTime)};
+    }
+
+    public long getKeyID() {
+        return keyID;
+    }
+
+    /**
+     * One of the public key algorithm constants, such as {@link org.bouncycastle.openpgp.PGPPublicKey#RSA_GENERAL}.
+     */
+    public int getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * One of the hash algorithm constants in {@link PGPUtil}. These happen to be the same numbers
+     * that libgcrypt and therefore GPG agent use.
+     */
+    public int getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * The digest to be signed.
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * The DER encoded DigestInfo of the digest, which is what gets padded and signed for RSA signatures.
+     */
+    public byte[] getDigestInfo() {
+        byte[] prefix = Hex.decode(digestInfoPrefix(hashAlgorithm));
+        byte[] r = new byte[prefix.length+digest.length];
+        System.arraycopy(prefix,0,r,0,prefix.length);
+        System.arraycopy(digest,0,r,prefix.length,digest.length);
+        return r;
+    }
+
+    /**
+     * State of the digest of the document before the signature trailer, as in {@link ResumableDigest#getState()}.
+     *
+     * @return
+     *      null unless the document was hashed with {@link ResumableDigest}.
+     */
+    public byte[] getDocumentState() {
+        return documentState;
+    }
+
+    /**
+     * Assembles the signature packet from the result of the public key operation.
+     *
+     * @param values
+     *      The signature value, which is one integer "s" for RSA, and two integers "r" and "s" for DSA.
+     */
+    public PGPSignature complete(BigInteger... values) throws IOException, PGPException {
+        MPInteger[] mpi = new MPInteger[values.length];
+        for (int i=0; i<values.length; i++)
+            mpi[i] = new MPInteger(values[i]);
+
+        SignaturePacket p = new SignaturePacket(PGPSignature.BINARY_DOCUMENT, keyID, keyAlgorithm, hashAlgorithm,
+                hashedSubpackets(creationTime), new SignatureSubpacket[]{new IssuerKeyID(false,keyID)},
+                new byte[]{digest[0],digest[1]}, mpi);
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        BCPGOutputStream out = new BCPGOutputStream(buf);
+        out.writePacket(p);
+        out.close();
+
+        Object o = new PGPObjectFactory(buf.toByteArray()).nextObject();
+        if (!(o instanceof PGPSignatureList))
+            throw new PGPException("Failed to assemble a signature packet: "+o);
+        return ((PGPSignatureList)o).get(0);
+    }
+
+    /**
+     * Creates a new {@link MessageDigest} for the given OpenPGP hash algorithm.
+     */
+    static MessageDigest newDigest(int hashAlgorithm) throws NoSuchAlgorithmException {
+        switch (hashAlgorithm) {
+        case PGPUtil.SHA1:      return MessageDigest.getInstance("SHA-1");
+        case PGPUtil.SHA224:    return MessageDigest.getInstance("SHA-224",Signer.PROVIDER);
+        case PGPUtil.SHA256:    return MessageDigest.getInstance("SHA-256");
+        case PGPUtil.SHA384:    return MessageDigest.getInstance("SHA-384");
+        case PGPUtil.SHA512:    return MessageDigest.getInstance("SHA-512");
+        default:                throw new NoSuchAlgorithmException("Unsupported hash algorithm: "+hashAlgorithm);
+        }
+    }
+
+    private static String digestInfoPrefix(int hashAlgorithm) {
+        switch (hashAlgorithm) {
+        case PGPUtil.SHA1:      return "3021300906052b0e03021a05000414";
+        case PGPUtil.SHA224:    return "302d300d06096086480165030402040500041c";
+        case PGPUtil.SHA256:    return "3031300d060960864801650304020105000420";
+        case PGPUtil.SHA384:    return "3041300d060960864801650304020205000430";
+        case PGPUtil.SHA512:    return "3051300d060960864801650304020305000440";
+        default:                throw new IllegalArgumentException("Unsupported hash algorithm: "+hashAlgorithm);
+        }
+    }
+}
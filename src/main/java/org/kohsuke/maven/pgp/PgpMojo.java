@@ -20,12 +20,18 @@ import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.artifact.handler.DefaultArtifactHandler;
 import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.util.encoders.Hex;
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.util.FileUtils;
@@ -33,8 +39,16 @@ import org.codehaus.plexus.util.FileUtils;
 import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Signs the artifacts.
@@ -58,6 +72,79 @@ public class PgpMojo extends AbstractMojo
      */
     public String passphrase;
 
+    /**
+     * String that indicates how to sign with a private key that's kept outside Maven,
+     * such as "gpg-agent:". When this is set, only the public key is loaded from {@link #secretkey},
+     * and {@link #passphrase} is not used.
+     *
+     * @parameter expression="${pgp.signer}" alias="signer"
+     */
+    public String signerSpec;
+
+    /**
+     * Signs with multiple keys instead of {@link #secretkey}, {@link #passphrase}, and {@link #signerSpec}.
+     * Each artifact is read once, and the signatures of all the keys go into its ".asc" file.
+     *
+     * <pre>
+     * &lt;keys>
+     *   &lt;signingKey>
+     *     &lt;secretkey>keyring:id=F0D853AA&lt;/secretkey>
+     *     &lt;passphrase>gpg-agent:&lt;/passphrase>
+     *   &lt;/signingKey>
+     *   ...
+     * &lt;/keys>
+     * </pre>
+     *
+     * @parameter
+     */
+    private List<SigningKey> keys;
+
+    /**
+     * {@link #secretkey}, {@link #passphrase}, and {@link #signerSpec} as one key.
+     *
+     * @see #getSigningKey()
+     */
+    private SigningKey signingKey;
+
+    /**
+     * Form of the signatures. "armored" for ASCII armored "*.asc" files, "binary" for "*.sig" files,
+     * or "both" to generate each signature once and write it in both forms.
+     *
+     * @parameter expression="${pgp.signatureFormat}" default-value="armored"
+     */
+    private String signatureFormat;
+
+    private boolean armored, binary;
+
+    /**
+     * Comma separated checksum algorithms, out of md5, sha1, sha256, and sha512. The checksums of each artifact
+     * are computed while it's read for signing, written as "*.sha1" and so on next to the signatures,
+     * and attached, so that the artifact doesn't have to be read again for them.
+     *
+     * @parameter expression="${pgp.checksums}"
+     */
+    private String checksums;
+
+    private String[] checksumAlgorithms = new String[0];
+
+    /**
+     * Also sign the checksum files generated by {@link #checksums}.
+     *
+     * @parameter expression="${pgp.signChecksums}" default-value="false"
+     */
+    private boolean signChecksums;
+
+    /**
+     * Signs in the background and lets the build continue. The signatures are attached right away,
+     * and the "await" goal waits for them to be written. Bind this goal to an earlier phase, such as "package",
+     * and the "await" goal at the end of the "verify" phase, so that signing overlaps with integration tests
+     * and other plugins. The build fails if the project has no "await" execution, and, with the plugin
+     * as a build extension, if the build ends without running it.
+     *
+     * @parameter expression="${pgp.async}" default-value="false"
+     */
+    private boolean async;
+
     /**
      * Skip the PGP signing.
      *
@@ -65,6 +152,70 @@ public class PgpMojo extends AbstractMojo
      */
     private boolean skip;
 
+    /**
+     * Hash algorithm of the signature. One of SHA1, SHA224, SHA256, SHA384, and SHA512.
+     * SHA512 is often the fastest on 64bit CPUs.
+     *
+     * @parameter expression="${pgp.hashAlgorithm}" default-value="SHA256"
+     */
+    private String hashAlgorithm;
+
+    /**
+     * Signature creation time, to make the signatures reproducible. Either seconds since the epoch,
+     * or ISO 8601 like "2020-01-01T00:00:00Z", the same as "project.build.outputTimestamp" that it defaults to.
+     * If that's not set either, the SOURCE_DATE_EPOCH environment variable is used, and otherwise the current time.
+     * With a fixed creation time, signing the same file again with an RSA key, or a DSA key in this JVM,
+     * produces a byte-identical signature.
+     *
+     * @parameter expression="${pgp.outputTimestamp}" default-value="${project.build.outputTimestamp}"
+     */
+    private String outputTimestamp;
+
+    /**
+     * Number of threads to sign artifacts with.
+     * Defaults to the number of processors. Specify 1 to sign artifacts one by one.
+     *
+     * @parameter expression="${pgp.threads}"
+     */
+    private int threads;
+
+    /**
+     * Directory to cache signatures in, so that files whose contents haven't changed
+     * since the last build are not signed again. Caching is off unless this is specified.
+     * The directory can be shared between projects, such as "~/.m2/pgp-signatures".
+     *
+     * @parameter expression="${pgp.cacheDirectory}"
+     */
+    private File cacheDirectory;
+
+    /**
+     * Maximum number of signatures kept in {@link #cacheDirectory}.
+     *
+     * @parameter expression="${pgp.cacheSize}" default-value="10000"
+     */
+    private int cacheSize;
+
+    private SignatureCache cache;
+
+    /**
+     * Keeps the existing signature of an artifact if it's newer than the artifact and still valid,
+     * instead of signing it again. Useful for repeated "mvn install" of large reactors, where most artifacts
+     * haven't changed since the last build.
+     *
+     * @parameter expression="${pgp.incremental}" default-value="false"
+     */
+    private boolean incremental;
+
+    /**
+     * Records the time spent in each phase of signing, and reports it as a table in the log,
+     * as well as "pgp-signing-metrics.json" and "pgp-signing-metrics.csv" in the output directory.
+     *
+     * @parameter expression="${pgp.metrics}" default-value="false"
+     */
+    private boolean metrics;
+
+    private SigningMetrics signingMetrics;
+
     /**
      *
      * 
@@ -89,6 +240,27 @@ public class PgpMojo extends AbstractMojo
      */
     public PlexusContainer container;
 
+    /**
+     * @component
+     * @required
+     * @readonly
+     */
+    private SigningSession session;
+
+    /**
+     * @parameter default-value="${reactorProjects}"
+     * @required
+     * @readonly
+     */
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * @parameter default-value="${session}"
+     * @required
+     * @readonly
+     */
+    private MavenSession mavenSession;
+
     /**
      *
      * @parameter default-value="${project.build.directory}"
@@ -99,20 +271,189 @@ public class PgpMojo extends AbstractMojo
     public void execute() throws MojoExecutionException {
         if (skip)   return;
 
+        boolean background = false;
+
         // capture the attached artifacts to sign before we start attaching our own stuff
         List<Artifact> attached = new ArrayList<Artifact>((List<Artifact>)project.getAttachedArtifacts());
 
-        PGPSecretKey secretKey = loadSecretKey();
-        Signer signer = new Signer(secretKey,loadPassPhrase(secretKey).toCharArray());
+        if (metrics)
+            signingMetrics = new SigningMetrics();
+
+        try {
+            int hash;
+            try {
+                hash = Signer.parseHashAlgorithm(hashAlgorithm);
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(e.getMessage(),e);
+            }
+            armored = signatureFormat==null || signatureFormat.equals("armored") || signatureFormat.equals("both");
+            binary = signatureFormat!=null && (signatureFormat.equals("binary") || signatureFormat.equals("both"));
+            if (!armored && !binary)
+                throw new MojoExecutionException("Invalid signature format: "+signatureFormat+". Valid values are armored, binary, and both");
+            try {
+                checksumAlgorithms = Checksums.parse(checksums);
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(e.getMessage(),e);
+            }
+            Date creationTime;
+            try {
+                creationTime = Signer.parseCreationTime(outputTimestamp);
+                if (creationTime==null && outputTimestamp==null)
+                    creationTime = Signer.parseCreationTime(System.getenv("SOURCE_DATE_EPOCH"));
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(e.getMessage(),e);
+            }
+            final Signer signer = getSigner().withHashAlgorithm(hash).withCreationTime(creationTime);
+            final List<Artifact> artifacts = listArtifacts(attached);
+
+            if (async) {
+                if (!hasAwait())
+                    throw new MojoExecutionException("pgp.async needs the \"await\" goal of this plugin bound to a later phase of "
+                            +project.getId()+", or the build would go on while the signatures are only partially written");
+                for (Artifact a : artifacts)
+                    attach(a,signatureOf(a));   // the files will be there by the time "await" returns
+                session.submit(project, new Callable<Void>() {
+                    public Void call() throws Exception {
+                        try {
+                            signAll(signer,artifacts,false);
+                            reportMetrics();
+                        } finally {
+                            signingMetrics = null;
+                        }
+                        return null;
+                    }
+                });
+                background = true;
+                return;
+            }
+
+            signAll(signer,artifacts,true);
+            reportMetrics();
+        } finally {
+            if (!background)
+                signingMetrics = null;
+            if (!async && isEndOfBuild(session,mavenSession,reactorProjects,project))
+                session.close();
+        }
+    }
+
+    /**
+     * Checks if the "await" goal is going to run for this project, either by an execution in the POM,
+     * or from the command line.
+     */
+    private boolean hasAwait() {
+        for (Plugin p : (List<Plugin>)project.getBuildPlugins()) {
+            if (!p.getArtifactId().equals(ARTIFACT_ID))
+                continue;
+            for (PluginExecution e : (List<PluginExecution>)p.getExecutions())
+                if (e.getGoals().contains("await"))
+                    return true;
+        }
+        if (mavenSession!=null) {
+            for (String g : (List<String>)mavenSession.getGoals())
+                if (g.endsWith(":await"))
+                    return true;
+        }
+        return false;
+    }
+
+    /**
+     * Guesses if the build ends after this module, for when {@link SigningSessionParticipant} isn't there to tell.
+     * That's when the last module runs in a sequential build. In a parallel build, the last module
+     * can finish before others, so we never know.
+     */
+    static boolean isEndOfBuild(SigningSession session, MavenSession mavenSession, List<MavenProject> reactorProjects, MavenProject project) {
+        if (session.isManaged())
+            return false;
+        if (mavenSession!=null) {
+            try {
+                if (mavenSession.isParallel())
+                    return false;
+            } catch (NoSuchMethodError e) {
+                // Maven 2 doesn't build in parallel
+            }
+        }
+        return project==reactorProjects.get(reactorProjects.size()-1);
+    }
+
+    private void reportMetrics() {
+        if (signingMetrics!=null) {
+            signingMetrics.report(getLog());
+            try {
+                signingMetrics.write(outputDirectory);
+            } catch (IOException e) {
+                getLog().warn("Failed to write the signing metrics",e);
+            }
+        }
+    }
+
+    /**
+     * Loads and unlocks the keys.
+     */
+    private Signer getSigner() throws MojoExecutionException {
+        if (keys==null || keys.isEmpty())
+            return getSigner(getSigningKey());
+
+        Signer s = null;
+        for (SigningKey k : keys) {
+            Signer t = getSigner(k);
+            s = s==null ? t : s.and(t);
+        }
+        return s;
+    }
+
+    /**
+     * Loads and unlocks one key, unless it's already done by an earlier module in the same build.
+     */
+    private Signer getSigner(SigningKey k) throws MojoExecutionException {
+        String key = k.secretkey+'\n'+k.passphrase+'\n'+k.signer;
+        Signer s = session.get(reactorProjects,key);
+        if (s==null && k.signer!=null) {
+            long start = System.nanoTime();
+            PGPPublicKey publicKey = loadSignerPublicKey(k);
+            if (signingMetrics!=null)
+                signingMetrics.keyLoad += System.nanoTime()-start;
+            s = new Signer(publicKey,loadSigner(k,publicKey),PGPUtil.SHA256);
+            session.put(key,s);
+        }
+        if (s==null) {
+            long start = System.nanoTime();
+            PGPSecretKey secretKey = loadSecretKey(k);
+            long loaded = System.nanoTime();
+            char[] pass = loadPassPhrase(k,secretKey).toCharArray();
+            long unlocked = System.nanoTime();
+            try {
+                s = new Signer(secretKey,pass);
+            } finally {
+                Arrays.fill(pass,'\0');
+            }
+            session.put(key,s);
+
+            if (signingMetrics!=null) {
+                signingMetrics.keyLoad += loaded-start;
+                signingMetrics.passphrase += unlocked-loaded;
+                signingMetrics.extraction += System.nanoTime()-unlocked;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Lists the artifacts to sign, which are the main artifact, the POM, and the given attached artifacts.
+     */
+    private List<Artifact> listArtifacts(List<Artifact> attached) throws MojoExecutionException {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
 
         if ( !"pom".equals( project.getPackaging() ) )
-            sign(signer,project.getArtifact());
+            artifacts.add(project.getArtifact());
 
         {// sign POM
             File pomToSign = new File( project.getBuild().getDirectory(), project.getBuild().getFinalName() + ".pom" );
 
             try {
-                FileUtils.copyFile(project.getFile(), pomToSign);
+                // in the incremental mode, leave an up-to-date copy alone so that the signature stays newer
+                if (!incremental || pomToSign.lastModified()<project.getFile().lastModified())
+                    FileUtils.copyFile(project.getFile(), pomToSign);
             } catch ( IOException e ) {
                 throw new MojoExecutionException( "Error copying POM for signing.", e );
             }
@@ -125,72 +466,445 @@ public class PgpMojo extends AbstractMojo
                     new DefaultArtifactHandler("pom"));
             a.setFile(pomToSign);
 
-            sign(signer,a);
+            artifacts.add(a);
         }
 
-        for (Artifact a : attached)
-            sign(signer,a);
+        artifacts.addAll(attached);
+        return artifacts;
+    }
+
+    /**
+     * Signs all the given artifacts, using {@link #threads} workers,
+     * then attaches the signatures in the order the artifacts are given.
+     */
+    protected void signAll(Signer signer, List<Artifact> artifacts) throws MojoExecutionException {
+        signAll(signer,artifacts,true);
+    }
+
+    /**
+     * @param attach
+     *      False if the signatures are already attached.
+     */
+    private void signAll(Signer signer, List<Artifact> artifacts, boolean attach) throws MojoExecutionException {
+        try {
+            if (cacheDirectory!=null)
+                cache = new SignatureCache(cacheDirectory,cacheSize);
+            signEach(signer,artifacts,attach);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to open the signature cache "+cacheDirectory,e);
+        } finally {
+            if (cache!=null) {
+                try {
+                    cache.close();
+                } catch (IOException e) {
+                    getLog().warn("Failed to update the signature cache "+cacheDirectory,e);
+                }
+                cache = null;
+            }
+        }
+    }
+
+    private void signEach(final Signer signer, List<Artifact> artifacts, boolean attach) throws MojoExecutionException {
+        int n = threads>0 ? threads : Runtime.getRuntime().availableProcessors();
+        n = Math.min(n,artifacts.size());
+
+        if (n<=1) {
+            for (Artifact a : artifacts) {
+                File sig = sign(signer,a);
+                if (attach)
+                    attach(a,sig);
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<File>> signatures = new ArrayList<Future<File>>();
+            for (final Artifact a : artifacts) {
+                signatures.add(pool.submit(new Callable<File>() {
+                    public File call() throws Exception {
+                        return sign(signer,a);
+                    }
+                }));
+            }
+
+            // attachArtifact isn't thread safe, and we want the attached artifact list to be deterministic
+            for (int i=0; i<artifacts.size(); i++) {
+                File sig = get(signatures.get(i));
+                if (attach)
+                    attach(artifacts.get(i),sig);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static <T> T get(Future<T> f) throws MojoExecutionException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            throw new MojoExecutionException("Interrupted while signing",e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof MojoExecutionException)
+                throw (MojoExecutionException)t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            throw new MojoExecutionException("Failed to sign",t);
+        }
+    }
+
+    /**
+     * The key configured by {@link #secretkey}, {@link #passphrase}, and {@link #signerSpec}, which default to
+     * the PGP_SECRETKEY, PGP_PASSPHRASE, and PGP_SIGNER environment variables.
+     * The entries of {@link #keys} don't fall back to the environment variables.
+     */
+    public SigningKey getSigningKey() {
+        if (signingKey==null) {
+            SigningKey k = new SigningKey();
+            k.secretkey = secretkey!=null ? secretkey : System.getenv("PGP_SECRETKEY");
+            k.passphrase = passphrase!=null ? passphrase : System.getenv("PGP_PASSPHRASE");
+            k.signer = signerSpec!=null ? signerSpec : System.getenv("PGP_SIGNER");
+            signingKey = k;
+        }
+        return signingKey;
     }
 
     /**
      * From {@link #secretkey}, load the key pair.
      */
     public PGPSecretKey loadSecretKey() throws MojoExecutionException {
+        return loadSecretKey(getSigningKey());
+    }
+
+    /**
+     * From the secretkey of the given key, load the key pair.
+     */
+    public PGPSecretKey loadSecretKey(SigningKey key) throws MojoExecutionException {
+        SecretKeyLoader kfl = getSecretKeyLoader(key);
+        try {
+            return kfl.load(this, key, key.secretkey.substring(key.secretkey.indexOf(':')+1));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to load key from "+key.secretkey,e);
+        }
+    }
+
+    /**
+     * From {@link #secretkey}, load the public key.
+     */
+    public PGPPublicKey loadPublicKey() throws MojoExecutionException {
+        return loadPublicKey(getSigningKey());
+    }
+
+    /**
+     * From the secretkey of the given key, load the public key.
+     */
+    public PGPPublicKey loadPublicKey(SigningKey key) throws MojoExecutionException {
+        SecretKeyLoader kfl = getSecretKeyLoader(key);
+        try {
+            return kfl.loadPublicKey(this, key.secretkey.substring(key.secretkey.indexOf(':')+1));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to load key from "+key.secretkey,e);
+        }
+    }
+
+    private SecretKeyLoader getSecretKeyLoader(SigningKey key) throws MojoExecutionException {
+        String secretkey = key.secretkey;
         if (secretkey==null)
-            secretkey = System.getenv("PGP_SECRETKEY");
-        if (secretkey==null)
-            throw new MojoExecutionException("No PGP secret key is configured. Either do so in POM, or via -Dpgp.secretkey, or the PGP_SECRETKEY environment variable");
+            throw notConfigured(key,"secret key","secretkey","PGP_SECRETKEY");
 
         int head = secretkey.indexOf(':');
         if (head<0)
             throw new MojoExecutionException("Invalid secret key string. It needs to start with a scheme like 'FOO:': "+secretkey);
 
-        String scheme = secretkey.substring(0, head);
+        return lookup(SecretKeyLoader.class, secretkey.substring(0, head), "secret key");
+    }
+
+    /**
+     * From {@link #signerSpec}, load the public key of the key that it signs with.
+     * Unless the signer knows the key by itself, it's loaded from {@link #secretkey}.
+     */
+    public PGPPublicKey loadSignerPublicKey() throws MojoExecutionException {
+        return loadSignerPublicKey(getSigningKey());
+    }
+
+    /**
+     * From the signer of the given key, load the public key of the key that it signs with.
+     * Unless the signer knows the key by itself, it's loaded from its secretkey.
+     */
+    public PGPPublicKey loadSignerPublicKey(SigningKey key) throws MojoExecutionException {
         try {
-            SecretKeyLoader kfl = (SecretKeyLoader)container.lookup(SecretKeyLoader.class.getName(), scheme);
-            return  kfl.load(this, secretkey.substring(head+1));
-        } catch (ComponentLookupException e) {
-            throw new MojoExecutionException("Invalid secret key scheme '"+scheme+"'. If this is your custom scheme, perhaps you forgot to specify it in <dependency> to this plugin?",e);
-         } catch (IOException e) {
-            throw new MojoExecutionException("Failed to load key from "+secretkey,e);
+            PGPPublicKey k = getSignerLoader(key).loadPublicKey(this, key.signer.substring(key.signer.indexOf(':')+1));
+            return k!=null ? k : loadPublicKey(key);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to load the public key from "+key.signer,e);
         }
     }
 
+    /**
+     * From {@link #signerSpec}, load the signer that signs with the given key.
+     */
+    public DigestSigner loadSigner(PGPPublicKey publicKey) throws MojoExecutionException {
+        return loadSigner(getSigningKey(),publicKey);
+    }
+
+    /**
+     * From the signer of the given key, load the signer that signs with the given public key.
+     */
+    public DigestSigner loadSigner(SigningKey key, PGPPublicKey publicKey) throws MojoExecutionException {
+        try {
+            return getSignerLoader(key).load(this, key, publicKey, key.signer.substring(key.signer.indexOf(':')+1));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to load signer from "+key.signer,e);
+        }
+    }
+
+    private SignerLoader getSignerLoader(SigningKey key) throws MojoExecutionException {
+        String signerSpec = key.signer;
+        int head = signerSpec.indexOf(':');
+        if (head<0)
+            throw new MojoExecutionException("Invalid signer string. It needs to start with a scheme like 'FOO:': "+signerSpec);
+
+        return lookup(SignerLoader.class, signerSpec.substring(0, head), "signer");
+    }
+
     /**
      * From {@link #passphrase}, load the passphrase.
+     *
+     * @param key
+     *      The key that the passphrase unlocks, or null if it's for something else, such as a PKCS#11 token.
      */
     public String loadPassPhrase(PGPSecretKey key) throws MojoExecutionException {
+        return loadPassPhrase(getSigningKey(),key);
+    }
+
+    /**
+     * From the passphrase of the given key, load the passphrase.
+     *
+     * @param secretKey
+     *      The key that the passphrase unlocks, or null if it's for something else, such as a PKCS#11 token.
+     */
+    public String loadPassPhrase(SigningKey key, PGPSecretKey secretKey) throws MojoExecutionException {
+        return loadPassPhrase(key,secretKey,null);
+    }
+
+    /**
+     * From the passphrase of the given key, load the passphrase that the validator accepts.
+     *
+     * @param validator
+     *      Checks the passphrase, for secret keys that can't check it by themselves. Null otherwise.
+     */
+    public String loadPassPhrase(SigningKey key, PGPSecretKey secretKey, PassphraseValidator validator) throws MojoExecutionException {
+        String passphrase = key.passphrase;
         if (passphrase==null)
-            passphrase = System.getenv("PGP_PASSPHRASE");
-        if (passphrase==null)
-            throw new MojoExecutionException("No PGP passphrase is configured. Either do so in POM, or via -Dpgp.passphrase, or the PGP_PASSPHRASE environment variable");
+            throw notConfigured(key,"passphrase","passphrase","PGP_PASSPHRASE");
 
         int head = passphrase.indexOf(':');
         if (head<0)
             throw new MojoExecutionException("Invalid passphrase string. It needs to start with a scheme like 'FOO:': "+passphrase);
 
-        String scheme = passphrase.substring(0, head);
+        PassphraseLoader pfl = lookup(PassphraseLoader.class, passphrase.substring(0, head), "pass phrase");
         try {
-            PassphraseLoader pfl = (PassphraseLoader)container.lookup(PassphraseLoader.class.getName(), scheme);
-            return  pfl.load(this, key, passphrase.substring(head+1));
-        } catch (ComponentLookupException e) {
-            throw new MojoExecutionException("Invalid pass phrase scheme '"+scheme+"'. If this is your custom scheme, perhaps you forgot to specify it in <dependency> to this plugin?",e);
-         } catch (IOException e) {
+            return  pfl.load(this, secretKey, passphrase.substring(head+1), validator);
+        } catch (IOException e) {
             throw new MojoExecutionException("Failed to load passphrase from "+passphrase,e);
         }
     }
 
     /**
-     * Sign and attach the signature to the build.
+     * Tells the passphrase loader that the passphrase it loaded for the given key was incorrect.
+     * This is done on a best-effort basis, as the caller is already failing for that reason.
+     */
+    public void forgetPassPhrase(SigningKey key, PGPSecretKey secretKey) {
+        String passphrase = key.passphrase;
+        int head = passphrase!=null ? passphrase.indexOf(':') : -1;
+        if (head<0)
+            return;
+        try {
+            PassphraseLoader pfl = lookup(PassphraseLoader.class, passphrase.substring(0, head), "pass phrase");
+            pfl.forget(this, secretKey, passphrase.substring(head+1));
+        } catch (MojoExecutionException e) {
+            getLog().warn("Failed to forget the passphrase from "+passphrase,e);
+        } catch (IOException e) {
+            getLog().warn("Failed to forget the passphrase from "+passphrase,e);
+        }
+    }
+
+    private MojoExecutionException notConfigured(SigningKey key, String what, String parameter, String env) {
+        if (key==signingKey)
+            return new MojoExecutionException("No PGP "+what+" is configured. Either do so in POM, or via -Dpgp."+parameter+", or the "+env+" environment variable");
+        else
+            return new MojoExecutionException("No "+parameter+" is configured for one of the keys in <keys>");
+    }
+
+    private <T> T lookup(Class<T> role, String scheme, String what) throws MojoExecutionException {
+        String msg = "Invalid "+what+" scheme '"+scheme+"'. If this is your custom scheme, perhaps you forgot to specify it in <dependency> to this plugin?";
+        try {
+            T t = lookup(role, scheme);
+            if (t==null)
+                throw new MojoExecutionException(msg);
+            return t;
+        } catch (ComponentLookupException e) {
+            throw new MojoExecutionException(msg,e);
+        }
+    }
+
+    /**
+     * Looks up the loader component of the given role and the hint.
+     *
+     * <p>
+     * Overridden when running outside Maven, such as in {@link StandaloneMojo}.
+     *
+     * @return
+     *      null if no such component is found.
+     */
+    protected <T> T lookup(Class<T> role, String hint) throws ComponentLookupException {
+        return role.cast(container.lookup(role.getName(), hint));
+    }
+
+    /**
+     * Sign the artifact and returns the signature file, which is the ".asc" file unless only binary signatures
+     * are generated. In the "both" format, the ".sig" file is next to it.
+     *
+     * <p>
+     * This method may be called concurrently from multiple threads.
+     */
+    protected File sign(Signer signer, Artifact a) throws MojoExecutionException {
+        Checksums sums = checksumAlgorithms.length>0 ? new Checksums(checksumAlgorithms) : null;
+        File signature = signatureOf(a);
+        boolean generated = signOrReuse(signer,a,signature,sums);
+        if (sums!=null)
+            writeChecksums(signer,a,sums);
+        if (armored && binary && !generated) {
+            // the signature was reused rather than generated, so derive the binary form from it
+            File sig = binarySignatureOf(signature);
+            try {
+                Signer.dearmor(signature,sig);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to write "+sig,e);
+            }
+        }
+        return signature;
+    }
+
+    private File binarySignatureOf(File armored) {
+        String path = armored.getPath();
+        return new File(path.substring(0,path.length()-4)+".sig");
+    }
+
+    /**
+     * Where the signature of the artifact goes.
      */
-    protected void sign(Signer signer, Artifact a) throws MojoExecutionException {
+    private File signatureOf(Artifact a) {
+        return new File(outputDirectory,a.getFile().getName() + (armored ? ".asc" : ".sig"));
+    }
+
+    /**
+     * Writes the checksum files of the artifact, and signs them if {@link #signChecksums} is set.
+     */
+    private void writeChecksums(Signer signer, Artifact a, Checksums sums) throws MojoExecutionException {
         File file = a.getFile();
-        String name = file.getName() + ".asc";
+        try {
+            sums.write(file,outputDirectory);
+
+            if (!signChecksums)
+                return;
+            for (String alg : checksumAlgorithms) {
+                File f = Checksums.fileOf(file.getName(),outputDirectory,alg);
+                File asc = new File(f.getPath()+".asc");
+                File sig = new File(f.getPath()+".sig");
+                File primary = armored ? asc : sig;
+                if (incremental && primary.lastModified()>=f.lastModified() && signer.verify(f,primary)) {
+                    if (armored && binary)
+                        Signer.dearmor(asc,sig);
+                    continue;
+                }
+                signer.sign(f, armored ? asc : null, binary ? sig : null, signingMetrics);
+            }
+        } catch (PGPException e) {
+            throw new MojoExecutionException("Failed to sign the checksums of "+file,e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write the checksums of "+file,e);
+        } catch (GeneralSecurityException e) {
+            throw new MojoExecutionException("Failed to sign the checksums of "+file,e);
+        }
+    }
 
-        File signature = new File(outputDirectory,name);
+    /**
+     * Writes the signature of the artifact to the given file, reusing an existing signature if possible.
+     *
+     * @param sums
+     *      If non-null, the file is also fed here if it's read to sign.
+     * @return
+     *      true if the signature was generated, in which case the binary signature is also written in the "both" format.
+     *      false if an existing signature was reused, in which case only the given file is up to date.
+     */
+    private boolean signOrReuse(final Signer signer, Artifact a, final File signature, Checksums sums) throws MojoExecutionException {
+        final File file = a.getFile();
 
         try {
-            signer.sign(a.getFile(),signature);
+            if (SigningOutputStream.isPresigned(signer,file,signature)) {
+                getLog().debug(file+" was already signed when it was written");
+                if (signingMetrics!=null)
+                    signingMetrics.reused(file,"presigned");
+                session.getSignedFiles().add(signer,file,signature);
+                return false;
+            }
+            if (incremental && signature.lastModified()>=file.lastModified() && signer.verify(file,signature)) {
+                getLog().debug("Keeping the existing signature of "+file);
+                if (signingMetrics!=null)
+                    signingMetrics.reused(file,"up-to-date");
+                session.getSignedFiles().add(signer,file,signature);
+                return false;
+            }
+
+            File duplicate = session.getSignedFiles().find(signer,file,signature);
+            if (duplicate!=null) {
+                getLog().debug(file+" is identical to the file signed as "+duplicate);
+                if (!duplicate.equals(signature))
+                    FileUtils.copyFile(duplicate,signature);
+                if (signingMetrics!=null)
+                    signingMetrics.reused(file,"duplicate");
+                return false;
+            }
+
+            if (cache!=null && cache.restore(signer,file,signature)) {
+                getLog().debug("Reusing the cached signature for "+file);
+                if (signingMetrics!=null)
+                    signingMetrics.reused(file,"cached");
+                session.getSignedFiles().add(signer,file,signature);
+                return false;
+            }
+
+            // on a cache miss, the digest of the file for the cache is computed in the same pass as the signature
+            final MessageDigest md = cache!=null ? FileDigests.newDigest() : null;
+            final String[] digest = new String[1];
+            final long timestamp = file.lastModified(), size = file.length();
+            Signer.Reuse reuse = null;
+            if (md!=null) {
+                reuse = new Signer.Reuse() {
+                    public boolean reuse() throws IOException {
+                        digest[0] = new String(Hex.encode(md.digest()));
+                        cache.record(file,timestamp,size,digest[0]);
+                        return cache.restore(signer,digest[0],signature);
+                    }
+                };
+            }
+
+            boolean generated = signer.sign(file, armored ? signature : null, armored ? (binary ? binarySignatureOf(signature) : null) : signature,
+                    signingMetrics, Signer.tee(sums, md!=null ? FileDigests.sink(md) : null), reuse);
+            if (!generated) {
+                getLog().debug("Reusing the cached signature for "+file);
+                if (signingMetrics!=null)
+                    signingMetrics.reused(file,"cached");
+            } else
+            if (cache!=null) {
+                cache.store(signer,digest[0],signature);
+            }
+            session.getSignedFiles().add(signer,file,signature);
+            return generated;
         } catch (PGPException e) {
             throw new MojoExecutionException("Failed to sign "+a.getFile(),e);
         } catch (IOException e) {
@@ -198,9 +912,36 @@ public class PgpMojo extends AbstractMojo
         } catch (GeneralSecurityException e) {
             throw new MojoExecutionException("Failed to sign "+a.getFile(),e);
         }
+    }
 
-        projectHelper.attachArtifact( project, a.getArtifactHandler().getExtension() + ".asc",
-                                      a.getClassifier(), signature );
+    /**
+     * Attach the signature to the build, along with the checksums.
+     */
+    protected void attach(Artifact a, File signature) {
+        String ext = a.getArtifactHandler().getExtension();
+        attach(a, ext, signature);
+
+        for (String alg : checksumAlgorithms) {
+            File f = Checksums.fileOf(a.getFile().getName(),outputDirectory,alg);
+            projectHelper.attachArtifact( project, ext + '.' + alg, a.getClassifier(), f );
+            if (signChecksums)
+                attach(a, ext + '.' + alg, new File(f.getPath() + (armored ? ".asc" : ".sig")));
+        }
+    }
 
+    /**
+     * Attaches the signature of a file whose extension is the given one.
+     */
+    private void attach(Artifact a, String ext, File signature) {
+        projectHelper.attachArtifact( project, ext + (armored ? ".asc" : ".sig"),
+                                      a.getClassifier(), signature );
+        if (armored && binary)
+            projectHelper.attachArtifact( project, ext + ".sig",
+                                          a.getClassifier(), binarySignatureOf(signature) );
     }
+
+    /**
+     * Artifact ID of this plugin, to find its executions in the POM.
+     */
+    private static final String ARTIFACT_ID = "pgp-maven-plugin";
 }
@@ -0,0 +1,312 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPUtil;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+import javax.security.auth.login.LoginException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.security.AuthProvider;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.DSAParams;
+import java.security.interfaces.DSAPrivateKey;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link DigestSigner} that signs with a JCA {@link PrivateKey}, for serving signatures
+ * to other processes, which send just the digests.
+ *
+ * <p>
+ * The private key can come from any JCA provider, so it can also live in a hardware token.
+ * Initialized {@link Signature}s are pooled and reused, which also bounds the number of concurrent
+ * private key operations, such as sessions of a PKCS#11 token.
+ *
+ * <p>
+ * DSA keys whose secret is accessible are signed with the deterministic variant of RFC 6979,
+ * so that the same digest always gets the same signature, and the signature doesn't depend on the quality
+ * of the random number generator.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class PrivateKeyDigestSigner extends DigestSigner {
+    private final PrivateKey key;
+    private final Provider provider;
+
+    /**
+     * Idle {@link Signature}s, already initialized with {@link #key}.
+     */
+    private final Queue<Signature> pool = new ConcurrentLinkedQueue<Signature>();
+    /**
+     * Bounds the number of {@link Signature}s in use.
+     */
+    private final Semaphore permits;
+
+    /**
+     * @param poolSize
+     *      Maximum number of signatures to compute concurrently.
+     */
+    public PrivateKeyDigestSigner(PrivateKey key, Provider provider, int poolSize) {
+        if (poolSize<1)
+            throw new IllegalArgumentException("Pool size needs to be positive: "+poolSize);
+        this.key = key;
+        this.provider = provider;
+        this.permits = new Semaphore(poolSize);
+    }
+
+    public PrivateKeyDigestSigner(PrivateKey key, Provider provider) {
+        this(key,provider,Integer.MAX_VALUE);
+    }
+
+    public PrivateKeyDigestSigner(PGPPrivateKey key) {
+        this(key.getKey(),Signer.PROVIDER);
+    }
+
+    @Override
+    public BigInteger[] sign(PendingSignature p) throws IOException, GeneralSecurityException {
+        boolean rsa;
+        switch (p.getKeyAlgorithm()) {
+        case PGPPublicKey.RSA_GENERAL:
+        case PGPPublicKey.RSA_SIGN:
+            rsa = true;
+            break;
+        case PGPPublicKey.DSA:
+            rsa = false;
+            break;
+        default:
+            throw new SignatureException("Unsupported key algorithm: "+p.getKeyAlgorithm());
+        }
+
+        if (!rsa && key instanceof DSAPrivateKey)
+            return signDeterministically((DSAPrivateKey)key,p);
+
+        Signature s = borrow(rsa ? "NONEwithRSA" : "NONEwithDSA");
+        boolean ok = false;
+        try {
+            BigInteger[] r;
+            if (rsa) {
+                s.update(p.getDigestInfo());
+                r = new BigInteger[]{new BigInteger(1,s.sign())};
+            } else {
+                s.update(p.getDigest());
+                r = decodeDerSequence(s.sign());
+            }
+            ok = true;
+            return r;
+        } finally {
+            release(s,ok);
+        }
+    }
+
+    /**
+     * DSA signature whose per-signature secret "k" is derived from the key and the digest, as in RFC 6979 section 3.2,
+     * with HMAC of the hash algorithm of the signature.
+     */
+    static BigInteger[] signDeterministically(DSAPrivateKey key, PendingSignature p) throws GeneralSecurityException {
+        DSAParams params = key.getParams();
+        BigInteger q = params.getQ();
+        BigInteger x = key.getX();
+        byte[] h = p.getDigest();
+        int qlen = q.bitLength();
+
+        Mac hmac = Mac.getInstance(hmacAlgorithm(p.getHashAlgorithm()),Signer.PROVIDER);
+        byte[] v = new byte[hmac.getMacLength()];
+        byte[] k = new byte[hmac.getMacLength()];
+        Arrays.fill(v,(byte)1);
+
+        byte[] xo = int2octets(x,qlen);
+        byte[] ho = int2octets(bits2int(h,qlen).mod(q),qlen);
+        for (int i=0; i<2; i++) {
+            hmac.init(new SecretKeySpec(k,hmac.getAlgorithm()));
+            hmac.update(v);
+            hmac.update((byte)i);
+            hmac.update(xo);
+            hmac.update(ho);
+            k = hmac.doFinal();
+            v = hmac(hmac,k,v);
+        }
+        Arrays.fill(xo,(byte)0);
+
+        BigInteger z = bits2int(h,qlen);
+        while (true) {
+            byte[] t = new byte[(qlen+7)/8];
+            for (int off=0; off<t.length; off+=v.length) {
+                v = hmac(hmac,k,v);
+                System.arraycopy(v,0,t,off,Math.min(v.length,t.length-off));
+            }
+            BigInteger candidate = bits2int(t,qlen);
+            if (candidate.signum()>0 && candidate.compareTo(q)<0) {
+                BigInteger r = params.getG().modPow(candidate,params.getP()).mod(q);
+                BigInteger s = candidate.modInverse(q).multiply(z.add(x.multiply(r))).mod(q);
+                if (r.signum()!=0 && s.signum()!=0)
+                    return new BigInteger[]{r,s};
+            }
+
+            hmac.init(new SecretKeySpec(k,hmac.getAlgorithm()));
+            hmac.update(v);
+            hmac.update((byte)0);
+            k = hmac.doFinal();
+            v = hmac(hmac,k,v);
+        }
+    }
+
+    private static byte[] hmac(Mac hmac, byte[] key, byte[] data) throws GeneralSecurityException {
+        hmac.init(new SecretKeySpec(key,hmac.getAlgorithm()));
+        return hmac.doFinal(data);
+    }
+
+    /**
+     * The leftmost qlen bits of the octets as an integer.
+     */
+    private static BigInteger bits2int(byte[] b, int qlen) {
+        BigInteger v = new BigInteger(1,b);
+        int blen = b.length*8;
+        return blen>qlen ? v.shiftRight(blen-qlen) : v;
+    }
+
+    /**
+     * The integer as big-endian octets of the length of q.
+     */
+    private static byte[] int2octets(BigInteger v, int qlen) {
+        byte[] b = v.toByteArray();
+        byte[] r = new byte[(qlen+7)/8];
+        if (b.length>r.length)
+            System.arraycopy(b,b.length-r.length,r,0,r.length);
+        else
+            System.arraycopy(b,0,r,r.length-b.length,b.length);
+        return r;
+    }
+
+    private static String hmacAlgorithm(int hashAlgorithm) throws NoSuchAlgorithmException {
+        switch (hashAlgorithm) {
+        case PGPUtil.SHA1:      return "HmacSHA1";
+        case PGPUtil.SHA224:    return "HmacSHA224";
+        case PGPUtil.SHA256:    return "HmacSHA256";
+        case PGPUtil.SHA384:    return "HmacSHA384";
+        case PGPUtil.SHA512:    return "HmacSHA512";
+        default:                throw new NoSuchAlgorithmException("Unsupported hash algorithm: "+hashAlgorithm);
+        }
+    }
+
+    /**
+     * Drops the initialized {@link Signature}s, destroys the key if its implementation supports that,
+     * and logs out of the token that holds it.
+     */
+    @Override
+    public void close() {
+        pool.clear();
+        destroy(key);
+        if (provider instanceof AuthProvider) {
+            try {
+                ((AuthProvider)provider).logout();
+            } catch (LoginException e) {
+                // nothing more we can do
+            }
+        }
+    }
+
+    /**
+     * Destroys the key if its implementation supports that.
+     * BouncyCastle and the JDK keep the secret of software keys in immutable {@link BigInteger}s,
+     * which can't be wiped, so they are only dropped.
+     */
+    static void destroy(PrivateKey key) {
+        if (key instanceof Destroyable) {
+            try {
+                ((Destroyable)key).destroy();
+            } catch (DestroyFailedException e) {
+                // most implementations don't support this
+            }
+        }
+    }
+
+    /**
+     * Takes an idle {@link Signature} from the pool, or creates one if there's none.
+     * Blocks while the maximum number of signatures are in use.
+     */
+    private Signature borrow(String algorithm) throws IOException, GeneralSecurityException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            throw (IOException)new InterruptedIOException("Interrupted while waiting for a signature").initCause(e);
+        }
+
+        Signature s = pool.poll();
+        if (s!=null)    return s;
+
+        boolean ok = false;
+        try {
+            s = Signature.getInstance(algorithm,provider);
+            s.initSign(key);
+            ok = true;
+            return s;
+        } finally {
+            if (!ok)
+                permits.release();
+        }
+    }
+
+    /**
+     * Returns the {@link Signature} to the pool.
+     * A signature that failed may be in the middle of an operation, so it's discarded.
+     */
+    private void release(Signature s, boolean ok) {
+        if (ok)
+            pool.add(s);    // the signature is reset to the initialized state after sign()
+        permits.release();
+    }
+
+    /**
+     * Decodes the DER encoded "SEQUENCE { INTEGER r, INTEGER s }" that JCA produces for DSA signatures.
+     */
+    static BigInteger[] decodeDerSequence(byte[] der) throws SignatureException {
+        try {
+            int[] pos = {0};
+            if (der[pos[0]++]!=0x30)
+                throw new SignatureException("Not a DER sequence");
+            int end = readLength(der,pos);
+            end += pos[0];
+
+            BigInteger[] r = new BigInteger[2];
+            for (int i=0; i<2; i++) {
+                if (der[pos[0]++]!=0x02)
+                    throw new SignatureException("Not a DER integer");
+                int len = readLength(der,pos);
+                byte[] v = new byte[len];
+                System.arraycopy(der,pos[0],v,0,len);
+                pos[0] += len;
+                r[i] = new BigInteger(v);
+            }
+            if (pos[0]!=end || end!=der.length)
+                throw new SignatureException("Unexpected trailing data in the signature");
+            return r;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw (SignatureException)new SignatureException("Truncated signature").initCause(e);
+        }
+    }
+
+    private static int readLength(byte[] der, int[] pos) {
+        int len = der[pos[0]++]&0xFF;
+        if (len<0x80)
+            return len;
+        int n = len&0x7F;
+        len = 0;
+        while (n-->0)
+            len = (len<<8) | (der[pos[0]++]&0xFF);
+        return len;
+    }
+}
@@ -0,0 +1,363 @@
+package org.kohsuke.maven.pgp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Command line tool to sign every file in a directory tree, such as a whole Maven repository.
+ *
+ * <p>
+ * The directory tree is walked while the files found so far are signed by a pool of workers,
+ * so millions of files never sit in memory. Files that already have a signature newer than them,
+ * by the same keys and with the same hash algorithm, are skipped. Symbolic links to directories aren't followed.
+ *
+ * <p>
+ * Signatures are written to temporary files first, and renamed into place,
+ * so that a run that's killed midway doesn't leave truncated signatures that look newer than the files.
+ *
+ * <p>
+ * Directories whose files and sub-directories are all signed are recorded in a journal,
+ * so that an interrupted run can be resumed without even walking the parts that are done.
+ * The journal is deleted once the whole tree is signed.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class RepositorySigner {
+    private final Signer signer;
+    private final boolean armored, binary;
+    private final boolean verify;
+    private final Pattern excludes;
+    private final Journal journal;
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Each worker signs many small files in a row, so it reuses a context.
+     */
+    private final ThreadLocal<SigningContext> contexts = new ThreadLocal<SigningContext>() {
+        @Override
+        protected SigningContext initialValue() {
+            return signer.newContext();
+        }
+    };
+
+    private final AtomicInteger signed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * @param format
+     *      "armored", "binary", or "both".
+     * @param verify
+     *      If true, existing signatures are verified before they are kept.
+     * @param excludes
+     *      File names that aren't signed.
+     * @param journal
+     *      File to record completed directories in, or null to not record them.
+     */
+    public RepositorySigner(Signer signer, String format, boolean verify, Pattern excludes, File journal, int threads) throws IOException {
+        if (!format.equals("armored") && !format.equals("binary") && !format.equals("both"))
+            throw new IllegalArgumentException("Invalid signature format: "+format+". Valid values are armored, binary, and both");
+        this.signer = signer;
+        this.armored = !format.equals("binary");
+        this.binary = !format.equals("armored");
+        this.verify = verify;
+        this.excludes = excludes;
+        this.journal = journal!=null ? new Journal(journal) : null;
+        // bounded queue so that the walker doesn't run too far ahead. when full, the walker signs by itself
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads*64), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Signs everything in the given directory, and waits for the completion.
+     *
+     * @return
+     *      true if all the files were signed successfully.
+     */
+    public boolean run(File root) throws IOException, InterruptedException {
+        try {
+            walk(root,null);
+            pool.shutdown();
+            while (!pool.awaitTermination(10,TimeUnit.SECONDS))
+                System.err.println(progress());
+            System.err.println(progress());
+        } finally {
+            pool.shutdownNow();
+            if (journal!=null)
+                journal.close();
+        }
+        if (failed.get()>0)
+            return false;
+        if (journal!=null)
+            journal.delete();   // the job is complete, so the next run should look at everything again
+        return true;
+    }
+
+    private String progress() {
+        return signed+" signed, "+skipped+" already signed, "+failed+" failed";
+    }
+
+    private void walk(File dir, Directory parent) {
+        if (journal!=null && journal.isDone(dir)) {
+            if (parent!=null)
+                parent.done(true);
+            return;
+        }
+
+        File[] children = dir.listFiles();
+        if (children==null) {
+            System.err.println("Failed to list "+dir);
+            failed.incrementAndGet();
+            if (parent!=null)
+                parent.done(false);
+            return;
+        }
+
+        Directory d = new Directory(dir,parent);
+        for (File f : children) {
+            if (f.isDirectory()) {
+                if (isSymlink(f)) {
+                    System.err.println("Not following the symbolic link "+f);
+                    continue;
+                }
+                d.pending.incrementAndGet();
+                walk(f,d);
+            } else if (isSignable(f)) {
+                d.pending.incrementAndGet();
+                pool.execute(new Task(f,d));
+            }
+        }
+        d.done(true);   // for the listing
+    }
+
+    /**
+     * Symbolic links to directories can lead back to an ancestor, which would make the walk endless,
+     * or out of the tree.
+     */
+    private static boolean isSymlink(File f) {
+        try {
+            File c = new File(f.getParentFile().getCanonicalFile(),f.getName());
+            return !c.getCanonicalFile().equals(c.getAbsoluteFile());
+        } catch (IOException e) {
+            return true;    // can't tell, so don't follow it
+        }
+    }
+
+    private boolean isSignable(File f) {
+        String n = f.getName();
+        return !n.endsWith(".asc") && !n.endsWith(".sig") && !n.endsWith(".asc.tmp") && !n.endsWith(".sig.tmp")
+            && (excludes==null || !excludes.matcher(n).matches());
+    }
+
+    private void sign(File f) throws Exception {
+        File asc = new File(f.getPath()+".asc");
+        File sig = new File(f.getPath()+".sig");
+        File primary = armored ? asc : sig;
+
+        if (isUpToDate(f,primary) && (!armored || !binary || isUpToDate(f,sig))
+         && (!verify || signer.verify(f,primary))) {
+            skipped.incrementAndGet();
+            return;
+        }
+
+        File ascTmp = armored ? temporaryFileOf(asc) : null;
+        File sigTmp = binary ? temporaryFileOf(sig) : null;
+        try {
+            contexts.get().sign(f, ascTmp, sigTmp);
+            if (ascTmp!=null)   replace(ascTmp,asc);
+            if (sigTmp!=null)   replace(sigTmp,sig);
+        } finally {
+            if (ascTmp!=null)   ascTmp.delete();
+            if (sigTmp!=null)   sigTmp.delete();
+        }
+        signed.incrementAndGet();
+    }
+
+    /**
+     * Checks if the signature is newer than the file, and is by the keys and the hash algorithm we sign with.
+     */
+    private boolean isUpToDate(File f, File signature) throws IOException {
+        return signature.lastModified()>=f.lastModified() && signer.hasSignature(signature);
+    }
+
+    private static File temporaryFileOf(File f) {
+        return new File(f.getParentFile(),"."+f.getName()+".tmp");
+    }
+
+    private static void replace(File tmp, File dest) throws IOException {
+        if (tmp.renameTo(dest))
+            return;
+        dest.delete();  // some platforms don't rename over an existing file
+        if (!tmp.renameTo(dest))
+            throw new IOException("Failed to rename "+tmp+" to "+dest);
+    }
+
+    /**
+     * Signs one file.
+     */
+    private final class Task implements Runnable {
+        private final File file;
+        private final Directory dir;
+
+        Task(File file, Directory dir) {
+            this.file = file;
+            this.dir = dir;
+        }
+
+        public void run() {
+            boolean ok = false;
+            try {
+                sign(file);
+                ok = true;
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.err.println("Failed to sign "+file+": "+e);
+            } finally {
+                dir.done(ok);
+            }
+        }
+    }
+
+    /**
+     * Tracks the completion of a directory, which is when the listing, the files, and the sub-directories
+     * are all done.
+     */
+    private final class Directory {
+        private final File dir;
+        private final Directory parent;
+        /**
+         * Number of things yet to be done, including the listing itself.
+         */
+        final AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean failed;
+
+        Directory(File dir, Directory parent) {
+            this.dir = dir;
+            this.parent = parent;
+        }
+
+        void done(boolean ok) {
+            if (!ok)
+                failed = true;
+            if (pending.decrementAndGet()>0)
+                return;
+
+            if (!failed && journal!=null)
+                journal.done(dir);
+            if (parent!=null)
+                parent.done(!failed);
+        }
+    }
+
+    /**
+     * Append-only record of completed directories.
+     */
+    private static final class Journal {
+        private final File file;
+        private final Set<String> done = new HashSet<String>();
+        private final PrintWriter w;
+
+        Journal(File file) throws IOException {
+            this.file = file;
+            if (file.exists()) {
+                BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(file),"UTF-8"));
+                try {
+                    String line;
+                    while ((line=r.readLine())!=null)
+                        done.add(line);
+                } finally {
+                    r.close();
+                }
+            }
+            w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file,true),"UTF-8"));
+        }
+
+        boolean isDone(File dir) {
+            return done.contains(dir.getAbsolutePath());
+        }
+
+        synchronized void done(File dir) {
+            w.println(dir.getAbsolutePath());
+            w.flush();      // so that it survives the process being killed
+        }
+
+        synchronized void close() {
+            w.close();
+        }
+
+        void delete() {
+            file.delete();
+        }
+    }
+
+    /**
+     * <pre>
+     * java ... RepositorySigner [-threads N] [-hash ALG] [-format armored|binary|both] [-verify]
+     *          [-exclude REGEX] [-journal FILE] [-secretkey SPEC] [-passphrase SPEC] [-signer SPEC] DIR
+     * </pre>
+     * The key parameters default to the PGP_SECRETKEY, PGP_PASSPHRASE, and PGP_SIGNER environment variables,
+     * and are specified the same way as in the plugin.
+     */
+    public static void main(String[] args) throws Exception {
+        StandaloneMojo mojo = new StandaloneMojo();
+        int threads = Runtime.getRuntime().availableProcessors();
+        String hash = "SHA256";
+        String format = "armored";
+        boolean verify = false;
+        Pattern excludes = Pattern.compile("maven-metadata.*\\.xml|.*\\.(md5|sha1|sha256|sha512)|\\..*");
+        File journal = null;
+        File root = null;
+
+        for (int i=0; i<args.length; i++) {
+            String a = args[i];
+            if (a.equals("-verify")) {
+                verify = true;
+                continue;
+            }
+            if (!a.startsWith("-")) {
+                root = new File(a);
+                continue;
+            }
+            if (i+1==args.length)
+                usage("Missing value for "+a);
+            String v = args[++i];
+            if (a.equals("-threads"))           threads = Integer.parseInt(v);
+            else if (a.equals("-hash"))         hash = v;
+            else if (a.equals("-format"))       format = v;
+            else if (a.equals("-exclude"))      excludes = Pattern.compile(v);
+            else if (a.equals("-journal"))      journal = new File(v);
+            else if (a.equals("-secretkey"))    mojo.secretkey = v;
+            else if (a.equals("-passphrase"))   mojo.passphrase = v;
+            else if (a.equals("-signer"))       mojo.signerSpec = v;
+            else                                usage("Unknown option: "+a);
+        }
+        if (root==null)
+            usage("No directory is specified");
+        if (journal==null)
+            journal = new File(root.getAbsoluteFile().getParentFile(), root.getName()+".pgp-journal");
+
+        Signer signer = mojo.createSigner().withHashAlgorithm(Signer.parseHashAlgorithm(hash));
+        boolean ok = new RepositorySigner(signer,format,verify,excludes,journal,threads).run(root);
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("Usage: java "+RepositorySigner.class.getName()+" [-threads N] [-hash ALG] [-format armored|binary|both] [-verify]");
+        System.err.println("         [-exclude REGEX] [-journal FILE] [-secretkey SPEC] [-passphrase SPEC] [-signer SPEC] DIR");
+        System.exit(1);
+    }
+}
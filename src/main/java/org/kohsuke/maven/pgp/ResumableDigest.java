@@ -0,0 +1,443 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPUtil;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-1 and SHA-2 whose intermediate state can be exported, and resumed in another process.
+ *
+ * <p>
+ * The signing daemon takes the state of the digest of a document from a remote client, and hashes the signature
+ * trailer into it by itself, so that whatever the client sends, the daemon only ever signs the binary document
+ * signatures it builds. JCA digests don't expose their state, hence this implementation.
+ * It's slower than the JDK's, so it's only used for the digests that are sent to the daemon.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public abstract class ResumableDigest extends MessageDigest implements Cloneable {
+    private final int hashAlgorithm;
+    private final int blockSize;
+    private byte[] block;
+    /**
+     * Number of bytes in {@link #block}.
+     */
+    private int blockOff;
+    /**
+     * Number of bytes digested so far.
+     */
+    private long count;
+
+    ResumableDigest(String name, int hashAlgorithm, int blockSize) {
+        super(name);
+        this.hashAlgorithm = hashAlgorithm;
+        this.blockSize = blockSize;
+        this.block = new byte[blockSize];
+    }
+
+    /**
+     * Creates a new digest.
+     *
+     * @param hashAlgorithm
+     *      One of the hash algorithm constants in {@link PGPUtil}.
+     */
+    public static ResumableDigest newInstance(int hashAlgorithm) throws NoSuchAlgorithmException {
+        switch (hashAlgorithm) {
+        case PGPUtil.SHA1:      return new Sha32("SHA-1",hashAlgorithm,SHA1_IV,5);
+        case PGPUtil.SHA224:    return new Sha32("SHA-224",hashAlgorithm,SHA224_IV,7);
+        case PGPUtil.SHA256:    return new Sha32("SHA-256",hashAlgorithm,SHA256_IV,8);
+        case PGPUtil.SHA384:    return new Sha64("SHA-384",hashAlgorithm,SHA384_IV,6);
+        case PGPUtil.SHA512:    return new Sha64("SHA-512",hashAlgorithm,SHA512_IV,8);
+        default:                throw new NoSuchAlgorithmException("Unsupported hash algorithm: "+hashAlgorithm);
+        }
+    }
+
+    /**
+     * Recreates the digest from what {@link #getState()} returned.
+     */
+    public static ResumableDigest resume(int hashAlgorithm, byte[] state) throws IOException, NoSuchAlgorithmException {
+        ResumableDigest d = newInstance(hashAlgorithm);
+        int words = d.getStateLength();
+        if (state.length<8+words)
+            throw new IOException("Invalid digest state");
+        long count = 0;
+        for (int i=0; i<8; i++)
+            count = count<<8 | (state[i]&0xFF);
+        int tail = (int)(count%d.blockSize);
+        if (count<0 || state.length!=8+words+tail)
+            throw new IOException("Invalid digest state");
+        d.count = count;
+        d.readState(state,8);
+        System.arraycopy(state,8+words,d.block,0,tail);
+        d.blockOff = tail;
+        return d;
+    }
+
+    /**
+     * One of the hash algorithm constants in {@link PGPUtil}.
+     */
+    public int getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * Exports the state, which consists of the number of bytes digested so far,
+     * the chaining value, and the bytes that don't fill a block yet.
+     */
+    public byte[] getState() {
+        int words = getStateLength();
+        byte[] r = new byte[8+words+blockOff];
+        for (int i=0; i<8; i++)
+            r[i] = (byte)(count>>>(56-i*8));
+        writeState(r,8);
+        System.arraycopy(block,0,r,8+words,blockOff);
+        return r;
+    }
+
+    @Override
+    protected void engineUpdate(byte b) {
+        count++;
+        block[blockOff++] = b;
+        if (blockOff==blockSize) {
+            compress(block,0);
+            blockOff = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] b, int off, int len) {
+        count += len;
+        if (blockOff>0) {
+            int n = Math.min(len,blockSize-blockOff);
+            System.arraycopy(b,off,block,blockOff,n);
+            blockOff += n;
+            off += n;
+            len -= n;
+            if (blockOff<blockSize)
+                return;
+            compress(block,0);
+            blockOff = 0;
+        }
+        for (; len>=blockSize; off+=blockSize, len-=blockSize)
+            compress(b,off);
+        System.arraycopy(b,off,block,0,len);
+        blockOff = len;
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        // the length in bits goes into the last 8 bytes of the last block, after the padding
+        int lengthSize = blockSize/8;
+        block[blockOff++] = (byte)0x80;
+        if (blockOff>blockSize-lengthSize) {
+            Arrays.fill(block,blockOff,blockSize,(byte)0);
+            compress(block,0);
+            blockOff = 0;
+        }
+        Arrays.fill(block,blockOff,blockSize-8,(byte)0);
+        long bits = count<<3;
+        for (int i=0; i<8; i++)
+            block[blockSize-8+i] = (byte)(bits>>>(56-i*8));
+        compress(block,0);
+
+        byte[] r = new byte[engineGetDigestLength()];
+        writeDigest(r);
+        engineReset();
+        return r;
+    }
+
+    @Override
+    protected void engineReset() {
+        count = 0;
+        blockOff = 0;
+        Arrays.fill(block,(byte)0);
+        init();
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        ResumableDigest d = (ResumableDigest)super.clone();
+        d.block = block.clone();
+        d.cloneState();
+        return d;
+    }
+
+    abstract void init();
+    abstract void compress(byte[] b, int off);
+    abstract void writeDigest(byte[] out);
+    abstract int getStateLength();
+    abstract void writeState(byte[] out, int off);
+    abstract void readState(byte[] in, int off);
+    abstract void cloneState();
+
+    /**
+     * SHA-1, SHA-224, and SHA-256, which work on 32 bit words.
+     */
+    private static final class Sha32 extends ResumableDigest {
+        private final int[] iv;
+        private final int outputWords;
+        private int[] h = new int[8];
+        private int[] w;
+
+        Sha32(String name, int hashAlgorithm, int[] iv, int outputWords) {
+            super(name,hashAlgorithm,64);
+            this.iv = iv;
+            this.outputWords = outputWords;
+            init();
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return outputWords*4;
+        }
+
+        void init() {
+            System.arraycopy(iv,0,h,0,iv.length);
+        }
+
+        void compress(byte[] b, int off) {
+            if (w==null)
+                w = new int[iv==SHA1_IV ? 80 : 64];
+            for (int i=0; i<16; i++, off+=4)
+                w[i] = b[off]<<24 | (b[off+1]&0xFF)<<16 | (b[off+2]&0xFF)<<8 | (b[off+3]&0xFF);
+            if (iv==SHA1_IV)
+                sha1();
+            else
+                sha256();
+        }
+
+        private void sha1() {
+            for (int i=16; i<80; i++)
+                w[i] = Integer.rotateLeft(w[i-3]^w[i-8]^w[i-14]^w[i-16],1);
+            int a=h[0], b=h[1], c=h[2], d=h[3], e=h[4];
+            for (int i=0; i<80; i++) {
+                int f, k;
+                if (i<20) {
+                    f = (b&c)|(~b&d);
+                    k = 0x5a827999;
+                } else if (i<40) {
+                    f = b^c^d;
+                    k = 0x6ed9eba1;
+                } else if (i<60) {
+                    f = (b&c)|(b&d)|(c&d);
+                    k = 0x8f1bbcdc;
+                } else {
+                    f = b^c^d;
+                    k = 0xca62c1d6;
+                }
+                int t = Integer.rotateLeft(a,5)+f+e+k+w[i];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b,30);
+                b = a;
+                a = t;
+            }
+            h[0]+=a; h[1]+=b; h[2]+=c; h[3]+=d; h[4]+=e;
+        }
+
+        private void sha256() {
+            for (int i=16; i<64; i++) {
+                int s0 = Integer.rotateRight(w[i-15],7)^Integer.rotateRight(w[i-15],18)^(w[i-15]>>>3);
+                int s1 = Integer.rotateRight(w[i-2],17)^Integer.rotateRight(w[i-2],19)^(w[i-2]>>>10);
+                w[i] = w[i-16]+s0+w[i-7]+s1;
+            }
+            int a=h[0], b=h[1], c=h[2], d=h[3], e=h[4], f=h[5], g=h[6], hh=h[7];
+            for (int i=0; i<64; i++) {
+                int s1 = Integer.rotateRight(e,6)^Integer.rotateRight(e,11)^Integer.rotateRight(e,25);
+                int t1 = hh+s1+((e&f)^(~e&g))+K256[i]+w[i];
+                int s0 = Integer.rotateRight(a,2)^Integer.rotateRight(a,13)^Integer.rotateRight(a,22);
+                int t2 = s0+((a&b)^(a&c)^(b&c));
+                hh = g;
+                g = f;
+                f = e;
+                e = d+t1;
+                d = c;
+                c = b;
+                b = a;
+                a = t1+t2;
+            }
+            h[0]+=a; h[1]+=b; h[2]+=c; h[3]+=d; h[4]+=e; h[5]+=f; h[6]+=g; h[7]+=hh;
+        }
+
+        void writeDigest(byte[] out) {
+            for (int i=0; i<outputWords; i++)
+                putInt(out,i*4,h[i]);
+        }
+
+        int getStateLength() {
+            return iv.length*4;
+        }
+
+        void writeState(byte[] out, int off) {
+            for (int i=0; i<iv.length; i++)
+                putInt(out,off+i*4,h[i]);
+        }
+
+        void readState(byte[] in, int off) {
+            for (int i=0; i<iv.length; i++, off+=4)
+                h[i] = in[off]<<24 | (in[off+1]&0xFF)<<16 | (in[off+2]&0xFF)<<8 | (in[off+3]&0xFF);
+        }
+
+        void cloneState() {
+            h = h.clone();
+            w = null;
+        }
+
+        private static void putInt(byte[] out, int off, int v) {
+            out[off]   = (byte)(v>>>24);
+            out[off+1] = (byte)(v>>>16);
+            out[off+2] = (byte)(v>>>8);
+            out[off+3] = (byte)v;
+        }
+    }
+
+    /**
+     * SHA-384 and SHA-512, which work on 64 bit words.
+     */
+    private static final class Sha64 extends ResumableDigest {
+        private final long[] iv;
+        private final int outputWords;
+        private long[] h = new long[8];
+        private long[] w;
+
+        Sha64(String name, int hashAlgorithm, long[] iv, int outputWords) {
+            super(name,hashAlgorithm,128);
+            this.iv = iv;
+            this.outputWords = outputWords;
+            init();
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return outputWords*8;
+        }
+
+        void init() {
+            System.arraycopy(iv,0,h,0,8);
+        }
+
+        void compress(byte[] b, int off) {
+            if (w==null)
+                w = new long[80];
+            for (int i=0; i<16; i++, off+=8) {
+                long v = 0;
+                for (int j=0; j<8; j++)
+                    v = v<<8 | (b[off+j]&0xFF);
+                w[i] = v;
+            }
+            for (int i=16; i<80; i++) {
+                long s0 = Long.rotateRight(w[i-15],1)^Long.rotateRight(w[i-15],8)^(w[i-15]>>>7);
+                long s1 = Long.rotateRight(w[i-2],19)^Long.rotateRight(w[i-2],61)^(w[i-2]>>>6);
+                w[i] = w[i-16]+s0+w[i-7]+s1;
+            }
+            long a=h[0], bb=h[1], c=h[2], d=h[3], e=h[4], f=h[5], g=h[6], hh=h[7];
+            for (int i=0; i<80; i++) {
+                long s1 = Long.rotateRight(e,14)^Long.rotateRight(e,18)^Long.rotateRight(e,41);
+                long t1 = hh+s1+((e&f)^(~e&g))+K512[i]+w[i];
+                long s0 = Long.rotateRight(a,28)^Long.rotateRight(a,34)^Long.rotateRight(a,39);
+                long t2 = s0+((a&bb)^(a&c)^(bb&c));
+                hh = g;
+                g = f;
+                f = e;
+                e = d+t1;
+                d = c;
+                c = bb;
+                bb = a;
+                a = t1+t2;
+            }
+            h[0]+=a; h[1]+=bb; h[2]+=c; h[3]+=d; h[4]+=e; h[5]+=f; h[6]+=g; h[7]+=hh;
+        }
+
+        void writeDigest(byte[] out) {
+            for (int i=0; i<outputWords; i++)
+                putLong(out,i*8,h[i]);
+        }
+
+        int getStateLength() {
+            return 64;
+        }
+
+        void writeState(byte[] out, int off) {
+            for (int i=0; i<8; i++)
+                putLong(out,off+i*8,h[i]);
+        }
+
+        void readState(byte[] in, int off) {
+            for (int i=0; i<8; i++) {
+                long v = 0;
+                for (int j=0; j<8; j++)
+                    v = v<<8 | (in[off++]&0xFF);
+                h[i] = v;
+            }
+        }
+
+        void cloneState() {
+            h = h.clone();
+            w = null;
+        }
+
+        private static void putLong(byte[] out, int off, long v) {
+            for (int i=0; i<8; i++)
+                out[off+i] = (byte)(v>>>(56-i*8));
+        }
+    }
+
+    private static final int[] SHA1_IV = {
+        0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0
+    };
+
+    private static final int[] SHA224_IV = {
+        0xc1059ed8, 0x367cd507, 0x3070dd17, 0xf70e5939, 0xffc00b31, 0x68581511, 0x64f98fa7, 0xbefa4fa4
+    };
+
+    private static final int[] SHA256_IV = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final long[] SHA384_IV = {
+        0xcbbb9d5dc1059ed8L, 0x629a292a367cd507L, 0x9159015a3070dd17L, 0x152fecd8f70e5939L,
+        0x67332667ffc00b31L, 0x8eb44a8768581511L, 0xdb0c2e0d64f98fa7L, 0x47b5481dbefa4fa4L
+    };
+
+    private static final long[] SHA512_IV = {
+        0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+        0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+    };
+
+    private static final int[] K256 = {
+        0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+        0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+        0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+        0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+        0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+        0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+        0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+        0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private static final long[] K512 = {
+        0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL,
+        0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+        0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+        0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L,
+        0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+        0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+        0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+        0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+        0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+        0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+        0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+        0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+        0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L,
+        0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+        0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+        0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL,
+        0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+        0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+        0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL,
+        0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+    };
+}
@@ -1,6 +1,7 @@
 package org.kohsuke.maven.pgp;
 
 import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPSecretKey;
 
 import java.io.IOException;
@@ -26,6 +27,30 @@ public abstract class SecretKeyLoader {
      */
     public abstract PGPSecretKey load(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException;
 
+    /**
+     * Loads the secret key of one of the keys to sign with.
+     *
+     * <p>
+     * Loaders that obtain the pass phrase by themselves should override this method, and do so with
+     * {@link PgpMojo#loadPassPhrase(SigningKey, PGPSecretKey)}, so that it comes from the right key.
+     *
+     * @param key
+     *      The key being loaded, whose secretkey this specifier comes from.
+     */
+    public PGPSecretKey load(PgpMojo mojo, SigningKey key, String specifier) throws IOException, MojoExecutionException {
+        return load(mojo,specifier);
+    }
+
+    /**
+     * Loads just the public key portion, for signing through {@link SignerLoader}.
+     *
+     * <p>
+     * Loaders that can find the public key without the secret key should override this method.
+     */
+    public PGPPublicKey loadPublicKey(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException {
+        return load(mojo,specifier).getPublicKey();
+    }
+
     /**
      * Parses "a=b&c=d&..." into a map.
      * Useful for creating a structure in the specifier argument to the load method.
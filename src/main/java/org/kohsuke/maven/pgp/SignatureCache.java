@@ -0,0 +1,134 @@
+package org.kohsuke.maven.pgp;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persistent cache of signatures, keyed by the content digest of the signed file,
+ * the signing key, the hash algorithm, and the fixed signature creation time if any.
+ *
+ * <p>
+ * The cache directory contains one sub-directory per key, hash algorithm, and creation time,
+ * and in it "DIGEST.asc" (or "DIGEST.sig" for binary signatures) files. The timestamp of those files is bumped whenever they are used,
+ * and the least recently used ones are evicted once the cache grows beyond its size.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class SignatureCache {
+    private final File dir;
+    private final int size;
+    private final FileDigests digests;
+
+    SignatureCache(File dir, int size) throws IOException {
+        this.dir = dir;
+        this.size = size;
+        this.digests = new FileDigests(new File(dir,"digests.txt"));
+    }
+
+    /**
+     * Signatures in different forms are kept separately, distinguished by the extension of the signature file.
+     */
+    private File entry(Signer signer, String digest, File signature) {
+        String name = signature.getName();
+        String key = signer.getKeyIDs()+"-"+signer.getHashAlgorithm();
+        if (signer.getCreationTime()!=null)
+            key += "-"+signer.getCreationTime().getTime()/1000;
+        return new File(dir, key+"/"+digest+name.substring(name.lastIndexOf('.')));
+    }
+
+    /**
+     * If the file hasn't changed since its digest was recorded, and we have a signature for that digest
+     * in the cache, copy it to the given location. The file isn't read.
+     *
+     * @return
+     *      true if the cached signature was restored, false if the file needs to be read.
+     */
+    boolean restore(Signer signer, File file, File signature) throws IOException {
+        String d = digests.get(file);
+        return d!=null && restore(signer,d,signature);
+    }
+
+    /**
+     * If we have a signature for the given content digest in the cache, copy it to the given location.
+     *
+     * @param digest
+     *      SHA-256 digest of the file in hex, computed while the file is read for signing.
+     * @return
+     *      true if the cached signature was restored, false if the file needs to be signed.
+     */
+    boolean restore(Signer signer, String digest, File signature) throws IOException {
+        File e = entry(signer, digest, signature);
+        if (!e.exists())
+            return false;
+
+        FileUtils.copyFile(e,signature);
+        e.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Records the digest of the file, as computed while it was read for signing.
+     *
+     * @param timestamp
+     *      Timestamp of the file before it was read.
+     */
+    void record(File file, long timestamp, long size, String digest) {
+        digests.put(file,timestamp,size,digest);
+    }
+
+    /**
+     * Records a newly generated signature.
+     */
+    void store(Signer signer, String digest, File signature) throws IOException {
+        File e = entry(signer, digest, signature);
+        e.getParentFile().mkdirs();
+
+        // write to a temporary file first so that other builds sharing the cache never see a partial file.
+        // its name has to be unique across processes, not just threads
+        File tmp = File.createTempFile(e.getName()+".",".tmp",e.getParentFile());
+        try {
+            FileUtils.copyFile(signature,tmp);
+        } catch (IOException x) {
+            tmp.delete();
+            throw x;
+        }
+        e.delete();
+        if (!tmp.renameTo(e)) {
+            tmp.delete();
+            throw new IOException("Failed to update "+e);
+        }
+    }
+
+    /**
+     * Persists the digest index, and evicts the least recently used entries beyond the size limit.
+     */
+    void close() throws IOException {
+        digests.save();
+
+        List<File> all = new ArrayList<File>();
+        File[] keys = dir.listFiles();
+        if (keys==null)     return;
+        for (File k : keys) {
+            File[] entries = k.listFiles();
+            if (entries!=null)
+                Collections.addAll(all,entries);
+        }
+
+        if (all.size()<=size)   return;
+
+        Collections.sort(all,new Comparator<File>() {
+            public int compare(File a, File b) {
+                long x = a.lastModified(), y = b.lastModified();
+                return x<y ? -1 : x>y ? 1 : 0;
+            }
+        });
+        for (File f : all.subList(0,all.size()-size))
+            f.delete();
+    }
+}
@@ -0,0 +1,95 @@
+package org.kohsuke.maven.pgp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the files signed during a build, so that byte-identical files elsewhere in the reactor,
+ * such as a license bundle attached to several modules, reuse the signature instead of being signed again.
+ *
+ * <p>
+ * Files are first compared by their sizes, so the digest is only computed for files that have
+ * a same-sized counterpart, and most files are never read twice. This class is thread-safe.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class SignedFiles {
+    /**
+     * Keyed by the signing keys, the hash algorithm, the fixed creation time if any, the form of the signature,
+     * and the file size.
+     */
+    private final Map<String,List<Entry>> entries = new HashMap<String,List<Entry>>();
+
+    private static final class Entry {
+        final File file;
+        final long timestamp;
+        final File signature;
+        private String digest;
+
+        Entry(File file, File signature) {
+            this.file = file;
+            this.timestamp = file.lastModified();
+            this.signature = signature;
+        }
+
+        /**
+         * Computes the digest on demand, or returns null if the file has changed since it was signed.
+         */
+        synchronized String digest() throws IOException {
+            if (file.lastModified()!=timestamp || !signature.exists())
+                return null;
+            if (digest==null)
+                digest = FileDigests.compute(file);
+            return digest;
+        }
+    }
+
+    private static String key(Signer signer, File file, File signature) {
+        String name = signature.getName();
+        String key = signer.getKeyIDs()+"-"+signer.getHashAlgorithm();
+        if (signer.getCreationTime()!=null)
+            key += "-"+signer.getCreationTime().getTime()/1000;
+        return key+name.substring(name.lastIndexOf('.'))+'-'+file.length();
+    }
+
+    /**
+     * Finds the signature of an identical file signed earlier by the same signer.
+     *
+     * @return
+     *      null if there's no such file.
+     */
+    File find(Signer signer, File file, File signature) throws IOException {
+        List<Entry> candidates;
+        synchronized (this) {
+            List<Entry> l = entries.get(key(signer,file,signature));
+            if (l==null)    return null;
+            candidates = new ArrayList<Entry>(l);
+        }
+
+        String digest = null;
+        for (Entry e : candidates) {
+            if (e.file.equals(file))
+                continue;   // no point in comparing with itself
+            if (digest==null)
+                digest = FileDigests.compute(file);
+            if (digest.equals(e.digest()))
+                return e.signature;
+        }
+        return null;
+    }
+
+    /**
+     * Records that the file is signed.
+     */
+    synchronized void add(Signer signer, File file, File signature) {
+        String k = key(signer,file,signature);
+        List<Entry> l = entries.get(k);
+        if (l==null)
+            entries.put(k, l=new ArrayList<Entry>());
+        l.add(new Entry(file,signature));
+    }
+}
@@ -4,38 +4,106 @@ import org.bouncycastle.bcpg.ArmoredOutputStream;
 import org.bouncycastle.bcpg.BCPGOutputStream;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPObjectFactory;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPSecretKey;
 import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureList;
 import org.bouncycastle.openpgp.PGPUtil;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Generates a PGP signature.
  *
+ * <p>
+ * The private key either lives in this JVM, or is used through a {@link DigestSigner},
+ * in which case this class only computes the digest and assembles the signature packet.
+ *
+ * <p>
+ * This class is thread-safe. Every signature is computed with its own {@link PGPSignatureGenerator}
+ * or {@link MessageDigest}, so one instance can be shared between threads that sign different files.
+ * To sign lots of small files, use {@link SigningContext} on each thread instead.
+ *
  * @author Kohsuke Kawaguchi
  */
-class Signer {
+public class Signer {
     private final PGPPrivateKey privateKey;
     private final PGPPublicKey publicKey;
+    private final DigestSigner digestSigner;
+    private final int hashAlgorithm;
+    /**
+     * Fixed signature creation time, or null to use the current time.
+     */
+    private final Date creationTime;
+    /**
+     * Signs digests with {@link #privateKey} when {@link #creationTime} is fixed.
+     */
+    private final DigestSigner keySigner;
+    /**
+     * Signer of the additional key that signs the same data, if any.
+     */
+    private final Signer next;
+
+    public Signer(PGPPrivateKey privateKey, PGPPublicKey publicKey) {
+        this(privateKey,publicKey,PGPUtil.SHA256);
+    }
+
+    /**
+     * @param hashAlgorithm
+     *      One of the hash algorithm constants in {@link PGPUtil}, such as {@link PGPUtil#SHA256}.
+     */
+    public Signer(PGPPrivateKey privateKey, PGPPublicKey publicKey, int hashAlgorithm) {
+        this(privateKey,publicKey,null,hashAlgorithm,null,null);
+    }
+
+    /**
+     * Signs with a private key that's not in this JVM.
+     */
+    public Signer(PGPPublicKey publicKey, DigestSigner digestSigner, int hashAlgorithm) {
+        this(null,publicKey,digestSigner,hashAlgorithm,null,null);
+    }
 
-    Signer(PGPPrivateKey privateKey, PGPPublicKey publicKey) {
+    private Signer(PGPPrivateKey privateKey, PGPPublicKey publicKey, DigestSigner digestSigner, int hashAlgorithm, Date creationTime, Signer next) {
         this.privateKey = privateKey;
         this.publicKey = publicKey;
+        this.digestSigner = digestSigner;
+        this.hashAlgorithm = hashAlgorithm;
+        this.creationTime = creationTime;
+        this.keySigner = privateKey!=null && creationTime!=null ? new PrivateKeyDigestSigner(privateKey) : null;
+        this.next = next;
+    }
+
+    public Signer(PGPSecretKey secretKey, char[] passphrase) {
+        this(secretKey,passphrase,PGPUtil.SHA256);
     }
 
-    Signer(PGPSecretKey secretKey, char[] passphrase) {
+    public Signer(PGPSecretKey secretKey, char[] passphrase, int hashAlgorithm) {
         try {
             this.privateKey = secretKey.extractPrivateKey(passphrase,PROVIDER);
             if (this.privateKey == null)
@@ -43,41 +111,684 @@ class Signer {
                     + (secretKey.getKeyEncryptionAlgorithm() == PGPPublicKey.RSA_SIGN ?
                        ": RSA (sign-only) is unsupported by BouncyCastle" : ""));
             this.publicKey = secretKey.getPublicKey();
+            this.digestSigner = null;
+            this.hashAlgorithm = hashAlgorithm;
+            this.creationTime = null;
+            this.keySigner = null;
+            this.next = null;
         } catch (PGPException e) {
             throw new IllegalArgumentException("Passphrase is incorrect",e);
         }
     }
 
-    PGPSignature sign(InputStream in) throws IOException, PGPException, GeneralSecurityException {
-        PGPSignatureGenerator sGen = new PGPSignatureGenerator(publicKey.getAlgorithm(), PGPUtil.SHA1, PROVIDER);
-        sGen.initSign(PGPSignature.BINARY_DOCUMENT, privateKey);
+    /**
+     * Returns a signer that signs with the same key but with the given hash algorithm.
+     */
+    public Signer withHashAlgorithm(int hashAlgorithm) {
+        if (this.hashAlgorithm==hashAlgorithm)
+            return this;
+        return new Signer(privateKey,publicKey,digestSigner,hashAlgorithm,creationTime,next!=null ? next.withHashAlgorithm(hashAlgorithm) : null);
+    }
+
+    /**
+     * Returns a signer that signs with the same keys but stamps the given creation time on signatures,
+     * instead of the current time, for reproducible builds.
+     *
+     * <p>
+     * Signatures are then a function of the data, the key, and the hash algorithm. RSA signatures are
+     * deterministic by nature, and DSA signatures by keys in this JVM derive their per-signature secret
+     * from the key and the digest as in RFC 6979, so signing the same file again produces the same bytes.
+     *
+     * @param creationTime
+     *      null to go back to the current time. Only the precision to the second is retained.
+     *      A time before the key was created is moved up to the creation time of the key,
+     *      as GnuPG refuses to check signatures older than the key.
+     */
+    public Signer withCreationTime(Date creationTime) {
+        Date t = null;
+        if (creationTime!=null)
+            t = new Date(Math.max(creationTime.getTime(),publicKey.getCreationTime().getTime())/1000*1000);
+        Signer n = next!=null ? next.withCreationTime(creationTime) : null;
+        if ((t==null ? this.creationTime==null : t.equals(this.creationTime)) && n==next)
+            return this;
+        return new Signer(privateKey,publicKey,digestSigner,hashAlgorithm,t,n);
+    }
+
+    /**
+     * Returns a signer that signs with the keys of this signer as well as the keys of the given signer,
+     * reading the data once. The signatures of all the keys go into one signature file.
+     */
+    public Signer and(Signer other) {
+        return new Signer(privateKey,publicKey,digestSigner,hashAlgorithm,creationTime,next!=null ? next.and(other) : other);
+    }
+
+    /**
+     * IDs of the keys that sign, in hex, joined by '+'.
+     */
+    String getKeyIDs() {
+        String id = Long.toHexString(publicKey.getKeyID()).toUpperCase();
+        return next!=null ? id+'+'+next.getKeyIDs() : id;
+    }
+
+    /**
+     * Releases the private keys at the end of the build.
+     *
+     * <p>
+     * Keys in tokens are logged out and remote signers are disconnected.
+     * The secret of a key decrypted by BouncyCastle 1.46 is held in immutable {@link java.math.BigInteger}s
+     * which can't be wiped, so it is destroyed only if the key implementation supports {@link javax.security.auth.Destroyable},
+     * and otherwise merely left to the garbage collector.
+     */
+    void destroy() {
+        if (privateKey!=null)
+            PrivateKeyDigestSigner.destroy(privateKey.getKey());
+        if (digestSigner!=null)
+            digestSigner.close();
+        if (keySigner!=null)
+            keySigner.close();
+        if (next!=null)
+            next.destroy();
+    }
+
+    /**
+     * Hash algorithm used in signatures, as one of the {@link PGPUtil} constants.
+     */
+    int getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * Fixed signature creation time, or null if signatures are stamped with the current time.
+     */
+    Date getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Parses the hash algorithm name, such as "SHA256" or "SHA-512".
+     *
+     * @return
+     *      One of the hash algorithm constants in {@link PGPUtil}.
+     */
+    public static int parseHashAlgorithm(String name) {
+        String n = name.replace("-","").toUpperCase(Locale.ENGLISH);
+        if (n.equals("SHA1"))       return PGPUtil.SHA1;
+        if (n.equals("SHA224"))     return PGPUtil.SHA224;
+        if (n.equals("SHA256"))     return PGPUtil.SHA256;
+        if (n.equals("SHA384"))     return PGPUtil.SHA384;
+        if (n.equals("SHA512"))     return PGPUtil.SHA512;
+        throw new IllegalArgumentException("Unsupported hash algorithm: "+name+". Valid values are SHA1, SHA224, SHA256, SHA384, and SHA512");
+    }
 
-        byte[] buf = new byte[4096];
-        int len;
-        while ((len=in.read(buf))>=0)
-            sGen.update(buf,0,len);
-        return sGen.generate();
+    /**
+     * Parses the timestamp in the format of "project.build.outputTimestamp", which is either
+     * seconds since the epoch or ISO 8601 like "2020-01-01T00:00:00Z" and "2020-01-01T09:00:00+09:00".
+     *
+     * @return
+     *      null if the value is null or a single character, which Maven takes as "no timestamp".
+     */
+    public static Date parseCreationTime(String value) {
+        if (value==null || value.trim().length()<2)
+            return null;
+        String v = value.trim();
+        if (v.matches("[0-9]+"))
+            return new Date(Long.parseLong(v)*1000);
+
+        Matcher m = ISO8601.matcher(v);
+        if (!m.matches())
+            throw new IllegalArgumentException("Invalid timestamp: "+value+". Specify seconds since the epoch, or ISO 8601 like 2020-01-01T00:00:00Z");
+        String zone = m.group(2).equals("Z") ? "+0000" : m.group(2).replace(":","");
+        try {
+            SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ",Locale.ENGLISH);
+            f.setLenient(false);
+            return f.parse(m.group(1)+zone);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid timestamp: "+value,e);
+        }
+    }
+
+    private static final Pattern ISO8601 = Pattern.compile("(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2})(?:\\.\\d+)?(Z|[+-]\\d{2}:?\\d{2})");
+
+    /**
+     * Starts computing a new signature.
+     * Write the data to be signed to the returned stream, then call {@link SignatureStream#generate()}.
+     */
+    SignatureStream start() throws PGPException, GeneralSecurityException {
+        SignatureStream s;
+        if (digestSigner!=null) {
+            s = new DigestStream(digestSigner);
+        } else
+        if (creationTime!=null) {
+            // PGPSignatureGenerator stamps the current time, and DSA with it uses a random secret
+            s = new DigestStream(keySigner);
+        } else {
+            PGPSignatureGenerator sGen = new PGPSignatureGenerator(publicKey.getAlgorithm(), getHashAlgorithm(), PROVIDER);
+            sGen.initSign(PGPSignature.BINARY_DOCUMENT, privateKey);
+            s = new GeneratorStream(sGen);
+        }
+        return next!=null ? new MultiStream(s,next.start()) : s;
+    }
+
+    PGPSignature[] sign(InputStream in) throws IOException, PGPException, GeneralSecurityException {
+        SignatureStream s = start();
+        try {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len=in.read(buf))>=0)
+                s.write(buf,0,len);
+        } catch (GeneratorException e) {
+            throw e.getCause();
+        }
+        return s.generate();
+    }
+
+    /**
+     * Signs the given file.
+     *
+     * <p>
+     * Unlike {@link #sign(InputStream)}, large files are read through memory-mapped windows
+     * and fed to the generator in big chunks, which avoids the read syscall per a few KBs.
+     */
+    public PGPSignature[] sign(File in) throws IOException, PGPException, GeneralSecurityException {
+        return sign(in,(OutputStream)null);
+    }
+
+    /**
+     * @param tee
+     *      If non-null, the contents of the file are also written here as they are read,
+     *      such as to compute checksums in the same pass.
+     */
+    public PGPSignature[] sign(File in, OutputStream tee) throws IOException, PGPException, GeneralSecurityException {
+        SignatureStream s = start();
+        try {
+            copy(in,tee(s,tee));
+        } catch (GeneratorException e) {
+            throw e.getCause();
+        }
+        return s.generate();
+    }
+
+    /**
+     * Creates a context to sign many files in a row on one thread, reusing everything that can be reused.
+     */
+    public SigningContext newContext() {
+        return new SigningContext(this);
+    }
+
+    /**
+     * Computes the digest to be signed, which is the first half of signing the file.
+     *
+     * <p>
+     * The private key operation on the result can then happen anywhere, such as in another process,
+     * and {@link PendingSignature#complete(java.math.BigInteger...)} turns its result into the signature.
+     * The state of the digest before the signature trailer is kept, so that the result can also be signed
+     * by a remote {@link org.kohsuke.maven.pgp.daemon.SigningDaemon}.
+     *
+     * @throws IllegalStateException
+     *      if this signer signs with multiple keys, as the result would only be good for the first one.
+     */
+    public PendingSignature digest(File in) throws IOException, GeneralSecurityException {
+        if (next!=null)
+            throw new IllegalStateException("Only a signer of a single key can compute the digest to be signed");
+        DigestStream s = new DigestStream(digestSigner,ResumableDigest.newInstance(hashAlgorithm));
+        copy(in,s);
+        return s.pending();
     }
 
     /**
      * Generates the signature of the given input stream as an ASCII file into the given output stream.
      */
-    void sign(InputStream in, OutputStream signatureOutput) throws PGPException, IOException, GeneralSecurityException {
+    public void sign(InputStream in, OutputStream signatureOutput) throws PGPException, IOException, GeneralSecurityException {
+        writeArmored(sign(in),signatureOutput);
+    }
+
+    public void sign(File in, File signature) throws PGPException, IOException, GeneralSecurityException {
+        sign(in,signature,null,null);
+    }
+
+    /**
+     * Signs the file once, and writes the signature in the ASCII armored form, the binary form, or both.
+     *
+     * @param armored
+     *      If non-null, the ASCII armored signature, customarily "*.asc", is written here.
+     * @param binary
+     *      If non-null, the binary signature, customarily "*.sig", is written here.
+     * @param metrics
+     *      If non-null, the time spent on hashing and writing the signature is recorded here.
+     */
+    void sign(File in, File armored, File binary, SigningMetrics metrics) throws PGPException, IOException, GeneralSecurityException {
+        sign(in,armored,binary,metrics,null);
+    }
+
+    /**
+     * @param tee
+     *      See {@link #sign(File, OutputStream)}.
+     */
+    void sign(File in, File armored, File binary, SigningMetrics metrics, OutputStream tee) throws PGPException, IOException, GeneralSecurityException {
+        sign(in,armored,binary,metrics,tee,null);
+    }
+
+    /**
+     * Decides whether an existing signature can be used instead of generating one,
+     * after the file is read and before the private key operation.
+     */
+    interface Reuse {
+        boolean reuse() throws IOException;
+    }
+
+    /**
+     * @param reuse
+     *      If non-null, consulted once the file is read, such as to look up a cache by the digest computed through the tee.
+     * @return
+     *      false if the signature is not generated because {@code reuse} said so, in which case nothing is written.
+     */
+    boolean sign(File in, File armored, File binary, SigningMetrics metrics, OutputStream tee, Reuse reuse) throws PGPException, IOException, GeneralSecurityException {
+        long start = System.nanoTime();
+        SignatureStream s = start();
+        try {
+            copy(in,tee(s,tee));
+        } catch (GeneratorException e) {
+            throw e.getCause();
+        }
+        if (reuse!=null && reuse.reuse())
+            return false;
+        PGPSignature[] sig = s.generate();
+        long hashed = System.nanoTime();
+
+        if (armored!=null) {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(armored));
+            try {
+                writeArmored(sig,out);
+            } finally {
+                out.close();
+            }
+        }
+        if (binary!=null) {
+            OutputStream out = new FileOutputStream(binary);
+            try {
+                writeBinary(sig,out);
+            } finally {
+                out.close();
+            }
+        }
+
+        if (metrics!=null)
+            metrics.signed(in,hashed-start,System.nanoTime()-hashed);
+        return true;
+    }
+
+    public void writeArmored(PGPSignature[] sigs, OutputStream signatureOutput) throws IOException {
         BCPGOutputStream bOut = new BCPGOutputStream(new ArmoredOutputStream(signatureOutput));
-        sign(in).encode(bOut);
+        for (PGPSignature sig : sigs)
+            sig.encode(bOut);
+        bOut.close();
+    }
+
+    /**
+     * Writes the signatures in the binary form, which is smaller and cheaper to write than the armored form.
+     */
+    public void writeBinary(PGPSignature[] sigs, OutputStream signatureOutput) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        BCPGOutputStream bOut = new BCPGOutputStream(buf);
+        for (PGPSignature sig : sigs)
+            sig.encode(bOut);
         bOut.close();
+        signatureOutput.write(buf.toByteArray());   // in one write
     }
 
-    void sign(File in, File signature) throws PGPException, IOException, GeneralSecurityException {
-        InputStream fin = new BufferedInputStream(new FileInputStream(in));
-        OutputStream out = new BufferedOutputStream(new FileOutputStream(signature));
+    /**
+     * Converts an ASCII armored signature file to the binary form, without signing again.
+     */
+    static void dearmor(File armored, File binary) throws IOException {
+        InputStream in = PGPUtil.getDecoderStream(new BufferedInputStream(new FileInputStream(armored)));
         try {
-            sign(fin,out);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(binary));
+            try {
+                byte[] buf = new byte[4096];
+                int len;
+                while ((len=in.read(buf))>=0)
+                    out.write(buf,0,len);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checks if the given signature file has a valid signature of the file by the key of this signer,
+     * and with the hash algorithm of this signer. The file is read the same way it's signed.
+     *
+     * @return
+     *      false if the signature doesn't verify, if there's no signature by this key in the file,
+     *      or if this signer has a fixed creation time and the signature has a different one.
+     */
+    public boolean verify(File in, File signature) throws IOException, PGPException, GeneralSecurityException {
+        List<PGPSignature> sigs = new ArrayList<PGPSignature>();
+        for (Signer s=this; s!=null; s=s.next) {
+            PGPSignature sig = s.readSignature(signature);
+            if (sig==null || sig.getHashAlgorithm()!=hashAlgorithm)
+                return false;
+            if (s.creationTime!=null && !s.creationTime.equals(sig.getCreationTime()))
+                return false;
+            sig.initVerify(s.publicKey,PROVIDER);
+            sigs.add(sig);
+        }
+
+        SignatureStream v = new VerifierStream(sigs.get(0));
+        for (int i=1; i<sigs.size(); i++)
+            v = new MultiStream(v,new VerifierStream(sigs.get(i)));
+        try {
+            copy(in,v);
+        } catch (GeneratorException e) {
+            throw e.getCause();
+        }
+
+        for (PGPSignature sig : sigs)
+            if (!sig.verify())
+                return false;
+        return true;
+    }
+
+    /**
+     * Checks if the signature file has a binary document signature by every key of this signer,
+     * made with the hash algorithm of this signer, without reading the signed file.
+     * Unlike {@link #verify(File, File)}, this doesn't tell if the signature is valid,
+     * only that it's the kind of signature this signer would have made.
+     */
+    boolean hasSignature(File signature) throws IOException {
+        for (Signer s=this; s!=null; s=s.next) {
+            PGPSignature sig = s.readSignature(signature);
+            if (sig==null || sig.getSignatureType()!=PGPSignature.BINARY_DOCUMENT || sig.getHashAlgorithm()!=hashAlgorithm)
+                return false;
+            if (s.creationTime!=null && !s.creationTime.equals(sig.getCreationTime()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the signature by the key of this signer from the signature file, armored or not.
+     *
+     * @return
+     *      null if the file doesn't exist, isn't a signature, or has no signature by this key.
+     */
+    PGPSignature readSignature(File signature) throws IOException {
+        if (!signature.exists())
+            return null;
+
+        InputStream in = PGPUtil.getDecoderStream(new BufferedInputStream(new FileInputStream(signature)));
+        try {
+            Object o = new PGPObjectFactory(in).nextObject();
+            if (!(o instanceof PGPSignatureList))
+                return null;
+            PGPSignatureList list = (PGPSignatureList)o;
+            for (int i=0; i<list.size(); i++)
+                if (list.get(i).getKeyID()==publicKey.getKeyID())
+                    return list.get(i);
+            return null;
+        } catch (IOException e) {
+            return null;    // corrupted, so it needs to be signed again
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Sends the whole contents of the file to the given stream.
+     *
+     * <p>
+     * Files smaller than {@link #MAPPED_THRESHOLD} are simply read, while bigger ones are mapped
+     * into memory {@link #MAPPED_WINDOW} bytes at a time, and handed to the stream in {@link #CHUNK} sized pieces.
+     */
+    static void copy(File in, OutputStream sink) throws IOException {
+        copy(in,sink,new byte[8192]);
+    }
+
+    /**
+     * @param buf
+     *      Buffer to read small files with.
+     */
+    static void copy(File in, OutputStream sink, byte[] buf) throws IOException {
+        FileInputStream fin = new FileInputStream(in);
+        try {
+            // small files don't need the channel, which is allocated and kept by the stream once asked for.
+            // reading till EOF is correct even if the file grows in the mean time
+            if (in.length()<MAPPED_THRESHOLD) {
+                int len;
+                while ((len=fin.read(buf))>=0)
+                    sink.write(buf,0,len);
+                return;
+            }
+
+            FileChannel ch = fin.getChannel();
+            long size = ch.size();
+            buf = new byte[CHUNK];
+            for (long pos=0; pos<size; pos+=MAPPED_WINDOW) {
+                MappedByteBuffer window = ch.map(MapMode.READ_ONLY, pos, Math.min(MAPPED_WINDOW, size-pos));
+                while (window.hasRemaining()) {
+                    int len = Math.min(buf.length, window.remaining());
+                    window.get(buf,0,len);
+                    sink.write(buf,0,len);
+                }
+            }
         } finally {
             fin.close();
-            out.close();
         }
     }
 
-    /*package*/ static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+    /**
+     * {@link OutputStream} that receives the data to be signed.
+     */
+    static abstract class SignatureStream extends OutputStream {
+        /**
+         * Generates the signatures of the data written so far, one for each key.
+         */
+        abstract PGPSignature[] generate() throws PGPException, IOException, GeneralSecurityException;
+    }
+
+    /**
+     * Adapts {@link PGPSignatureGenerator} to {@link OutputStream}.
+     */
+    static final class GeneratorStream extends SignatureStream {
+        private final PGPSignatureGenerator sGen;
+
+        GeneratorStream(PGPSignatureGenerator sGen) {
+            this.sGen = sGen;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                sGen.update((byte)b);
+            } catch (SignatureException e) {
+                throw new GeneratorException(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                sGen.update(b,off,len);
+            } catch (SignatureException e) {
+                throw new GeneratorException(e);
+            }
+        }
+
+        @Override
+        PGPSignature[] generate() throws PGPException, SignatureException {
+            return new PGPSignature[]{sGen.generate()};
+        }
+    }
+
+    /**
+     * Adapts {@link PGPSignature} being verified to {@link OutputStream}.
+     */
+    static final class VerifierStream extends SignatureStream {
+        private final PGPSignature sig;
+
+        VerifierStream(PGPSignature sig) {
+            this.sig = sig;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                sig.update((byte)b);
+            } catch (SignatureException e) {
+                throw new GeneratorException(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                sig.update(b,off,len);
+            } catch (SignatureException e) {
+                throw new GeneratorException(e);
+            }
+        }
+
+        @Override
+        PGPSignature[] generate() {
+            return new PGPSignature[]{sig};
+        }
+    }
+
+    /**
+     * Sends the same data to two streams, for signing with multiple keys.
+     */
+    static final class MultiStream extends SignatureStream {
+        private final SignatureStream first, second;
+
+        MultiStream(SignatureStream first, SignatureStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b,off,len);
+            second.write(b,off,len);
+        }
+
+        @Override
+        PGPSignature[] generate() throws PGPException, IOException, GeneralSecurityException {
+            PGPSignature[] a = first.generate();
+            PGPSignature[] b = second.generate();
+            PGPSignature[] r = new PGPSignature[a.length+b.length];
+            System.arraycopy(a,0,r,0,a.length);
+            System.arraycopy(b,0,r,a.length,b.length);
+            return r;
+        }
+    }
+
+    /**
+     * Returns a stream that writes to both streams, either of which can be null.
+     */
+    static OutputStream tee(OutputStream first, OutputStream second) {
+        if (first==null)    return second;
+        if (second==null)   return first;
+        return new Tee(first,second);
+    }
+
+    /**
+     * Writes the data to another stream as well as the signature stream.
+     */
+    private static final class Tee extends OutputStream {
+        private final OutputStream first, second;
+
+        Tee(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b,off,len);
+            second.write(b,off,len);
+        }
+    }
+
+    /**
+     * Computes the digest locally, and has a {@link DigestSigner} sign it.
+     */
+    final class DigestStream extends SignatureStream {
+        private final MessageDigest md;
+        private final DigestSigner digestSigner;
+
+        DigestStream(DigestSigner digestSigner) throws NoSuchAlgorithmException {
+            this(digestSigner,digestSigner.newDigest(hashAlgorithm));
+        }
+
+        DigestStream(DigestSigner digestSigner, MessageDigest md) {
+            this.md = md;
+            this.digestSigner = digestSigner;
+        }
+
+        @Override
+        public void write(int b) {
+            md.update((byte)b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            md.update(b,off,len);
+        }
+
+        PendingSignature pending() throws IOException {
+            return PendingSignature.create(publicKey.getKeyID(),publicKey.getAlgorithm(),hashAlgorithm,md,
+                    creationTime!=null ? creationTime : new Date());
+        }
+
+        @Override
+        PGPSignature[] generate() throws PGPException, IOException, GeneralSecurityException {
+            PendingSignature p = pending();
+            return new PGPSignature[]{p.complete(digestSigner.sign(p))};
+        }
+    }
+
+    /**
+     * Tunnels {@link SignatureException} through {@link OutputStream}.
+     */
+    static final class GeneratorException extends IOException {
+        GeneratorException(SignatureException cause) {
+            initCause(cause);
+        }
+
+        @Override
+        public SignatureException getCause() {
+            return (SignatureException)super.getCause();
+        }
+    }
+
+    /**
+     * Files bigger than this are memory-mapped for signing.
+     */
+    static final long MAPPED_THRESHOLD = 4*1024*1024;
+
+    /**
+     * Size of the memory-mapped window. Bounded so that we don't exhaust the address space on 32bit JVMs.
+     */
+    static final long MAPPED_WINDOW = 64*1024*1024;
+
+    /**
+     * Size of the chunk handed to {@link PGPSignatureGenerator} at once.
+     */
+    static final int CHUNK = 1024*1024;
+
+    public static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
 }
@@ -0,0 +1,70 @@
+package org.kohsuke.maven.pgp;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads a {@link DigestSigner}, to sign with a private key that's kept outside Maven.
+ *
+ * <p>
+ * Implementations should be plexus components, and its role hint is
+ * matched against the signer configuration parameter's scheme portion.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public abstract class SignerLoader {
+    /**
+     * @param mojo
+     *      Mojo that's driving the execution.
+     * @param publicKey
+     *      The public key of the key to sign with.
+     * @param specifier
+     *      The signer parameter specified to {@link PgpMojo}, except the first scheme part.
+     *      If the loader needs to take additional parameters, it should do so from this string.
+     */
+    public abstract DigestSigner load(PgpMojo mojo, PGPPublicKey publicKey, String specifier) throws IOException, MojoExecutionException;
+
+    /**
+     * Loads the signer of one of the keys to sign with.
+     *
+     * <p>
+     * Loaders that need a pass phrase, such as a PIN, should override this method, and obtain it with
+     * {@link PgpMojo#loadPassPhrase(SigningKey, PGPSecretKey)}, so that it comes from the right key.
+     *
+     * @param key
+     *      The key being loaded, whose signer this specifier comes from.
+     */
+    public DigestSigner load(PgpMojo mojo, SigningKey key, PGPPublicKey publicKey, String specifier) throws IOException, MojoExecutionException {
+        return load(mojo,publicKey,specifier);
+    }
+
+    /**
+     * Loads the public key of the key that this signer signs with,
+     * for signers that know which key to use by themselves.
+     *
+     * @return
+     *      null if the key should be loaded through the secretkey parameter of {@link PgpMojo}, which is the default.
+     */
+    public PGPPublicKey loadPublicKey(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException {
+        return null;
+    }
+
+    /**
+     * Parses "a=b&c=d&..." into a map.
+     * Useful for creating a structure in the specifier argument to the load method.
+     */
+    protected final Map<String,String> parseQueryParameters(String specifier) {
+        Map<String,String> opts = new HashMap<String, String>();
+        for (String token : specifier.split("&")) {
+            int idx = token.indexOf('=');
+            if (idx<0)  opts.put(token,"");
+            else        opts.put(token.substring(0,idx),token.substring(idx+1));
+        }
+        return opts;
+    }
+}
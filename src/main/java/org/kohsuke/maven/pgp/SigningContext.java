@@ -0,0 +1,218 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.kohsuke.maven.pgp.Signer.GeneratorException;
+import org.kohsuke.maven.pgp.Signer.SignatureStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Signs many files in a row on one thread, such as millions of small files in a repository,
+ * without allocating much besides the signatures themselves.
+ *
+ * <p>
+ * {@link Signer} sets up a new signature generator, buffers, and an ASCII armor encoder for every file,
+ * which dominates the cost of signing small files. This class keeps them and reuses them for the next file.
+ * The signature generators reset themselves once a signature is generated, and are discarded if signing fails
+ * in the middle.
+ *
+ * <p>
+ * This class is not thread-safe. Create one for each thread with {@link Signer#newContext()}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class SigningContext {
+    private final Signer signer;
+
+    /**
+     * Signature generators fed with the file being signed. Null if they need to be created anew.
+     */
+    private SignatureStream stream;
+
+    private final byte[] buf = new byte[8192];
+
+    /**
+     * Encoded signature packets.
+     */
+    private final Buffer packets = new Buffer();
+    private final BCPGOutputStream packetStream = new BCPGOutputStream(packets);
+
+    /**
+     * ASCII armored signature packets.
+     */
+    private byte[] armor = new byte[1024];
+    private int armorLen;
+
+    SigningContext(Signer signer) {
+        this.signer = signer;
+    }
+
+    /**
+     * Signs the given file.
+     */
+    public PGPSignature[] sign(File in) throws IOException, PGPException, GeneralSecurityException {
+        if (stream==null)
+            stream = signer.start();
+
+        boolean ok = false;
+        try {
+            Signer.copy(in,stream,buf);
+            PGPSignature[] r = stream.generate();
+            ok = true;
+            return r;
+        } catch (GeneratorException e) {
+            throw e.getCause();
+        } finally {
+            if (!ok)
+                stream = null;  // half way through the data
+        }
+    }
+
+    /**
+     * Signs the file, and writes the signature in the ASCII armored form, the binary form, or both,
+     * just like {@link Signer#sign(File, File, File, SigningMetrics)}.
+     */
+    public void sign(File in, File armored, File binary) throws IOException, PGPException, GeneralSecurityException {
+        PGPSignature[] sigs = sign(in);
+
+        packets.reset();
+        for (PGPSignature sig : sigs)
+            sig.encode(packetStream);
+
+        if (armored!=null) {
+            armor();
+            OutputStream out = new FileOutputStream(armored);
+            try {
+                out.write(armor,0,armorLen);
+            } finally {
+                out.close();
+            }
+        }
+        if (binary!=null) {
+            OutputStream out = new FileOutputStream(binary);
+            try {
+                out.write(packets.array(),0,packets.size());
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * ASCII armors {@link #packets} into {@link #armor}, as specified in RFC 4880 section 6.2.
+     */
+    private void armor() {
+        byte[] data = packets.array();
+        int len = packets.size();
+
+        armorLen = 0;
+        put(HEADER);
+        int crc = CRC24_INIT;
+        int column = 0;
+        for (int i=0; i<len; i+=3) {
+            int n = Math.min(3,len-i);
+            int b = 0;
+            for (int j=0; j<3; j++) {
+                b <<= 8;
+                if (j<n) {
+                    int x = data[i+j]&0xFF;
+                    b |= x;
+                    crc = crc24(crc,x);
+                }
+            }
+            base64(b,n);
+            if ((column+=4)==LINE_LENGTH && i+3<len) {
+                put(NEWLINE);
+                column = 0;
+            }
+        }
+        put(NEWLINE);
+        put((byte)'=');
+        base64(crc&0xFFFFFF,3);
+        put(NEWLINE);
+        put(FOOTER);
+    }
+
+    /**
+     * Writes 3 bytes in the lower 24 bits of the given int as 4 characters,
+     * padding the ones that encode the bytes beyond the first n.
+     */
+    private void base64(int b, int n) {
+        ensure(4);
+        armor[armorLen++] = BASE64[(b>>18)&0x3F];
+        armor[armorLen++] = BASE64[(b>>12)&0x3F];
+        armor[armorLen++] = n>1 ? BASE64[(b>>6)&0x3F] : (byte)'=';
+        armor[armorLen++] = n>2 ? BASE64[b&0x3F] : (byte)'=';
+    }
+
+    private static int crc24(int crc, int b) {
+        crc ^= b<<16;
+        for (int i=0; i<8; i++) {
+            crc <<= 1;
+            if ((crc&0x1000000)!=0)
+                crc ^= CRC24_POLY;
+        }
+        return crc;
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        armor[armorLen++] = b;
+    }
+
+    private void put(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b,0,armor,armorLen,b.length);
+        armorLen += b.length;
+    }
+
+    private void ensure(int n) {
+        if (armorLen+n>armor.length) {
+            byte[] a = new byte[Math.max(armor.length*2,armorLen+n)];
+            System.arraycopy(armor,0,a,0,armorLen);
+            armor = a;
+        }
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} that exposes its buffer, to avoid copying it.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static final String NL = System.getProperty("line.separator");
+
+    private static final byte[] NEWLINE = ascii(NL);
+    private static final byte[] HEADER = ascii("-----BEGIN PGP SIGNATURE-----"+NL+NL);
+    private static final byte[] FOOTER = ascii("-----END PGP SIGNATURE-----"+NL);
+    private static final byte[] BASE64 = ascii("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+
+    /**
+     * Number of characters in a line of the armored data.
+     */
+    private static final int LINE_LENGTH = 64;
+
+    private static final int CRC24_INIT = 0xB704CE;
+    private static final int CRC24_POLY = 0x1864CFB;
+
+    private static byte[] ascii(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i=0; i<b.length; i++)
+            b[i] = (byte)s.charAt(i);
+        return b;
+    }
+}
@@ -0,0 +1,24 @@
+package org.kohsuke.maven.pgp;
+
+/**
+ * One of the keys to sign with, when artifacts are signed with multiple keys.
+ * Each property is specified the same way as the parameter of the same name in {@link PgpMojo}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SigningKey {
+    /**
+     * How to retrieve the secret key.
+     */
+    public String secretkey;
+
+    /**
+     * Where to retrieve the secret key pass phrase from.
+     */
+    public String passphrase;
+
+    /**
+     * How to sign with a private key that's kept outside Maven, if any.
+     */
+    public String signer;
+}
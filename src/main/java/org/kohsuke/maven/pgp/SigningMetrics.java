@@ -0,0 +1,146 @@
+package org.kohsuke.maven.pgp;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records where the time goes while signing, so that slow builds can be diagnosed.
+ *
+ * <p>
+ * All the times are in nanoseconds. -1 means the phase didn't happen, for example because
+ * the key was already unlocked by an earlier module. This class is thread-safe.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class SigningMetrics {
+    long keyLoad = -1;
+    long passphrase = -1;
+    long extraction = -1;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    static final class Entry {
+        final String file;
+        /**
+         * "signed", or how we avoided signing it, such as "cached".
+         */
+        final String how;
+        final long bytes;
+        final long hash;
+        final long write;
+
+        Entry(String file, String how, long bytes, long hash, long write) {
+            this.file = file;
+            this.how = how;
+            this.bytes = bytes;
+            this.hash = hash;
+            this.write = write;
+        }
+
+        /**
+         * Hashing throughput in MB/s.
+         */
+        double throughput() {
+            if (hash<=0)    return 0;
+            return bytes/(1024.0*1024) / (hash/1e9);
+        }
+    }
+
+    /**
+     * Records a file that was signed.
+     */
+    synchronized void signed(File file, long hash, long write) {
+        entries.add(new Entry(file.getName(),"signed",file.length(),hash,write));
+    }
+
+    /**
+     * Records a file whose signature was obtained without signing it.
+     */
+    synchronized void reused(File file, String how) {
+        entries.add(new Entry(file.getName(),how,file.length(),-1,-1));
+    }
+
+    private synchronized List<Entry> sorted() {
+        List<Entry> r = new ArrayList<Entry>(entries);
+        Collections.sort(r,new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return a.file.compareTo(b.file);
+            }
+        });
+        return r;
+    }
+
+    /**
+     * Prints the summary table.
+     */
+    void report(Log log) {
+        log.info(String.format(Locale.ENGLISH,"Key load %s, passphrase %s, private key extraction %s",
+                ms(keyLoad),ms(passphrase),ms(extraction)));
+        log.info(String.format(Locale.ENGLISH,"%-48s %8s %12s %10s %10s %10s","File","How","Bytes","Hash","Write","MB/s"));
+        for (Entry e : sorted()) {
+            log.info(String.format(Locale.ENGLISH,"%-48s %8s %12d %10s %10s %10.1f",
+                    e.file,e.how,e.bytes,ms(e.hash),ms(e.write),e.throughput()));
+        }
+    }
+
+    private static String ms(long nanos) {
+        if (nanos<0)    return "-";
+        return String.format(Locale.ENGLISH,"%.1fms",nanos/1e6);
+    }
+
+    /**
+     * Writes the metrics as "pgp-signing-metrics.json" and "pgp-signing-metrics.csv" into the given directory.
+     */
+    void write(File dir) throws IOException {
+        dir.mkdirs();
+        List<Entry> all = sorted();
+
+        PrintWriter w = open(new File(dir,"pgp-signing-metrics.json"));
+        try {
+            w.printf(Locale.ENGLISH,"{\"keyLoad\":%d,\"passphrase\":%d,\"extraction\":%d,\"artifacts\":[",keyLoad,passphrase,extraction);
+            boolean first = true;
+            for (Entry e : all) {
+                if (!first) w.print(',');
+                first = false;
+                w.printf(Locale.ENGLISH,"{\"file\":%s,\"how\":\"%s\",\"bytes\":%d,\"hash\":%d,\"write\":%d,\"throughput\":%.3f}",
+                        quote(e.file),e.how,e.bytes,e.hash,e.write,e.throughput());
+            }
+            w.println("]}");
+        } finally {
+            w.close();
+        }
+
+        w = open(new File(dir,"pgp-signing-metrics.csv"));
+        try {
+            w.println("file,how,bytes,hash,write,throughput");
+            for (Entry e : all)
+                w.printf(Locale.ENGLISH,"%s,%s,%d,%d,%d,%.3f%n",e.file.replace(",","_"),e.how,e.bytes,e.hash,e.write,e.throughput());
+        } finally {
+            w.close();
+        }
+    }
+
+    private static PrintWriter open(File f) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(f),"UTF-8"));
+    }
+
+    private static String quote(String s) {
+        StringBuilder b = new StringBuilder("\"");
+        for (char ch : s.toCharArray()) {
+            if (ch=='"' || ch=='\\')    b.append('\\').append(ch);
+            else if (ch<0x20)           b.append(String.format("\\u%04x",(int)ch));
+            else                        b.append(ch);
+        }
+        return b.append('"').toString();
+    }
+}
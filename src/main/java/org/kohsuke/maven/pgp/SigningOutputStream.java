@@ -0,0 +1,123 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Writes a file and signs it at the same time, so that the file doesn't have to be read again for signing.
+ *
+ * <p>
+ * Plugins that produce artifacts can write them through this stream. The signature is written when
+ * the stream is closed, and as long as it's written to where {@link PgpMojo} puts signatures
+ * (that is, "${project.build.directory}/NAME.asc") and the file is left intact,
+ * {@link PgpMojo} attaches that signature without signing the file again.
+ * The path, size and timestamp of the file are recorded along with the key, and just like {@link FileDigests},
+ * {@link PgpMojo} trusts the record without reading the file, so a file that is modified afterward is signed again
+ * as long as its size or timestamp changes.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SigningOutputStream extends FilterOutputStream {
+    private final Signer signer;
+    private final Signer.SignatureStream sink;
+    private final File file;
+    private final File signature;
+    private boolean closed;
+
+    /**
+     * @param file
+     *      File to write.
+     * @param signature
+     *      The ASCII armored signature of the file is written here when this stream is closed.
+     */
+    public SigningOutputStream(Signer signer, File file, File signature) throws IOException, PGPException, GeneralSecurityException {
+        this(signer,signer.start(),file,signature);
+    }
+
+    /**
+     * The signature generators are set up before the file is opened, so that the file isn't left open
+     * if that fails.
+     */
+    private SigningOutputStream(Signer signer, Signer.SignatureStream sink, File file, File signature) throws IOException {
+        super(new BufferedOutputStream(new FileOutputStream(file)));
+        this.signer = signer;
+        this.sink = sink;
+        this.file = file;
+        this.signature = signature;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        sink.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b,off,len);
+        sink.write(b,off,len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)     return;
+        closed = true;
+        super.close();
+
+        try {
+            OutputStream o = new BufferedOutputStream(new FileOutputStream(signature));
+            try {
+                signer.writeArmored(sink.generate(),o);
+            } finally {
+                o.close();
+            }
+        } catch (PGPException e) {
+            throw (IOException)new IOException("Failed to sign "+file).initCause(e);
+        } catch (GeneralSecurityException e) {
+            throw (IOException)new IOException("Failed to sign "+file).initCause(e);
+        }
+
+        FileUtils.fileWrite(record(signature).getPath(),describe(signer,file));
+    }
+
+    /**
+     * Checks if the given signature was produced by this stream with the same key,
+     * and the file hasn't been modified since, judging from its size and timestamp. The file isn't read.
+     */
+    static boolean isPresigned(Signer signer, File file, File signature) throws IOException {
+        File r = record(signature);
+        if (!r.exists() || !signature.exists())
+            return false;
+        String expected = describe(signer,file);
+        String actual;
+        try {
+            actual = FileUtils.fileRead(r);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        return actual.equals(expected);
+    }
+
+    /**
+     * Since the stream and {@link PgpMojo} may well be loaded in different class loaders,
+     * we tell them about signed files through a file next to the signature.
+     */
+    private static File record(File signature) {
+        return new File(signature.getPath()+".presigned");
+    }
+
+    private static String describe(Signer signer, File file) {
+        return file.getAbsolutePath()+"\n"+file.length()+"\n"+file.lastModified()+"\n"
+                +signer.getKeyIDs()+"\n"+signer.getHashAlgorithm()+"\n"
+                +(signer.getCreationTime()!=null ? signer.getCreationTime().getTime()/1000+"\n" : "");
+    }
+}
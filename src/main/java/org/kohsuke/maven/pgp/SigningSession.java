@@ -0,0 +1,206 @@
+package org.kohsuke.maven.pgp;
+
+import org.codehaus.plexus.component.annotations.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps unlocked keys around for the duration of a build,
+ * so that every module in a reactor doesn't have to load and decrypt the key again.
+ * It also remembers the files signed in the build, so that identical files are signed only once,
+ * and runs the signing that happens in the background with "pgp.async".
+ * Loaders keep the verified pass-phrases and the connections to agents here, so that they are gone
+ * along with the keys at the end of the build.
+ *
+ * <p>
+ * Being a singleton component, one instance is shared by all the executions of {@link PgpMojo}.
+ * Signers are keyed by the secret key and passphrase specifiers, and they are forgotten
+ * at the end of the build. When the plugin is a build extension, {@link SigningSessionParticipant}
+ * tells when that is. Otherwise the session is closed after the last module of a sequential build,
+ * and in a parallel build it lives until a different build starts.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Component(role=SigningSession.class)
+public class SigningSession {
+    /**
+     * Reactor projects of the build that the signers belong to, which identifies the build.
+     */
+    private List<?> reactor;
+    private final Map<String,Signer> signers = new HashMap<String,Signer>();
+    private SignedFiles signedFiles = new SignedFiles();
+    /**
+     * Signing in progress in the background, keyed by the project.
+     */
+    private final Map<Object,Future<?>> pending = new HashMap<Object,Future<?>>();
+    private ExecutorService background;
+    /**
+     * True if {@link SigningSessionParticipant} closes this session at the end of the build.
+     */
+    private volatile boolean managed;
+    /**
+     * Pass-phrases verified against the keys, keyed by the key ID.
+     */
+    private final Map<Long,char[]> passphrases = new HashMap<Long,char[]>();
+    /**
+     * Connections and such to be closed at the end of the build.
+     */
+    private final List<Closeable> resources = new ArrayList<Closeable>();
+
+    /**
+     * Returns the signer created earlier in this build, if any.
+     */
+    synchronized Signer get(List<?> reactorProjects, String key) {
+        if (reactor!=reactorProjects) {
+            close();
+            reactor = reactorProjects;
+        }
+        return signers.get(key);
+    }
+
+    synchronized void put(String key, Signer signer) {
+        signers.put(key,signer);
+    }
+
+    /**
+     * Files signed so far in this build.
+     */
+    synchronized SignedFiles getSignedFiles() {
+        return signedFiles;
+    }
+
+    /**
+     * Starts a background job for the given project.
+     */
+    synchronized void submit(Object key, Callable<?> job) {
+        if (background==null)
+            background = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r,"pgp-maven-plugin background signing");
+                    t.setDaemon(true);  // don't keep a failed build from exiting
+                    return t;
+                }
+            });
+        pending.put(key,background.submit(job));
+    }
+
+    /**
+     * Returns the background job for the given project, and forgets it.
+     *
+     * @return
+     *      null if there's no such job.
+     */
+    synchronized Future<?> take(Object key) {
+        return pending.remove(key);
+    }
+
+    /**
+     * Waits for the background jobs that nobody took with the "await" goal, rather than abandoning them,
+     * so that they at least finish writing the signatures.
+     *
+     * @return
+     *      The projects whose jobs were left, each to the failure of the job, or null if it succeeded.
+     */
+    Map<Object,Throwable> joinAbandoned() {
+        Map<Object,Future<?>> left;
+        synchronized (this) {
+            left = new LinkedHashMap<Object,Future<?>>(pending);
+            pending.clear();
+        }
+
+        Map<Object,Throwable> r = new LinkedHashMap<Object,Throwable>();
+        for (Map.Entry<Object,Future<?>> e : left.entrySet()) {
+            try {
+                e.getValue().get();
+                r.put(e.getKey(),null);
+            } catch (ExecutionException x) {
+                r.put(e.getKey(),x.getCause());
+            } catch (InterruptedException x) {
+                e.getValue().cancel(true);
+                r.put(e.getKey(),x);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Returns the pass-phrase of the given key verified earlier in this build, if any.
+     */
+    public synchronized String getPassphrase(long keyID) {
+        char[] p = passphrases.get(keyID);
+        return p!=null ? new String(p) : null;
+    }
+
+    /**
+     * Remembers the pass-phrase of the given key until the end of the build.
+     * It should have been verified, as it'll be used without asking again.
+     */
+    public synchronized void putPassphrase(long keyID, String passphrase) {
+        char[] old = passphrases.put(keyID,passphrase.toCharArray());
+        if (old!=null)
+            Arrays.fill(old,'\0');
+    }
+
+    /**
+     * Has the given resource closed at the end of the build.
+     */
+    public synchronized void closeAtEnd(Closeable c) {
+        resources.add(c);
+    }
+
+    void setManaged(boolean managed) {
+        this.managed = managed;
+    }
+
+    boolean isManaged() {
+        return managed;
+    }
+
+    /**
+     * Forgets all the unlocked keys, and abandons the background jobs that nobody waited for.
+     *
+     * <p>
+     * The keys are destroyed as far as {@link Signer#destroy()} can, which doesn't include wiping
+     * the secret of a key decrypted by BouncyCastle, as it's kept in immutable {@link java.math.BigInteger}s.
+     * The remembered pass-phrases are wiped, although the copies handed out as {@link String}s can't be.
+     */
+    void close() {
+        List<Closeable> toClose;
+        synchronized (this) {
+            for (Future<?> f : pending.values())
+                f.cancel(true);
+            pending.clear();
+            for (Signer s : signers.values())
+                s.destroy();
+            signers.clear();
+            for (char[] p : passphrases.values())
+                Arrays.fill(p,'\0');
+            passphrases.clear();
+            signedFiles = new SignedFiles();
+            reactor = null;
+            toClose = new ArrayList<Closeable>(resources);
+            resources.clear();
+        }
+        // outside the lock, as closing may need to lock others
+        for (Closeable c : toClose) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // nothing more we can do
+            }
+        }
+    }
+}
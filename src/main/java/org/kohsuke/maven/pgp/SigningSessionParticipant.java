@@ -0,0 +1,67 @@
+package org.kohsuke.maven.pgp;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+
+import java.util.Map;
+
+/**
+ * Closes {@link SigningSession} when the build ends, regardless of which modules ran the plugin
+ * and in what order they finished.
+ *
+ * <p>
+ * Maven only calls this when the plugin is loaded as a build extension with {@code <extensions>true</extensions>},
+ * and it only calls {@link #afterSessionEnd(MavenSession)} since 3.2.1.
+ * Without it, {@link PgpMojo} falls back to closing the session in the last module of a sequential build.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Component(role=AbstractMavenLifecycleParticipant.class, hint="pgp")
+public class SigningSessionParticipant extends AbstractMavenLifecycleParticipant {
+    @Requirement
+    private SigningSession session;
+
+    @Override
+    public void afterProjectsRead(MavenSession s) throws MavenExecutionException {
+        try {
+            AbstractMavenLifecycleParticipant.class.getMethod("afterSessionEnd",MavenSession.class);
+            session.setManaged(true);
+        } catch (NoSuchMethodException e) {
+            // Maven before 3.2.1 won't tell us when the build ends
+        }
+    }
+
+    /**
+     * Also fails the build if signatures were being generated in the background and nothing waited for them,
+     * such as when the "await" goal is bound to a phase that the build didn't reach. The signatures may
+     * have been installed or deployed before they were written.
+     */
+    @Override
+    public void afterSessionEnd(MavenSession s) throws MavenExecutionException {
+        try {
+            Map<Object,Throwable> left = session.joinAbandoned();
+            if (left.isEmpty())
+                return;
+
+            StringBuilder buf = new StringBuilder("The signatures generated in the background with pgp.async were never awaited, "
+                    + "so they may have been installed or deployed before they were written. "
+                    + "Bind the \"await\" goal to a phase that runs before they are used, such as \"verify\":");
+            Throwable cause = null;
+            for (Map.Entry<Object,Throwable> e : left.entrySet()) {
+                Object p = e.getKey();
+                buf.append("\n  ").append(p instanceof MavenProject ? ((MavenProject)p).getId() : p);
+                if (e.getValue()!=null) {
+                    buf.append(": ").append(e.getValue());
+                    if (cause==null)    cause = e.getValue();
+                }
+            }
+            throw new MavenExecutionException(buf.toString(),cause);
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.kohsuke.maven.pgp;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link PgpMojo} that runs outside Maven, so that command line tools can use
+ * the same secret key, pass phrase, and signer loaders that the plugin uses.
+ *
+ * <p>
+ * Without Plexus, loaders are found from "META-INF/plexus/components.xml" in the class path,
+ * and instantiated with their default constructors. Their requirements listed there are filled in
+ * the same way, and like in Plexus, each component is a singleton.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class StandaloneMojo extends PgpMojo {
+    /**
+     * Implementation class names, keyed by "role:hint".
+     */
+    private final Map<String,String> implementations = new HashMap<String,String>();
+    /**
+     * Requirements of the implementation classes, as "field name" to "role:hint".
+     */
+    private final Map<String,Map<String,String>> requirements = new HashMap<String,Map<String,String>>();
+    private final Map<String,Object> components = new HashMap<String,Object>();
+    private final ClassLoader classLoader;
+
+    public StandaloneMojo() throws IOException {
+        this(StandaloneMojo.class.getClassLoader());
+    }
+
+    public StandaloneMojo(ClassLoader cl) throws IOException {
+        this.classLoader = cl;
+        Enumeration<URL> e = cl.getResources("META-INF/plexus/components.xml");
+        while (e.hasMoreElements())
+            parse(e.nextElement());
+    }
+
+    private void parse(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            Document dom = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+            NodeList list = dom.getElementsByTagName("component");
+            for (int i=0; i<list.getLength(); i++) {
+                Element c = (Element)list.item(i);
+                String impl = text(c,"implementation");
+                implementations.put(key(c), impl);
+
+                Map<String,String> fields = new HashMap<String,String>();
+                NodeList reqs = c.getElementsByTagName("requirement");
+                for (int j=0; j<reqs.getLength(); j++) {
+                    Element r = (Element)reqs.item(j);
+                    fields.put(text(r,"field-name"), key(r));
+                }
+                requirements.put(impl,fields);
+            }
+        } catch (Exception x) {
+            throw (IOException)new IOException("Failed to parse "+url).initCause(x);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * "role:hint" of a component or a requirement.
+     */
+    private static String key(Element e) {
+        String hint = text(e,"role-hint");
+        return text(e,"role")+':'+(hint!=null && hint.length()>0 ? hint : "default");
+    }
+
+    /**
+     * Text of the child element, not to be confused with the ones in the requirements.
+     */
+    private static String text(Element e, String name) {
+        for (Node n=e.getFirstChild(); n!=null; n=n.getNextSibling())
+            if (n instanceof Element && n.getNodeName().equals(name))
+                return n.getTextContent().trim();
+        return null;
+    }
+
+    /**
+     * Loads the key as configured, and creates the signer.
+     * Unlike in Maven, the key isn't cached.
+     */
+    public Signer createSigner() throws MojoExecutionException {
+        if (getSigningKey().signer!=null) {
+            PGPPublicKey key = loadSignerPublicKey();
+            return new Signer(key,loadSigner(key),PGPUtil.SHA256);
+        }
+
+        PGPSecretKey secretKey = loadSecretKey();
+        char[] pass = loadPassPhrase(secretKey).toCharArray();
+        try {
+            return new Signer(secretKey,pass);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(),e);
+        } finally {
+            Arrays.fill(pass,'\0');
+        }
+    }
+
+    @Override
+    protected <T> T lookup(Class<T> role, String hint) {
+        return role.cast(lookup(role.getName()+':'+hint));
+    }
+
+    private synchronized Object lookup(String key) {
+        Object o = components.get(key);
+        if (o==null) {
+            String impl = implementations.get(key);
+            if (impl==null)     return null;
+            try {
+                o = Class.forName(impl,true,classLoader).newInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to instantiate "+impl,e);
+            }
+            inject(o);
+            components.put(key,o);
+        }
+        return o;
+    }
+
+    /**
+     * Fills in the fields that Plexus would inject.
+     */
+    private void inject(Object o) {
+        for (Map.Entry<String,String> r : requirements.get(o.getClass().getName()).entrySet()) {
+            Object v = lookup(r.getValue());
+            if (v==null)
+                throw new IllegalStateException("No component "+r.getValue()+" that "+o.getClass().getName()+" requires");
+            try {
+                Field f = field(o.getClass(),r.getKey());
+                f.setAccessible(true);
+                f.set(o,v);
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to inject "+r.getKey()+" of "+o.getClass().getName(),e);
+            }
+        }
+    }
+
+    private static Field field(Class<?> c, String name) throws NoSuchFieldException {
+        for (; c!=null; c=c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                // look in the super class
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
@@ -0,0 +1,127 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the signatures that were verified to be made by a trusted key,
+ * keyed by the SHA-256 digests of the signature file and of the content it signs.
+ *
+ * <p>
+ * Together with {@link FileDigests}, files that were verified in earlier builds and haven't changed since
+ * (judging from their timestamp and size, just like {@link SignatureCache}) are not read at all,
+ * as files in the local repository don't change once they are downloaded. Only the signature file,
+ * which is small, is hashed on every run, so that a replaced signature is verified on its own.
+ * This class is thread-safe.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class VerificationCache {
+    private final File index;
+    private final FileDigests digests;
+    /**
+     * From the digest of the signature file to what it was verified against.
+     */
+    private final Map<String,Entry> verified = new HashMap<String,Entry>();
+    private boolean dirty;
+
+    private static final class Entry {
+        final String content;
+        final long keyID;
+
+        Entry(String content, long keyID) {
+            this.content = content;
+            this.keyID = keyID;
+        }
+    }
+
+    VerificationCache(File dir) throws IOException {
+        this.index = new File(dir,"verified.txt");
+        this.digests = new FileDigests(new File(dir,"digests.txt"));
+        if (!index.exists())    return;
+
+        BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(index),"UTF-8"));
+        try {
+            String line;
+            while ((line=r.readLine())!=null) {
+                // signature-digest content-digest keyID
+                String[] tokens = line.split(" ");
+                if (tokens.length!=3)   continue;   // corrupted, or written by an earlier version
+                try {
+                    verified.put(tokens[0], new Entry(tokens[1], new BigInteger(tokens[2],16).longValue()));
+                } catch (NumberFormatException e) {
+                    // corrupted. ignore
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Verifies the file, unless the same signature was already verified against the same contents
+     * by a key the verifier trusts. The file isn't read unless its timestamp or size has changed since
+     * its digest was recorded, in which case the digest is computed in the same pass as the verification.
+     *
+     * @return
+     *      true if the verification was skipped.
+     */
+    boolean verify(Verifier verifier, File file, File signature) throws IOException, PGPException, GeneralSecurityException {
+        String s = FileDigests.compute(signature);
+        String d = digests.get(file);
+        Entry e;
+        synchronized (this) {
+            e = verified.get(s);
+        }
+        if (e!=null && d!=null && verifier.isTrusted(e.keyID) && e.content.equals(d))
+            return true;
+
+        long timestamp = file.lastModified();
+        long size = file.length();
+        MessageDigest md = FileDigests.newDigest();
+        long keyID = verifier.verify(file,signature,FileDigests.sink(md));
+        d = new String(Hex.encode(md.digest()));
+
+        digests.put(file,timestamp,size,d);
+        synchronized (this) {
+            verified.put(s,new Entry(d,keyID));
+            dirty = true;
+        }
+        return false;
+    }
+
+    void save() throws IOException {
+        digests.save();
+
+        synchronized (this) {
+            if (!dirty)     return;
+            index.getParentFile().mkdirs();
+            File tmp = new File(index.getPath()+".tmp");
+            PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp),"UTF-8"));
+            try {
+                for (Map.Entry<String,Entry> e : verified.entrySet())
+                    w.println(e.getKey()+" "+e.getValue().content+" "+Long.toHexString(e.getValue().keyID));
+            } finally {
+                w.close();
+            }
+            index.delete();
+            if (!tmp.renameTo(index))
+                throw new IOException("Failed to update "+index);
+            dirty = false;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPObjectFactory;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPUtil;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies detached signatures against a set of trusted public keys.
+ *
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class Verifier {
+    private final PGPPublicKeyRingCollection keys;
+
+    Verifier(PGPPublicKeyRingCollection keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Loads the trusted keys from a key ring file, armored or not.
+     */
+    Verifier(File keyRing) throws IOException, PGPException {
+        InputStream in = PGPUtil.getDecoderStream(new BufferedInputStream(new FileInputStream(keyRing)));
+        try {
+            this.keys = new PGPPublicKeyRingCollection(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns true if we have the public key of the given ID.
+     */
+    boolean isTrusted(long keyID) throws PGPException {
+        return keys.getPublicKey(keyID)!=null;
+    }
+
+    /**
+     * Verifies the file against the signature file.
+     *
+     * <p>
+     * The file is read once, no matter how many signatures there are. Every signature made by
+     * a trusted key must be valid, and there must be at least one of them.
+     *
+     * @param tee
+     *      If non-null, the contents of the file is also sent here, such as to compute its digest in the same pass.
+     * @return
+     *      ID of the key that signed the file.
+     * @throws SignatureException
+     *      if the signature is invalid, or if it's not made by any of the trusted keys.
+     */
+    long verify(File file, File signature, OutputStream tee) throws IOException, PGPException, GeneralSecurityException {
+        List<PGPSignature> sigs = new ArrayList<PGPSignature>();
+        List<Long> unknown = new ArrayList<Long>();
+
+        InputStream in = PGPUtil.getDecoderStream(new BufferedInputStream(new FileInputStream(signature)));
+        try {
+            Object o = new PGPObjectFactory(in).nextObject();
+            if (!(o instanceof PGPSignatureList))
+                throw new SignatureException(signature+" is not a signature");
+            PGPSignatureList list = (PGPSignatureList)o;
+            for (int i=0; i<list.size(); i++) {
+                PGPSignature sig = list.get(i);
+                PGPPublicKey key = keys.getPublicKey(sig.getKeyID());
+                if (key==null) {
+                    unknown.add(sig.getKeyID());
+                    continue;
+                }
+                sig.initVerify(key,Signer.PROVIDER);
+                sigs.add(sig);
+            }
+        } finally {
+            in.close();
+        }
+
+        if (sigs.isEmpty())
+            throw new SignatureException(file+" is signed by "+toString(unknown)+", which is not in the trusted key ring");
+
+        final OutputStream[] sinks = new OutputStream[sigs.size()+(tee!=null?1:0)];
+        for (int i=0; i<sigs.size(); i++)
+            sinks[i] = new Signer.VerifierStream(sigs.get(i));
+        if (tee!=null)
+            sinks[sigs.size()] = tee;
+        try {
+            Signer.copy(file, new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    for (OutputStream s : sinks)
+                        s.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    for (OutputStream s : sinks)
+                        s.write(b,off,len);
+                }
+            });
+        } catch (Signer.GeneratorException e) {
+            throw e.getCause();
+        }
+
+        for (PGPSignature sig : sigs)
+            if (!sig.verify())
+                throw new SignatureException("Invalid signature of "+file+" by "+toString(sig.getKeyID()));
+        return sigs.get(0).getKeyID();
+    }
+
+    static String toString(long keyID) {
+        return Long.toHexString(keyID).toUpperCase();
+    }
+
+    private static String toString(List<Long> keyIDs) {
+        StringBuilder buf = new StringBuilder();
+        for (Long id : keyIDs) {
+            if (buf.length()>0) buf.append(", ");
+            buf.append(toString(id));
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package org.kohsuke.maven.pgp;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.bouncycastle.openpgp.PGPException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Verifies the signatures of the artifacts of the project and its dependencies
+ * against the trusted public keys.
+ *
+ * <p>
+ * Each file is read once, by a pool of workers. The signatures that were verified are remembered
+ * in {@link #cacheDirectory} along with the digest of the contents, so files that haven't changed since aren't even read.
+ *
+ * @goal verify
+ * @phase verify
+ * @requiresDependencyResolution test
+ * @author Kohsuke Kawaguchi
+ */
+public class VerifyMojo extends AbstractMojo {
+    /**
+     * Key ring that contains the trusted public keys. Either armored or binary.
+     *
+     * @parameter expression="${pgp.publicKeyRing}" default-value="${user.home}/.gnupg/pubring.gpg"
+     */
+    private File publicKeyRing;
+
+    /**
+     * Whether to verify the dependencies, in addition to the artifacts of this project.
+     *
+     * @parameter expression="${pgp.verifyDependencies}" default-value="true"
+     */
+    private boolean verifyDependencies;
+
+    /**
+     * Fail if some artifacts don't have signatures. Otherwise they are reported as warnings.
+     *
+     * @parameter expression="${pgp.failOnMissing}" default-value="false"
+     */
+    private boolean failOnMissing;
+
+    /**
+     * Number of threads to verify signatures with. Defaults to the number of processors.
+     *
+     * @parameter expression="${pgp.threads}"
+     */
+    private int threads;
+
+    /**
+     * Directory to remember the verified signatures in.
+     *
+     * @parameter expression="${pgp.verificationCacheDirectory}" default-value="${user.home}/.m2/pgp-verified"
+     */
+    private File cacheDirectory;
+
+    /**
+     * Skip the verification.
+     *
+     * @parameter expression="${pgp.skip}" default-value="false"
+     */
+    private boolean skip;
+
+    /**
+     * @parameter default-value="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+
+    /**
+     * @parameter default-value="${project.build.directory}"
+     */
+    private File outputDirectory;
+
+    /**
+     * @parameter default-value="${localRepository}"
+     * @required
+     * @readonly
+     */
+    private ArtifactRepository localRepository;
+
+    /**
+     * @parameter default-value="${project.remoteArtifactRepositories}"
+     * @required
+     * @readonly
+     */
+    private List<ArtifactRepository> remoteRepositories;
+
+    /**
+     * @component
+     * @required
+     * @readonly
+     */
+    private ArtifactFactory artifactFactory;
+
+    /**
+     * @component
+     * @required
+     * @readonly
+     */
+    private ArtifactResolver artifactResolver;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip)   return;
+
+        final Verifier verifier;
+        try {
+            verifier = new Verifier(publicKeyRing);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to load the public keys from "+publicKeyRing,e);
+        } catch (PGPException e) {
+            throw new MojoExecutionException("Failed to load the public keys from "+publicKeyRing,e);
+        }
+
+        final VerificationCache cache;
+        try {
+            cache = new VerificationCache(cacheDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to open the verification cache "+cacheDirectory,e);
+        }
+
+        int n = threads>0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        try {
+            // resolve signatures one by one while the files resolved so far are verified
+            Map<File,Future<Boolean>> results = new LinkedHashMap<File,Future<Boolean>>();
+            List<File> missing = new ArrayList<File>();
+            for (Artifact a : getArtifacts()) {
+                final File file = a.getFile();
+                if (file==null || !file.isFile() || a.getType().endsWith(".asc") || results.containsKey(file))
+                    continue;
+
+                final File signature = getSignature(a);
+                if (signature==null) {
+                    missing.add(file);
+                    continue;
+                }
+
+                results.put(file, pool.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return cache.verify(verifier,file,signature);
+                    }
+                }));
+            }
+
+            int cached = 0;
+            List<String> failures = new ArrayList<String>();
+            for (Entry<File,Future<Boolean>> e : results.entrySet()) {
+                try {
+                    if (e.getValue().get())
+                        cached++;
+                } catch (ExecutionException x) {
+                    Throwable t = x.getCause();
+                    getLog().debug("Failed to verify "+e.getKey(),t);
+                    failures.add(e.getKey()+": "+t.getMessage());
+                }
+            }
+
+            for (File f : missing)
+                getLog().warn("No signature for "+f);
+            for (String f : failures)
+                getLog().error(f);
+            getLog().info("Verified "+(results.size()-failures.size())+" signatures ("+cached+" remembered from earlier builds)"
+                    +(missing.isEmpty() ? "" : ", "+missing.size()+" missing"));
+
+            if (!failures.isEmpty())
+                throw new MojoFailureException(failures.size()+" signature(s) failed to verify");
+            if (failOnMissing && !missing.isEmpty())
+                throw new MojoFailureException(missing.size()+" artifact(s) have no signature");
+        } catch (InterruptedException e) {
+            throw new MojoExecutionException("Interrupted while verifying",e);
+        } finally {
+            pool.shutdownNow();
+            try {
+                cache.save();
+            } catch (IOException e) {
+                getLog().warn("Failed to update the verification cache "+cacheDirectory,e);
+            }
+        }
+    }
+
+    /**
+     * Artifacts of this project, followed by the dependencies.
+     */
+    private List<Artifact> getArtifacts() {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(project.getArtifact());
+        artifacts.addAll((List<Artifact>)project.getAttachedArtifacts());
+        if (verifyDependencies)
+            artifacts.addAll(project.getArtifacts());
+        return artifacts;
+    }
+
+    /**
+     * Locates the signature of the artifact, which is next to the artifact for the artifacts of this project,
+     * and resolved from the repositories for dependencies.
+     *
+     * @return
+     *      null if the artifact has no signature.
+     */
+    private File getSignature(Artifact a) throws MojoExecutionException {
+        if (project.getArtifact()==a || project.getAttachedArtifacts().contains(a)) {
+            File f = new File(outputDirectory,a.getFile().getName()+".asc");
+            return f.exists() ? f : null;
+        }
+
+        Artifact sig = artifactFactory.createArtifactWithClassifier(a.getGroupId(), a.getArtifactId(), a.getVersion(),
+                a.getArtifactHandler().getExtension()+".asc", a.getClassifier());
+        try {
+            artifactResolver.resolve(sig, remoteRepositories, localRepository);
+            return sig.getFile();
+        } catch (ArtifactNotFoundException e) {
+            getLog().debug("No signature for "+a,e);
+            return null;
+        } catch (ArtifactResolutionException e) {
+            throw new MojoExecutionException("Failed to resolve the signature of "+a,e);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package org.kohsuke.maven.pgp.daemon;
+
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.util.encoders.Hex;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PendingSignature;
+import org.kohsuke.maven.pgp.ResumableDigest;
+import org.kohsuke.maven.pgp.util.UnixDomainSocket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+
+import static org.kohsuke.maven.pgp.daemon.SigningProtocol.*;
+
+/**
+ * Talks to {@link SigningDaemon}.
+ *
+ * <p>
+ * The daemon is reached through a Unix domain socket on the same machine, or TCP for a remote daemon.
+ *
+ * <p>
+ * This class is thread-safe. Connections are pooled, so that concurrent requests
+ * use separate connections, which the daemon serves in parallel.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SigningClient {
+    private final String name;
+    private final Transport transport;
+    private final LinkedList<Connection> idle = new LinkedList<Connection>();
+    private volatile PGPPublicKey publicKey;
+
+    /**
+     * Talks to the daemon on the same machine over the Unix domain socket.
+     */
+    public SigningClient(final String socket) {
+        this(socket, new Transport() {
+            public Connection connect() throws IOException {
+                UnixDomainSocket s = UnixDomainSocket.connect(socket);
+                return new Connection(s.getInputStream(),s.getOutputStream());
+            }
+        });
+    }
+
+    /**
+     * Talks to the daemon over TCP. Only the digests are sent, so artifacts never cross the wire.
+     *
+     * @param token
+     *      The shared secret that the daemon requires, or null if the daemon doesn't require one.
+     */
+    public SigningClient(String host, int port, byte[] token) {
+        this(host,port,token,SocketFactory.getDefault());
+    }
+
+    /**
+     * Talks to the daemon over TCP, through sockets created by the given factory,
+     * such as {@link SSLSocketFactory} for a daemon that speaks TLS.
+     */
+    public SigningClient(final String host, final int port, byte[] token, final SocketFactory factory) {
+        this(host+':'+port, authenticating(new Transport() {
+            public Connection connect() throws IOException {
+                Socket s = factory.createSocket(host,port);
+                s.setTcpNoDelay(true);
+                return new Connection(s.getInputStream(),s.getOutputStream());
+            }
+        },token));
+    }
+
+    /**
+     * @param name
+     *      Human readable name of the daemon, for error messages.
+     */
+    public SigningClient(String name, Transport transport) {
+        this.name = name;
+        this.transport = transport;
+    }
+
+    /**
+     * Returns the client for the daemon at the given socket, which is shared within the JVM.
+     */
+    public static synchronized SigningClient get(String socket) {
+        SigningClient c = CLIENTS.get(socket);
+        if (c==null)
+            CLIENTS.put(socket, c=new SigningClient(socket));
+        return c;
+    }
+
+    /**
+     * Returns the client for the daemon at the given TCP port, which is shared within the JVM.
+     */
+    public static synchronized SigningClient get(String host, int port, byte[] token) {
+        return get(host,port,token,false);
+    }
+
+    /**
+     * Returns the client for the daemon at the given TCP port, which is shared within the JVM
+     * by the users of the same token and the same TLS setting.
+     *
+     * @param tls
+     *      True to talk TLS, with the trust store given by the standard "javax.net.ssl.trustStore" system properties.
+     */
+    public static synchronized SigningClient get(String host, int port, byte[] token, boolean tls) {
+        String key = (tls?"tls:":"")+host+':'+port+':'+fingerprint(token);
+        SigningClient c = CLIENTS.get(key);
+        if (c==null)
+            CLIENTS.put(key, c=new SigningClient(host,port,token,tls ? SSLSocketFactory.getDefault() : SocketFactory.getDefault()));
+        return c;
+    }
+
+    /**
+     * Identifies the token without keeping it as a string.
+     */
+    private static String fingerprint(byte[] token) {
+        if (token==null)    return "";
+        try {
+            return new String(Hex.encode(MessageDigest.getInstance("SHA-256").digest(token)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Public key of the key that the daemon signs with.
+     */
+    public PGPPublicKey getPublicKey() throws IOException {
+        if (publicKey==null) {
+            publicKey = call(new Request<PGPPublicKey>() {
+                public PGPPublicKey call(DataInputStream in, DataOutputStream out) throws IOException {
+                    out.writeByte(PUBLIC_KEY);
+                    out.flush();
+                    checkStatus(in);
+                    return decodePublicKey(readBytes(in));
+                }
+            });
+        }
+        return publicKey;
+    }
+
+    /**
+     * Has the daemon read and sign files.
+     * This only works when the daemon runs on the same machine and can read the files.
+     *
+     * @param hashAlgorithm
+     *      One of the hash algorithm constants in {@link org.bouncycastle.openpgp.PGPUtil}.
+     * @return
+     *      Armored signatures of the files, in the same order.
+     */
+    public List<byte[]> signFiles(final int hashAlgorithm, final List<File> files) throws IOException {
+        List<Object> r = call(new Request<List<Object>>() {
+            public List<Object> call(DataInputStream in, DataOutputStream out) throws IOException {
+                out.writeByte(SIGN_FILES);
+                out.writeByte(hashAlgorithm);
+                out.writeInt(files.size());
+                for (File f : files)
+                    out.writeUTF(f.getAbsolutePath());
+                out.flush();
+
+                List<Object> r = new ArrayList<Object>();
+                for (File f : files)
+                    r.add(in.readUnsignedByte()==OK ? readBytes(in) : in.readUTF());
+                return r;
+            }
+        });
+
+        List<byte[]> signatures = new ArrayList<byte[]>();
+        for (int i=0; i<files.size(); i++) {
+            Object o = r.get(i);
+            if (o instanceof String)
+                throw new IOException("Failed to sign "+files.get(i)+": "+o);
+            signatures.add((byte[])o);
+        }
+        return signatures;
+    }
+
+    /**
+     * Has the daemon sign digests.
+     * The digests need to be computed with {@link ResumableDigest}, as the daemon hashes the signature trailer by itself.
+     *
+     * @return
+     *      The signature values for {@link PendingSignature#complete(BigInteger...)}, in the same order.
+     */
+    public List<BigInteger[]> signDigests(final List<PendingSignature> digests) throws IOException, SignatureException {
+        for (PendingSignature p : digests) {
+            if (p.getDocumentState()==null)
+                throw new SignatureException("The digest needs to be computed with ResumableDigest to be signed by the daemon");
+        }
+        List<Object> r = call(new Request<List<Object>>() {
+            public List<Object> call(DataInputStream in, DataOutputStream out) throws IOException {
+                out.writeByte(SIGN_DIGESTS);
+                out.writeInt(digests.size());
+                for (PendingSignature p : digests)
+                    writeDigestState(out, p);
+                out.flush();
+
+                List<Object> r = new ArrayList<Object>();
+                for (PendingSignature p : digests)
+                    r.add(in.readUnsignedByte()==OK ? readIntegers(in) : in.readUTF());
+                return r;
+            }
+        });
+
+        List<BigInteger[]> values = new ArrayList<BigInteger[]>();
+        for (Object o : r) {
+            if (o instanceof String)
+                throw new SignatureException("Signing daemon at "+name+" failed to sign: "+o);
+            values.add((BigInteger[])o);
+        }
+        return values;
+    }
+
+    /**
+     * Signs through this client one digest at a time.
+     */
+    public DigestSigner asDigestSigner() {
+        return new DigestSigner() {
+            @Override
+            public BigInteger[] sign(PendingSignature signature) throws IOException, SignatureException {
+                return signDigests(Collections.singletonList(signature)).get(0);
+            }
+
+            @Override
+            public MessageDigest newDigest(int hashAlgorithm) throws NoSuchAlgorithmException {
+                return ResumableDigest.newInstance(hashAlgorithm);
+            }
+
+            @Override
+            public void close() {
+                SigningClient.this.close();
+            }
+        };
+    }
+
+    private static void checkStatus(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte()!=OK)
+            throw new IOException(in.readUTF());
+    }
+
+    /**
+     * Runs the request on an idle connection. The connection is discarded if the request fails in the middle,
+     * since we don't know where in the conversation we are.
+     */
+    private <T> T call(Request<T> r) throws IOException {
+        Connection c;
+        synchronized (idle) {
+            c = idle.poll();
+        }
+        if (c==null)
+            c = transport.connect();
+
+        boolean ok = false;
+        try {
+            T t = r.call(c.in,c.out);
+            ok = true;
+            return t;
+        } finally {
+            if (ok) {
+                synchronized (idle) {
+                    idle.add(c);
+                }
+            } else {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Closes idle connections.
+     */
+    public void close() {
+        synchronized (idle) {
+            for (Connection c : idle)
+                c.close();
+            idle.clear();
+        }
+    }
+
+    private interface Request<T> {
+        T call(DataInputStream in, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Opens connections to the daemon.
+     */
+    public interface Transport {
+        Connection connect() throws IOException;
+    }
+
+    /**
+     * Wraps a transport so that every new connection first presents the token.
+     */
+    private static Transport authenticating(final Transport base, final byte[] token) {
+        if (token==null)    return base;
+        return new Transport() {
+            public Connection connect() throws IOException {
+                Connection c = base.connect();
+                try {
+                    c.out.writeByte(AUTH);
+                    writeBytes(c.out,token);
+                    c.out.flush();
+                    checkStatus(c.in);
+                    return c;
+                } catch (IOException e) {
+                    c.close();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * One connection to the daemon.
+     */
+    public static final class Connection {
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        public Connection(InputStream in, OutputStream out) {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+        }
+
+        void close() {
+            try {
+                in.close();
+                out.close();
+            } catch (IOException e) {
+                // we are discarding this connection anyway
+            }
+        }
+    }
+
+    private static final Map<String,SigningClient> CLIENTS = new HashMap<String,SigningClient>();
+}
@@ -0,0 +1,438 @@
+package org.kohsuke.maven.pgp.daemon;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.codehaus.plexus.util.FileUtils;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PendingSignature;
+import org.kohsuke.maven.pgp.PrivateKeyDigestSigner;
+import org.kohsuke.maven.pgp.ResumableDigest;
+import org.kohsuke.maven.pgp.Signer;
+import org.kohsuke.maven.pgp.StandaloneMojo;
+import org.kohsuke.maven.pgp.util.UnixDomainServerSocket;
+import org.kohsuke.maven.pgp.util.UnixDomainSocket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.net.ssl.SSLServerSocketFactory;
+
+import static org.kohsuke.maven.pgp.daemon.SigningProtocol.*;
+
+/**
+ * Long-lived process that holds the unlocked key, and signs for builds that connect to it
+ * over a Unix domain socket.
+ *
+ * <p>
+ * This saves every build from loading and unlocking the key, as well as warming up BouncyCastle.
+ * Builds use it through the "daemon:" signer, or through the "remote:" signer over TCP,
+ * in which case only digests are accepted. Each connection is served by its own thread,
+ * and the items in a batch are signed in parallel by a pool of workers.
+ *
+ * <p>
+ * <b>Anyone who can connect to the daemon can have it sign anything as a binary document</b>, with a creation
+ * time of their choice, since the daemon can't see the documents behind the digests. So treat access to the socket
+ * and the TCP port like access to the key itself. What the daemon does guarantee is that it only produces binary
+ * document signatures (type 0x00): clients send the state of the digest of the document, and the daemon
+ * hashes the signature trailer by itself, so that it can't be used to certify keys, or to sign digests
+ * for other protocols.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see SigningClient
+ */
+public class SigningDaemon {
+    private final PGPPublicKey publicKey;
+    private final DigestSigner digestSigner;
+    private final ExecutorService workers;
+    private final ExecutorService connections = Executors.newCachedThreadPool(daemonThreads());
+
+    /**
+     * Shared secret that TCP clients need to present. TCP clients aren't served until this is set,
+     * as even on the loopback interface, any user on the machine can connect.
+     */
+    private volatile byte[] token;
+
+    public SigningDaemon(PGPPublicKey publicKey, DigestSigner digestSigner, int threads) {
+        this.publicKey = publicKey;
+        this.digestSigner = digestSigner;
+        this.workers = Executors.newFixedThreadPool(threads, daemonThreads());
+    }
+
+    /**
+     * Requires TCP clients to present this shared secret.
+     */
+    public void setToken(byte[] token) {
+        this.token = token;
+    }
+
+    /**
+     * Accepts connections until the socket is closed.
+     */
+    public void serve(UnixDomainServerSocket server) throws IOException {
+        while (!server.isClosed()) {
+            final UnixDomainSocket s;
+            try {
+                s = server.accept();
+            } catch (IOException e) {
+                if (server.isClosed())  return;
+                throw e;
+            }
+            connections.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    try {
+                        serve(s.getInputStream(),s.getOutputStream(),true);
+                    } finally {
+                        s.close();
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Accepts TCP connections until the socket is closed.
+     * Only digests are signed for these clients.
+     */
+    public void serve(ServerSocket server) throws IOException {
+        requireToken();
+        while (!server.isClosed()) {
+            final Socket s;
+            try {
+                s = server.accept();
+            } catch (IOException e) {
+                if (server.isClosed())  return;
+                throw e;
+            }
+            connections.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    try {
+                        s.setTcpNoDelay(true);
+                        serve(s.getInputStream(),s.getOutputStream(),false);
+                    } finally {
+                        s.close();
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts serving on an ephemeral port of the loopback interface in the background,
+     * so that a {@link SigningClient} in the same JVM can talk to it, for example in tests.
+     *
+     * @return
+     *      The address to connect to.
+     */
+    public InetSocketAddress startLocal() throws IOException {
+        requireToken();
+        final ServerSocket server = new ServerSocket(0,50,InetAddress.getByName("127.0.0.1"));
+        connections.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                try {
+                    serve(server);
+                } finally {
+                    server.close();
+                }
+                return null;
+            }
+        });
+        return new InetSocketAddress(server.getInetAddress(),server.getLocalPort());
+    }
+
+    private void requireToken() {
+        if (token==null)
+            throw new IllegalStateException("TCP clients can't be served without a token");
+    }
+
+    /**
+     * Serves requests from one client until it disconnects.
+     *
+     * @param local
+     *      True if the client is on the same machine, and it's trusted to have files signed by path.
+     *      Otherwise the client needs to present the token first, which never matches if none is set.
+     */
+    public void serve(InputStream rawIn, OutputStream rawOut, boolean local) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(rawIn));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(rawOut));
+        boolean authenticated = local;
+
+        while (true) {
+            int op = in.read();
+            if (op==AUTH) {
+                byte[] t = readBytes(in);
+                byte[] expected = token;
+                authenticated |= expected!=null && MessageDigest.isEqual(t,expected);
+                if (authenticated) {
+                    out.writeByte(OK);
+                } else {
+                    writeError(out,"Invalid token");
+                    out.flush();
+                    return;
+                }
+            } else if (op==-1) {
+                return;
+            } else if (!authenticated) {
+                throw new IOException("Unauthenticated request");
+            } else {
+                switch (op) {
+                case PUBLIC_KEY:
+                    out.writeByte(OK);
+                    writeBytes(out,encodePublicKey(publicKey));
+                    break;
+                case SIGN_FILES:
+                    if (!local)
+                        throw new IOException("Remote clients can only have digests signed");
+                    signFiles(in,out);
+                    break;
+                case SIGN_DIGESTS:
+                    signDigests(in,out);
+                    break;
+                default:
+                    throw new IOException("Unknown op code: "+op);
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private void signFiles(DataInputStream in, DataOutputStream out) throws IOException {
+        final Signer signer = new Signer(publicKey,digestSigner,in.readUnsignedByte());
+        List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+        for (int n=readCount(in); n>0; n--) {
+            final File f = new File(in.readUTF());
+            results.add(workers.submit(new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                    signer.writeArmored(signer.sign(f),buf);
+                    return buf.toByteArray();
+                }
+            }));
+        }
+
+        for (Future<byte[]> f : results) {
+            try {
+                byte[] sig = get(f);
+                out.writeByte(OK);
+                writeBytes(out,sig);
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                writeError(out,t.getMessage()!=null ? t.getMessage() : t.toString());
+            }
+        }
+    }
+
+    /**
+     * Signs the documents whose digest states are sent, after hashing the trailer of a binary document signature into them.
+     */
+    private void signDigests(DataInputStream in, DataOutputStream out) throws IOException {
+        List<Future<BigInteger[]>> results = new ArrayList<Future<BigInteger[]>>();
+        for (int n=readCount(in); n>0; n--) {
+            final int hash = in.readUnsignedByte();
+            final Date creationTime = new Date(in.readLong());
+            final byte[] state = readBytes(in);
+
+            results.add(workers.submit(new Callable<BigInteger[]>() {
+                public BigInteger[] call() throws Exception {
+                    PendingSignature p = PendingSignature.create(publicKey.getKeyID(),publicKey.getAlgorithm(),hash,
+                            ResumableDigest.resume(hash,state),creationTime);
+                    return digestSigner.sign(p);
+                }
+            }));
+        }
+
+        for (Future<BigInteger[]> f : results) {
+            try {
+                BigInteger[] v = get(f);
+                out.writeByte(OK);
+                writeIntegers(out,v);
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                writeError(out,t.getMessage()!=null ? t.getMessage() : t.toString());
+            }
+        }
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n<0)
+            throw new IOException("Invalid batch size: "+n);
+        return n;
+    }
+
+    private static <T> T get(Future<T> f) throws IOException, ExecutionException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            throw (IOException)new IOException("Interrupted").initCause(e);
+        }
+    }
+
+    private static void writeError(DataOutputStream out, String msg) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(msg);
+    }
+
+    /**
+     * Stops signing.
+     */
+    public void shutdown() {
+        connections.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"pgp signing daemon");
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Socket that the daemon listens on by default.
+     */
+    public static String getDefaultSocket() {
+        return new File(System.getProperty("user.home"),".m2/pgp-signer.sock").getPath();
+    }
+
+    /**
+     * Loads the key the same way the plugin does, and starts serving.
+     *
+     * <pre>
+     * java ... SigningDaemon [-socket PATH] [-port N [-bind ADDR] [-token FILE] [-tls]] [-threads N] [-secretkey SPEC] [-passphrase SPEC] [-signer SPEC]
+     * </pre>
+     * The key parameters default to the PGP_SECRETKEY, PGP_PASSPHRASE, and PGP_SIGNER environment variables.
+     * With "-port", the daemon also listens on TCP, on the loopback interface unless "-bind" says otherwise.
+     * The contents of the "-token" file is then the shared secret that TCP clients need to present,
+     * which is required even on the loopback interface, as any user on the machine can connect to it.
+     * With "-tls", the daemon speaks TLS with the key store given by the standard "javax.net.ssl.keyStore" system properties.
+     */
+    public static void main(String[] args) throws Exception {
+        StandaloneMojo mojo = new StandaloneMojo();
+        String socket = getDefaultSocket();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int port = -1;
+        String bind = "127.0.0.1";
+        File token = null;
+        boolean tls = false;
+
+        for (int i=0; i<args.length; i++) {
+            String a = args[i];
+            if (a.equals("-tls")) {
+                tls = true;
+                continue;
+            }
+            if (i+1==args.length)
+                usage("Missing value for "+a);
+            String v = args[++i];
+            if (a.equals("-socket"))            socket = v;
+            else if (a.equals("-threads"))      threads = Integer.parseInt(v);
+            else if (a.equals("-port"))         port = Integer.parseInt(v);
+            else if (a.equals("-bind"))         bind = v;
+            else if (a.equals("-token"))        token = new File(v);
+            else if (a.equals("-secretkey"))    mojo.secretkey = v;
+            else if (a.equals("-passphrase"))   mojo.passphrase = v;
+            else if (a.equals("-signer"))       mojo.signerSpec = v;
+            else                                usage("Unknown option: "+a);
+        }
+        InetAddress bindAddress = InetAddress.getByName(bind);
+        if (port>=0 && token==null)
+            usage("Listening on TCP lets anyone who can connect to "+bind+", including other users of this machine, sign with the key. Specify -token");
+
+        final SigningDaemon daemon = create(mojo,threads);
+        if (token!=null)
+            daemon.setToken(readToken(token));
+        final UnixDomainServerSocket server = UnixDomainServerSocket.listen(socket);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.close();
+                daemon.shutdown();
+            }
+        });
+        String keyId = Long.toHexString(daemon.publicKey.getKeyID()).toUpperCase();
+
+        if (port>=0) {
+            final ServerSocket tcp = tls ? SSLServerSocketFactory.getDefault().createServerSocket(port,50,bindAddress)
+                                         : new ServerSocket(port,50,bindAddress);
+            if (!tls && !bindAddress.isLoopbackAddress())
+                System.err.println("Warning: the token and the signatures are sent in clear text. Use -tls, or tunnel through SSH");
+            System.err.println("Signing with key "+keyId+" on "+tcp.getLocalSocketAddress()+(tls?" over TLS":""));
+            daemon.connections.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    daemon.serve(tcp);
+                    return null;
+                }
+            });
+        }
+
+        System.err.println("Signing with key "+keyId+" on "+socket);
+        daemon.serve(server);
+    }
+
+    /**
+     * Loads and unlocks the key as configured in the mojo.
+     */
+    public static SigningDaemon create(StandaloneMojo mojo, int threads) throws MojoExecutionException {
+        if (mojo.getSigningKey().signer!=null) {
+            PGPPublicKey key = mojo.loadSignerPublicKey();
+            return new SigningDaemon(key,mojo.loadSigner(key),threads);
+        }
+
+        PGPSecretKey secretKey = mojo.loadSecretKey();
+        char[] pass = mojo.loadPassPhrase(secretKey).toCharArray();
+        try {
+            PGPPrivateKey privateKey = secretKey.extractPrivateKey(pass,Signer.PROVIDER);
+            if (privateKey==null)
+                throw new MojoExecutionException("Unsupported signing key");
+            return new SigningDaemon(secretKey.getPublicKey(),new PrivateKeyDigestSigner(privateKey),threads);
+        } catch (PGPException e) {
+            throw new MojoExecutionException("Passphrase is incorrect",e);
+        } finally {
+            Arrays.fill(pass,'\0');
+        }
+    }
+
+    /**
+     * Reads the shared secret from a file, ignoring the surrounding whitespace.
+     */
+    public static byte[] readToken(File f) throws IOException {
+        return FileUtils.fileRead(f).trim().getBytes("UTF-8");
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("Usage: java "+SigningDaemon.class.getName()+" [-socket PATH] [-port N [-bind ADDR] [-token FILE] [-tls]] [-threads N] [-secretkey SPEC] [-passphrase SPEC] [-signer SPEC]");
+        System.exit(1);
+    }
+}
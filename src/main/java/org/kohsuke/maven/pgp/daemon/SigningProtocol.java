@@ -0,0 +1,126 @@
+package org.kohsuke.maven.pgp.daemon;
+
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.kohsuke.maven.pgp.PendingSignature;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * Wire format between {@link SigningClient} and {@link SigningDaemon}.
+ *
+ * <p>
+ * A connection carries any number of requests, each of which starts with an op code byte.
+ * Requests that sign take a batch of items, and the response has a status byte for each item,
+ * followed by the result or the error message, in the order of the request.
+ *
+ * <pre>
+ * AUTH         int len, byte[len] token
+ *              -> OK | ERROR, UTF message
+ * PUBLIC_KEY   -> OK, int len, byte[len] public key packet
+ * SIGN_FILES   byte hash, int n, n*(UTF path)
+ *              -> n*(OK, int len, byte[len] armored signature | ERROR, UTF message)
+ * SIGN_DIGESTS int n, n*(byte hash, long creation time, int len, byte[len] digest state)
+ *              -> n*(OK, byte count, count*(short len, byte[len] integer) | ERROR, UTF message)
+ * </pre>
+ *
+ * <p>
+ * Over TCP, the daemon can require AUTH as the first request, and it doesn't sign files by path,
+ * since those would be the paths on the daemon's machine.
+ *
+ * <p>
+ * SIGN_DIGESTS doesn't take the final digest, but the state of the digest of the document
+ * as in {@link org.kohsuke.maven.pgp.ResumableDigest#getState()}. The daemon hashes the trailer of
+ * a binary document signature into it by itself, so a client can't have it sign a digest of its choice,
+ * such as that of a key certification, or something that isn't OpenPGP at all.
+ * Earlier versions took the final digest with the op code 3, which is no longer accepted.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class SigningProtocol {
+    static final int PUBLIC_KEY = 1;
+    static final int SIGN_FILES = 2;
+    static final int AUTH = 4;
+    static final int SIGN_DIGESTS = 5;
+
+    static final int OK = 0;
+    static final int ERROR = 1;
+
+    private SigningProtocol() {}
+
+    static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len<0 || len>MAX_LENGTH)
+            throw new IOException("Invalid length: "+len);
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return b;
+    }
+
+    static void writeIntegers(DataOutputStream out, BigInteger[] values) throws IOException {
+        out.writeByte(values.length);
+        for (BigInteger v : values) {
+            byte[] b = v.toByteArray();
+            out.writeShort(b.length);
+            out.write(b);
+        }
+    }
+
+    static BigInteger[] readIntegers(DataInputStream in) throws IOException {
+        BigInteger[] r = new BigInteger[in.readUnsignedByte()];
+        for (int i=0; i<r.length; i++) {
+            byte[] b = new byte[in.readUnsignedShort()];
+            in.readFully(b);
+            r[i] = new BigInteger(b);
+        }
+        return r;
+    }
+
+    static void writeDigestState(DataOutputStream out, PendingSignature p) throws IOException {
+        out.writeByte(p.getHashAlgorithm());
+        out.writeLong(p.getCreationTime().getTime());
+        writeBytes(out,p.getDocumentState());
+    }
+
+    /**
+     * Encodes the public key as a public key packet.
+     *
+     * <p>
+     * Signing keys are often sub-keys, which BouncyCastle can't read by themselves,
+     * so the packet tag is rewritten to that of a primary key. The rest of the packet,
+     * and hence the key ID, is the same between the two.
+     */
+    static byte[] encodePublicKey(PGPPublicKey key) throws IOException {
+        byte[] b = key.getEncoded();
+        if ((b[0]&0x40)!=0) {
+            if ((b[0]&0x3F)==PUBLIC_SUBKEY)
+                b[0] = (byte)(0xC0|PUBLIC_KEY_TAG);
+        } else {
+            if (((b[0]>>2)&0x0F)==PUBLIC_SUBKEY)
+                b[0] = (byte)((b[0]&0x83)|(PUBLIC_KEY_TAG<<2));
+        }
+        return b;
+    }
+
+    static PGPPublicKey decodePublicKey(byte[] b) throws IOException {
+        return new PGPPublicKeyRing(b).getPublicKey();
+    }
+
+    /**
+     * OpenPGP packet tags.
+     */
+    private static final int PUBLIC_KEY_TAG = 6, PUBLIC_SUBKEY = 14;
+
+    /**
+     * Guards against allocating a huge buffer on a corrupted stream.
+     */
+    private static final int MAX_LENGTH = 1024*1024;
+}
@@ -0,0 +1,42 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.codehaus.plexus.component.annotations.Component;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PgpMojo;
+import org.kohsuke.maven.pgp.SignerLoader;
+import org.kohsuke.maven.pgp.daemon.SigningClient;
+import org.kohsuke.maven.pgp.daemon.SigningDaemon;
+
+import java.io.IOException;
+
+/**
+ * Signs through {@link SigningDaemon} that already has the key unlocked.
+ * Only the digests are sent to the daemon, and the key is taken from the daemon,
+ * so neither the secret key nor the pass phrase needs to be configured.
+ *
+ * <p>
+ * The specifier can optionally specify the socket of the daemon.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Component(role=SignerLoader.class,hint="daemon")
+public class DaemonSignerLoader extends SignerLoader {
+    @Override
+    public PGPPublicKey loadPublicKey(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException {
+        return getClient(specifier).getPublicKey();
+    }
+
+    @Override
+    public DigestSigner load(PgpMojo mojo, PGPPublicKey publicKey, String specifier) throws IOException, MojoExecutionException {
+        SigningClient client = getClient(specifier);
+        if (client.getPublicKey().getKeyID()!=publicKey.getKeyID())
+            throw new MojoExecutionException("Signing daemon signs with a different key than "+Long.toHexString(publicKey.getKeyID()).toUpperCase());
+        return client.asDigestSigner();
+    }
+
+    private SigningClient getClient(String specifier) {
+        return SigningClient.get(specifier.length()>0 ? specifier : SigningDaemon.getDefaultSocket());
+    }
+}
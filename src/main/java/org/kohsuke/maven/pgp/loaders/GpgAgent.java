@@ -0,0 +1,227 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.kohsuke.maven.pgp.SigningSession;
+import org.kohsuke.maven.pgp.util.UnixDomainSocket;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connection to GPG agent, which talks the Assuan protocol.
+ *
+ * <p>
+ * Connections are kept open and reused for the rest of the build, so that
+ * every module doesn't have to go through the connection handshake again,
+ * and {@link SigningSession} closes them at the end of the build.
+ * This class is thread-safe; commands are serialized.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class GpgAgent implements Closeable {
+    private final String socketFile;
+    private final UnixDomainSocket socket;
+    private final BufferedReader in;
+    private final OutputStream out;
+
+    /**
+     * Response to a command.
+     */
+    public static final class Response {
+        /**
+         * Whatever that follows "OK".
+         */
+        public final String ok;
+        /**
+         * Data sent through "D" lines, decoded.
+         */
+        public final byte[] data;
+
+        Response(String ok, byte[] data) {
+            this.ok = ok;
+            this.data = data;
+        }
+    }
+
+    private GpgAgent(String socketFile) throws IOException {
+        this.socketFile = socketFile;
+        this.socket = UnixDomainSocket.connect(socketFile);
+        try {
+            // Assuan lines are bytes, and percent-escaped when necessary
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(),"ISO-8859-1"));
+            this.out = socket.getOutputStream();
+            read(); // greeting
+
+            List<String> options = new ArrayList<String>();
+            String display = System.getenv("DISPLAY");
+            if (display!=null)
+                options.add("OPTION display="+display);
+            String term = System.getenv("TERM");
+            if (term!=null)
+                options.add("OPTION ttytype="+term);
+            transact(options.toArray(new String[options.size()]));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a command and waits for its response.
+     */
+    public synchronized Response transact(String command) throws IOException {
+        return transact(new String[]{command})[0];
+    }
+
+    /**
+     * Sends multiple commands at once, then reads all their responses,
+     * which saves round-trips to the agent.
+     *
+     * <p>
+     * If any of the commands fail, the remaining responses are read and discarded
+     * before the exception is thrown, so the connection remains usable.
+     */
+    public synchronized Response[] transact(String... commands) throws IOException {
+        try {
+            StringBuilder buf = new StringBuilder();
+            for (String c : commands)
+                buf.append(c).append('\n');
+            out.write(buf.toString().getBytes("ISO-8859-1"));
+
+            Response[] r = new Response[commands.length];
+            IOException failure = null;
+            for (int i=0; i<commands.length; i++) {
+                try {
+                    r[i] = read();
+                } catch (AgentException e) {
+                    if (failure==null)  failure = e;
+                }
+            }
+            if (failure!=null)
+                throw failure;
+            return r;
+        } catch (AgentException e) {
+            throw e;
+        } catch (IOException e) {
+            // the connection is broken. get a fresh one next time
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads lines up to the end of a response.
+     */
+    private Response read() throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        while (true) {
+            String rsp = in.readLine();
+            if (rsp==null)
+                throw new IOException("GPG agent closed the connection");
+            if (rsp.equals("OK") || rsp.startsWith("OK "))
+                return new Response(rsp.substring(Math.min(rsp.length(),3)), data.toByteArray());
+            if (rsp.startsWith("ERR"))
+                throw new AgentException(rsp);
+            if (rsp.startsWith("D ")) {
+                decode(rsp.substring(2),data);
+                continue;
+            }
+            if (rsp.startsWith("INQUIRE ")) {
+                // we don't have anything to tell, such as for PINENTRY_LAUNCHED
+                out.write("END\n".getBytes("ISO-8859-1"));
+                continue;
+            }
+            // status ("S") and comment ("#") lines are ignored
+        }
+    }
+
+    private static void decode(String line, ByteArrayOutputStream data) {
+        for (int i=0; i<line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch=='%' && i+2<line.length()) {
+                data.write(Integer.parseInt(line.substring(i+1,i+3),16));
+                i+=2;
+            } else {
+                data.write(ch);
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    public void close() {
+        socket.close();
+        synchronized (AGENTS) {
+            if (AGENTS.get(socketFile)==this)
+                AGENTS.remove(socketFile);
+        }
+    }
+
+    /**
+     * Error response from the agent.
+     */
+    public static final class AgentException extends IOException {
+        AgentException(String rsp) {
+            super("GPG agent reported an error: "+rsp);
+        }
+    }
+
+    /**
+     * Gets the connection to the agent at the given socket, reusing the existing connection if possible.
+     *
+     * @param session
+     *      A new connection is closed when this session ends.
+     */
+    public static GpgAgent get(String socketFile, SigningSession session) throws IOException {
+        GpgAgent a;
+        synchronized (AGENTS) {
+            a = AGENTS.get(socketFile);
+            if (a!=null && !a.isClosed())
+                return a;
+            a = new GpgAgent(socketFile);
+            AGENTS.put(socketFile,a);
+        }
+        session.closeAtEnd(a);
+        return a;
+    }
+
+    /**
+     * Locates the socket of the running GPG agent.
+     *
+     * @param specifier
+     *      The socket file explicitly specified, or an empty string to find it automatically.
+     * @return
+     *      null if no agent can be found.
+     */
+    public static String locate(String specifier) {
+        if (specifier!=null && specifier.length()>0)
+            return specifier;
+
+        String agentInfo = System.getenv("GPG_AGENT_INFO");
+        if (agentInfo!=null) {
+            String[] tokens = agentInfo.split(":"); // socket file:PID:1
+            if (tokens.length==3 && tokens[2].equals("1"))
+                return tokens[0];
+        }
+
+        // GnuPG 2.1 and later no longer set GPG_AGENT_INFO, and use the standard socket location instead
+        String home = System.getenv("GNUPGHOME");
+        File socket = new File(home!=null ? new File(home) : new File(System.getProperty("user.home"),".gnupg"),"S.gpg-agent");
+        if (socket.exists())
+            return socket.getPath();
+
+        return null;
+    }
+
+    private static final Map<String,GpgAgent> AGENTS = new HashMap<String,GpgAgent>();
+}
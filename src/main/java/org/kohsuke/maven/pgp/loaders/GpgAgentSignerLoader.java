@@ -0,0 +1,69 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.util.encoders.Hex;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PendingSignature;
+import org.kohsuke.maven.pgp.PgpMojo;
+import org.kohsuke.maven.pgp.SignerLoader;
+import org.kohsuke.maven.pgp.SigningSession;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.SignatureException;
+
+/**
+ * Has GPG agent sign the digest with the key it holds, so that the private key
+ * never gets decrypted in Maven. The agent caches the unlocked key across builds.
+ *
+ * <p>
+ * The specifier can optionally specify the socket of the agent.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Component(role=SignerLoader.class,hint="gpg-agent")
+public class GpgAgentSignerLoader extends SignerLoader {
+    @Requirement
+    private SigningSession session;
+
+    @Override
+    public DigestSigner load(PgpMojo mojo, PGPPublicKey publicKey, String specifier) throws IOException, MojoExecutionException {
+        final String socket = GpgAgent.locate(specifier);
+        if (socket==null)
+            throw new MojoExecutionException("GPG agent is not running. There's no GPG_AGENT_INFO environment variable nor the agent socket in ~/.gnupg");
+
+        final String keygrip = Keygrip.of(publicKey);
+        final String keyId = Long.toHexString(publicKey.getKeyID()&0xFFFFFFFFL).toUpperCase();
+
+        return new DigestSigner() {
+            @Override
+            public BigInteger[] sign(PendingSignature p) throws IOException, SignatureException {
+                GpgAgent.Response[] r = GpgAgent.get(socket,session).transact(
+                    "SIGKEY "+keygrip,
+                    "SETKEYDESC Enter+passphrase+to+unlock+key+"+keyId+"+for+signing+maven+artifact",
+                    "SETHASH "+p.getHashAlgorithm()+" "+new String(Hex.encode(p.getDigest())),
+                    "PKSIGN");
+                return parse(SExpression.parse(r[3].data));
+            }
+        };
+    }
+
+    /**
+     * Parses "(sig-val (rsa (s ...)))" or "(sig-val (dsa (r ...) (s ...)))".
+     */
+    private static BigInteger[] parse(SExpression sig) throws IOException, SignatureException {
+        SExpression v = sig.find("sig-val");
+        if (v==null || v.getList().size()<2)
+            throw new SignatureException("Unexpected signature from GPG agent: "+sig);
+
+        String algorithm = v.getList().get(1).getName();
+        if ("rsa".equals(algorithm))
+            return new BigInteger[]{v.findInteger("s")};
+        if ("dsa".equals(algorithm))
+            return new BigInteger[]{v.findInteger("r"),v.findInteger("s")};
+        throw new SignatureException("Unsupported signature algorithm from GPG agent: "+algorithm);
+    }
+}
@@ -0,0 +1,15 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import java.io.IOException;
+
+/**
+ * Signals that a key couldn't be decrypted with the given pass phrase,
+ * as opposed to other problems with the key, so that the pass phrase can be asked again.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class IncorrectPassphraseException extends IOException {
+    IncorrectPassphraseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,465 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.apache.maven.plugin.logging.Log;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.encoders.Hex;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of a binary key ring file, such as "~/.gnupg/secring.gpg".
+ *
+ * <p>
+ * The index remembers where in the file each key ring is, along with the key IDs, fingerprints,
+ * and user IDs of the keys in it, which are read from the packets without decoding the keys.
+ * Looking up a key only decodes the matching key ring,
+ * and indices are cached until the timestamp or the size of the file changes.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class KeyRingIndex {
+    private final File file;
+    private final long timestamp;
+    private final long size;
+
+    /**
+     * Key rings in the order they appear in the file.
+     */
+    private final List<Ring> rings = new ArrayList<Ring>();
+
+    private final Map<Long,Match> byKeyID = new HashMap<Long,Match>();
+    private final Map<Long,Match> byShortKeyID = new HashMap<Long,Match>();
+    private final Map<String,Match> byFingerprint = new HashMap<String,Match>();
+    private final List<UserID> userIDs = new ArrayList<UserID>();
+
+    /**
+     * Location of a key ring in the file.
+     */
+    private static final class Ring {
+        final int offset;
+        final int length;
+
+        Ring(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A key in a key ring.
+     */
+    private static class Match {
+        final Ring ring;
+        final long keyID;
+
+        Match(Ring ring, long keyID) {
+            this.ring = ring;
+            this.keyID = keyID;
+        }
+    }
+
+    private static final class UserID extends Match {
+        final String userID;
+
+        UserID(Ring ring, long keyID, String userID) {
+            super(ring, keyID);
+            this.userID = userID;
+        }
+    }
+
+    private KeyRingIndex(File file, byte[] data, Log log) throws IOException {
+        this.file = file;
+        this.timestamp = file.lastModified();
+        this.size = data.length;
+
+        List<Packet> ring = new ArrayList<Packet>();
+        for (Packet p : packets(data)) {
+            if (p.tag==SECRET_KEY_TAG && !ring.isEmpty()) {
+                add(data,ring,log);
+                ring.clear();
+            }
+            ring.add(p);
+        }
+        if (!ring.isEmpty())
+            add(data,ring,log);
+    }
+
+    /**
+     * Indexes one key ring from the headers of its key and user ID packets, without decoding the keys.
+     */
+    private void add(byte[] data, List<Packet> packets, Log log) {
+        Packet first = packets.get(0);
+        Ring r = new Ring(first.offset,packets.get(packets.size()-1).end-first.offset);
+
+        List<Match> keys = new ArrayList<Match>();
+        List<String> fingerprints = new ArrayList<String>();
+        List<UserID> ids = new ArrayList<UserID>();
+        try {
+            if (first.tag!=SECRET_KEY_TAG)
+                throw new IOException("Expecting a secret key packet but found a packet of tag "+first.tag);
+
+            long primary = 0;
+            for (Packet p : packets) {
+                switch (p.tag) {
+                case SECRET_KEY_TAG:
+                case SECRET_SUBKEY_TAG:
+                    byte[] fingerprint = p.fingerprint(data);
+                    long id = p.keyID(data,fingerprint);
+                    if (p.tag==SECRET_KEY_TAG)
+                        primary = id;
+                    keys.add(new Match(r,id));
+                    fingerprints.add(new String(Hex.encode(fingerprint)).toUpperCase());
+                    break;
+                case USER_ID_TAG:
+                    // user IDs that follow the primary key belong to it
+                    ids.add(new UserID(r,primary,new String(data,p.body,p.end-p.body,"UTF-8")));
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // a key that we don't understand. can't sign with it anyway
+            if (log!=null)
+                log.debug("Skipping the key ring at offset "+r.offset+" in "+file+": "+e.getMessage());
+            return;
+        }
+
+        rings.add(r);
+        for (int i=0; i<keys.size(); i++) {
+            Match m = keys.get(i);
+            putIfAbsent(byKeyID, m.keyID, m);
+            putIfAbsent(byShortKeyID, m.keyID&0xFFFFFFFFL, m);
+            putIfAbsent(byFingerprint, fingerprints.get(i), m);
+        }
+        userIDs.addAll(ids);
+    }
+
+    /**
+     * When multiple keys have the same ID, the first one in the file wins.
+     */
+    private static <K> void putIfAbsent(Map<K,Match> map, K key, Match m) {
+        if (!map.containsKey(key))
+            map.put(key,m);
+    }
+
+    private boolean isUpToDate() {
+        return file.lastModified()==timestamp && file.length()==size;
+    }
+
+    /**
+     * Finds the key that matches the given specifier.
+     *
+     * @param id
+     *      Either a short (8 hex digits) or a long (16 hex digits) key ID, a fingerprint,
+     *      or a part of the user ID. If null, the first key in the file is returned.
+     * @return
+     *      null if no such key is found.
+     */
+    PGPSecretKey find(String id) throws IOException {
+        if (id==null) {
+            for (Ring r : rings) {
+                try {
+                    return decode(r).getSecretKey();
+                } catch (IOException e) {
+                    // BouncyCastle doesn't understand this key. try the next one
+                }
+            }
+            return null;
+        }
+
+        Match m = findKeyID(id);
+        if (m==null) {
+            for (UserID u : userIDs) {
+                if (u.userID.contains(id)) {
+                    m = u;
+                    break;
+                }
+            }
+        }
+        if (m==null)    return null;
+
+        return decode(m.ring).getSecretKey(m.keyID);
+    }
+
+    private Match findKeyID(String id) {
+        String hex = id.replace(" ","").toUpperCase();
+        if (hex.startsWith("0X"))
+            hex = hex.substring(2);
+        if (!hex.matches("[0-9A-F]+"))
+            return null;
+
+        switch (hex.length()) {
+        case 8:
+            return byShortKeyID.get(Long.parseLong(hex,16));
+        case 16:
+            return byKeyID.get(Long.parseLong(hex.substring(0,8),16)<<32 | Long.parseLong(hex.substring(8),16));
+        case 40:
+            return byFingerprint.get(hex);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Reads and decodes just the given key ring.
+     */
+    private PGPSecretKeyRing decode(Ring r) throws IOException {
+        byte[] buf = new byte[r.length];
+        RandomAccessFile raf = new RandomAccessFile(file,"r");
+        try {
+            raf.seek(r.offset);
+            raf.readFully(buf);
+        } finally {
+            raf.close();
+        }
+        try {
+            return new PGPSecretKeyRing(buf);
+        } catch (PGPException e) {
+            throw (IOException)new IOException("Failed to read a key ring from "+file).initCause(e);
+        }
+    }
+
+    /**
+     * Gets the index of the given key ring file, building one if necessary.
+     *
+     * @param log
+     *      Where to report key rings that are skipped because they can't be read. Can be null.
+     * @return
+     *      null if the file is not a binary key ring, and therefore can't be indexed.
+     */
+    static KeyRingIndex get(File file, Log log) throws IOException {
+        file = file.getAbsoluteFile();
+        synchronized (CACHE) {
+            KeyRingIndex idx = CACHE.get(file);
+            if (idx!=null && idx.isUpToDate())
+                return idx;
+        }
+
+        byte[] data;
+        InputStream in = new FileInputStream(file);
+        try {
+            data = IOUtil.toByteArray(in);
+        } finally {
+            in.close();
+        }
+
+        if (data.length>0 && (data[0]&0x80)==0)
+            return null;    // ASCII armored
+
+        KeyRingIndex idx = new KeyRingIndex(file,data,log);
+        synchronized (CACHE) {
+            CACHE.put(file,idx);
+        }
+        return idx;
+    }
+
+    /**
+     * A packet in the key ring file.
+     */
+    static final class Packet {
+        final int tag;
+        /**
+         * Position of the header, the body, and the end of the packet in the file.
+         */
+        final int offset, body, end;
+
+        Packet(int tag, int offset, int body, int end) {
+            this.tag = tag;
+            this.offset = offset;
+            this.body = body;
+            this.end = end;
+        }
+
+        /**
+         * Computes the fingerprint of the public key that a key packet starts with, as in RFC 4880 section 12.2.
+         */
+        byte[] fingerprint(byte[] data) throws IOException {
+            int version = at(data,body);
+            try {
+                if (version==4) {
+                    int len = publicKeyLength(data);
+                    MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                    sha1.update(new byte[]{(byte)0x99,(byte)(len>>8),(byte)len});
+                    sha1.update(data,body,len);
+                    return sha1.digest();
+                }
+                if (version==2 || version==3) {
+                    // MD5 of the values of the RSA modulus and the exponent, without the lengths
+                    int n = body+8;
+                    int e = n+mpiLength(data,n);
+                    int last = e+mpiLength(data,e);
+                    if (last>end)
+                        throw new EOFException("Truncated key packet");
+                    MessageDigest md5 = MessageDigest.getInstance("MD5");
+                    md5.update(data,n+2,e-n-2);
+                    md5.update(data,e+2,last-e-2);
+                    return md5.digest();
+                }
+            } catch (NoSuchAlgorithmException x) {
+                throw (IOException)new IOException("Failed to compute a fingerprint").initCause(x);
+            }
+            throw new IOException("Unsupported key packet version "+version);
+        }
+
+        /**
+         * Key ID of the key that a key packet starts with.
+         */
+        long keyID(byte[] data, byte[] fingerprint) throws IOException {
+            int from;
+            if (at(data,body)==4) {
+                data = fingerprint;
+                from = fingerprint.length-8;
+            } else {
+                // the low 64 bits of the RSA modulus
+                from = body+8+mpiLength(data,body+8)-8;
+            }
+            long id = 0;
+            for (int i=0; i<8; i++)
+                id = id<<8 | at(data,from+i);
+            return id;
+        }
+
+        /**
+         * Length of the public key part of a version 4 key packet, from the version number to the last public key field.
+         */
+        private int publicKeyLength(byte[] data) throws IOException {
+            int algorithm = at(data,body+5);
+            int pos = body+6;
+            switch (algorithm) {
+            case PublicKeyAlgorithmTags.RSA_GENERAL:
+            case PublicKeyAlgorithmTags.RSA_ENCRYPT:
+            case PublicKeyAlgorithmTags.RSA_SIGN:
+                pos = mpis(data,pos,2);
+                break;
+            case PublicKeyAlgorithmTags.DSA:
+                pos = mpis(data,pos,4);
+                break;
+            case PublicKeyAlgorithmTags.ELGAMAL_ENCRYPT:
+            case PublicKeyAlgorithmTags.ELGAMAL_GENERAL:
+                pos = mpis(data,pos,3);
+                break;
+            case ECDSA:
+            case EDDSA:
+                pos = mpis(data,pos+1+at(data,pos),1);  // curve OID, then the point
+                break;
+            case ECDH:
+                pos = mpis(data,pos+1+at(data,pos),1);
+                pos += 1+at(data,pos);  // KDF parameters
+                break;
+            default:
+                throw new IOException("Unsupported public key algorithm "+algorithm);
+            }
+            if (pos>end)
+                throw new EOFException("Truncated key packet");
+            return pos-body;
+        }
+
+        private static int mpis(byte[] data, int pos, int n) throws IOException {
+            for (int i=0; i<n; i++)
+                pos += mpiLength(data,pos);
+            return pos;
+        }
+
+        /**
+         * Length of the multiprecision integer at the given position, including its length prefix.
+         */
+        private static int mpiLength(byte[] data, int pos) throws IOException {
+            int bits = (at(data,pos)<<8) | at(data,pos+1);
+            return 2+(bits+7)/8;
+        }
+    }
+
+    /**
+     * Walks the packets in a binary key ring, reading just their headers.
+     */
+    static List<Packet> packets(byte[] data) throws IOException {
+        List<Packet> packets = new ArrayList<Packet>();
+        int pos = 0;
+        while (pos<data.length) {
+            int b = data[pos]&0xFF;
+            if ((b&0x80)==0)
+                throw new IOException("Unexpected packet header at "+pos);
+
+            int tag;
+            int hlen;
+            long len;
+            if ((b&0x40)!=0) {// new format
+                tag = b&0x3F;
+                int l = at(data,pos+1);
+                if (l<192) {
+                    hlen = 2;
+                    len = l;
+                } else
+                if (l<=223) {
+                    hlen = 3;
+                    len = ((l-192)<<8) + at(data,pos+2) + 192;
+                } else
+                if (l==255) {
+                    hlen = 6;
+                    len = uint32(data,pos+2);
+                } else
+                    throw new IOException("Partial body length is not expected in a key ring");
+            } else {// old format
+                tag = (b>>2)&0x0F;
+                switch (b&3) {
+                case 0:
+                    hlen = 2;
+                    len = at(data,pos+1);
+                    break;
+                case 1:
+                    hlen = 3;
+                    len = (at(data,pos+1)<<8) | at(data,pos+2);
+                    break;
+                case 2:
+                    hlen = 5;
+                    len = uint32(data,pos+1);
+                    break;
+                default:
+                    throw new IOException("Indeterminate packet length is not expected in a key ring");
+                }
+            }
+            if (pos+hlen+len>data.length)
+                throw new EOFException("Truncated key ring");
+
+            Packet p = new Packet(tag,pos,pos+hlen,(int)(pos+hlen+len));
+            packets.add(p);
+            pos = p.end;
+        }
+        return packets;
+    }
+
+    private static long uint32(byte[] data, int pos) throws IOException {
+        return ((long)at(data,pos)<<24) | (at(data,pos+1)<<16) | (at(data,pos+2)<<8) | at(data,pos+3);
+    }
+
+    private static int at(byte[] data, int pos) throws EOFException {
+        if (pos>=data.length)
+            throw new EOFException("Truncated key ring");
+        return data[pos]&0xFF;
+    }
+
+    private static final int SECRET_KEY_TAG = 5;
+    private static final int SECRET_SUBKEY_TAG = 7;
+    private static final int USER_ID_TAG = 13;
+
+    /**
+     * Elliptic curve public key algorithms of RFC 6637, and EdDSA as GnuPG uses it.
+     */
+    private static final int ECDH = 18, ECDSA = 19, EDDSA = 22;
+
+    private static final Map<File,KeyRingIndex> CACHE = new HashMap<File,KeyRingIndex>();
+}
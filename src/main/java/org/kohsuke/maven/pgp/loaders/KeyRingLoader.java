@@ -37,6 +37,15 @@ public class KeyRingLoader extends SecretKeyLoader {
 
         String id = opts.get("id");
 
+        KeyRingIndex index = KeyRingIndex.get(keyFile,mojo!=null ? mojo.getLog() : null);
+        if (index!=null) {
+            PGPSecretKey key = index.find(id);
+            if (key==null)
+                throw new IOException("No key that matches "+id+" was found in "+keyFile);
+            return key;
+        }
+
+        // ASCII armored key ring. read it through
         InputStream in = PGPUtil.getDecoderStream(new FileInputStream(keyFile));
         try {
             PGPObjectFactory pgpFact = new PGPObjectFactory(in);
@@ -56,7 +65,8 @@ public class KeyRingLoader extends SecretKeyLoader {
                 while (jtr.hasNext()) {
                     PGPSecretKey skey = (PGPSecretKey) jtr.next();
 
-                    if (id.equalsIgnoreCase(Long.toHexString(skey.getPublicKey().getKeyID() & 0xFFFFFFFF)))
+                    if (id.equalsIgnoreCase(Long.toHexString(skey.getPublicKey().getKeyID() & 0xFFFFFFFFL))
+                     || id.equalsIgnoreCase(Long.toHexString(skey.getPublicKey().getKeyID())))
                         return skey;
 
                     for (Iterator ktr=skey.getUserIDs(); ktr.hasNext(); ) {
@@ -0,0 +1,334 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.util.encoders.Hex;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of a GnuPG 2.1+ keybox file, "~/.gnupg/pubring.kbx".
+ *
+ * <p>
+ * Like {@link KeyRingIndex}, the index remembers where in the file each key block is, along with the key IDs,
+ * fingerprints, and user IDs of the keys in it, plus the keygrips that locate the private keys.
+ * Computing keygrips requires decoding every key, so the index is also written to the cache directory,
+ * and reused by later builds until the timestamp or the size of the keybox changes.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class KeyboxIndex {
+    private final File file;
+    private final long timestamp;
+    private final long size;
+
+    /**
+     * Keys in the order they appear in the file.
+     */
+    private final List<Key> keys = new ArrayList<Key>();
+
+    /**
+     * A key in a key block.
+     */
+    static final class Key {
+        /**
+         * Location of the key block in the file.
+         */
+        final int offset, length;
+        final long keyID;
+        final byte[] fingerprint;
+        /**
+         * 40 upper case hex digits.
+         */
+        final String keygrip;
+        /**
+         * User IDs of the primary key. Empty for sub-keys.
+         */
+        final String[] userIDs;
+
+        Key(int offset, int length, long keyID, byte[] fingerprint, String keygrip, String[] userIDs) {
+            this.offset = offset;
+            this.length = length;
+            this.keyID = keyID;
+            this.fingerprint = fingerprint;
+            this.keygrip = keygrip;
+            this.userIDs = userIDs;
+        }
+
+        boolean matches(String id) {
+            String hex = id.replace(" ","").toUpperCase();
+            if (hex.startsWith("0X"))
+                hex = hex.substring(2);
+            if (hex.matches("[0-9A-F]+")) {
+                String fpr = new String(Hex.encode(fingerprint)).toUpperCase();
+                switch (hex.length()) {
+                case 8:
+                case 16:
+                case 40:
+                    return fpr.endsWith(hex);
+                }
+            }
+            for (String u : userIDs)
+                if (u.contains(id))
+                    return true;
+            return false;
+        }
+    }
+
+    private KeyboxIndex(File file, long timestamp, long size) {
+        this.file = file;
+        this.timestamp = timestamp;
+        this.size = size;
+    }
+
+    /**
+     * Walks the blobs in the keybox, and indexes the OpenPGP key blocks in them.
+     */
+    private void build(byte[] data) throws IOException {
+        int pos = 0;
+        while (pos<data.length) {
+            long len = uint32(data,pos);
+            if (len<BLOB_HEADER || pos+len>data.length)
+                throw new EOFException("Truncated blob in "+file+" at "+pos);
+
+            if (at(data,pos+4)==BLOB_OPENPGP) {
+                int offset = (int)uint32(data,pos+8);
+                int length = (int)uint32(data,pos+12);
+                if (offset+length>len)
+                    throw new IOException("Key block out of its blob in "+file+" at "+pos);
+                add(data,pos+offset,length);
+            }
+            pos += len;
+        }
+    }
+
+    private void add(byte[] data, int offset, int length) {
+        byte[] block = new byte[length];
+        System.arraycopy(data,offset,block,0,length);
+
+        PGPPublicKeyRing ring;
+        try {
+            ring = new PGPPublicKeyRing(block);
+        } catch (IOException e) {
+            return; // a key that we don't understand, such as ECC. can't sign with it anyway
+        } catch (RuntimeException e) {
+            return;
+        }
+
+        for (Iterator itr = ring.getPublicKeys(); itr.hasNext(); ) {
+            PGPPublicKey key = (PGPPublicKey) itr.next();
+            String grip;
+            try {
+                grip = Keygrip.of(key);
+            } catch (IOException e) {
+                continue;
+            }
+
+            List<String> ids = new ArrayList<String>();
+            for (Iterator jtr=key.getUserIDs(); jtr.hasNext(); )
+                ids.add((String)jtr.next());
+
+            keys.add(new Key(offset,length,key.getKeyID(),key.getFingerprint(),grip,ids.toArray(new String[ids.size()])));
+        }
+    }
+
+    private boolean isUpToDate() {
+        return file.lastModified()==timestamp && file.length()==size;
+    }
+
+    /**
+     * Finds the key that matches the given specifier.
+     *
+     * @param id
+     *      Either a short (8 hex digits) or a long (16 hex digits) key ID, a fingerprint,
+     *      or a part of the user ID. If null, the first key in the file is returned.
+     * @return
+     *      null if no such key is found.
+     */
+    Key find(String id) {
+        for (Key k : keys) {
+            if (id==null || k.matches(id))
+                return k;
+        }
+        return null;
+    }
+
+    /**
+     * Reads and decodes the public key.
+     */
+    PGPPublicKey decode(Key k) throws IOException {
+        byte[] buf = new byte[k.length];
+        RandomAccessFile raf = new RandomAccessFile(file,"r");
+        try {
+            raf.seek(k.offset);
+            raf.readFully(buf);
+        } finally {
+            raf.close();
+        }
+        PGPPublicKey key = new PGPPublicKeyRing(buf).getPublicKey(k.keyID);
+        if (key==null)
+            throw new IOException(file+" was modified while reading");
+        return key;
+    }
+
+    private void write(File cache) throws IOException {
+        File tmp = new File(cache.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(file.getPath());
+            out.writeLong(timestamp);
+            out.writeLong(size);
+            out.writeInt(keys.size());
+            for (Key k : keys) {
+                out.writeInt(k.offset);
+                out.writeInt(k.length);
+                out.writeLong(k.keyID);
+                out.writeShort(k.fingerprint.length);
+                out.write(k.fingerprint);
+                out.writeUTF(k.keygrip);
+                out.writeShort(k.userIDs.length);
+                for (String u : k.userIDs)
+                    out.writeUTF(u);
+            }
+        } finally {
+            out.close();
+        }
+        cache.delete();
+        if (!tmp.renameTo(cache))
+            throw new IOException("Failed to rename "+tmp+" to "+cache);
+    }
+
+    /**
+     * Reads the index written earlier.
+     *
+     * @return
+     *      null if the cache is stale or corrupted.
+     */
+    private static KeyboxIndex read(File file, File cache) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)));
+            try {
+                if (in.readInt()!=MAGIC || !in.readUTF().equals(file.getPath()))
+                    return null;
+                KeyboxIndex idx = new KeyboxIndex(file,in.readLong(),in.readLong());
+                if (!idx.isUpToDate())
+                    return null;
+                int n = in.readInt();
+                for (int i=0; i<n; i++) {
+                    int offset = in.readInt();
+                    int length = in.readInt();
+                    long keyID = in.readLong();
+                    byte[] fingerprint = new byte[in.readUnsignedShort()];
+                    in.readFully(fingerprint);
+                    String keygrip = in.readUTF();
+                    String[] userIDs = new String[in.readUnsignedShort()];
+                    for (int j=0; j<userIDs.length; j++)
+                        userIDs[j] = in.readUTF();
+                    idx.keys.add(new Key(offset,length,keyID,fingerprint,keygrip,userIDs));
+                }
+                return idx;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;    // rebuild
+        }
+    }
+
+    /**
+     * Gets the index of the given keybox, reading it from the cache directory or building one if necessary.
+     *
+     * @param cacheDir
+     *      Directory to keep the index in, or null to not keep it on disk.
+     */
+    static KeyboxIndex get(File file, File cacheDir) throws IOException {
+        file = file.getAbsoluteFile();
+        synchronized (CACHE) {
+            KeyboxIndex idx = CACHE.get(file);
+            if (idx!=null && idx.isUpToDate())
+                return idx;
+        }
+
+        File cache = cacheDir!=null ? new File(cacheDir,cacheName(file)) : null;
+        KeyboxIndex idx = cache!=null && cache.exists() ? read(file,cache) : null;
+        if (idx==null) {
+            // record the timestamp before reading, so that a concurrent update makes the index stale
+            idx = new KeyboxIndex(file,file.lastModified(),file.length());
+            byte[] data;
+            InputStream in = new FileInputStream(file);
+            try {
+                data = IOUtil.toByteArray(in);
+            } finally {
+                in.close();
+            }
+            idx.build(data);
+
+            if (cache!=null) {
+                try {
+                    cacheDir.mkdirs();
+                    idx.write(cache);
+                } catch (IOException e) {
+                    // the cache is just an optimization
+                }
+            }
+        }
+
+        synchronized (CACHE) {
+            CACHE.put(file,idx);
+        }
+        return idx;
+    }
+
+    /**
+     * Keyboxes in different directories get different cache files.
+     */
+    private static String cacheName(File file) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-1").digest(file.getPath().getBytes("UTF-8"));
+            return new String(Hex.encode(h))+".kbxidx";
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static long uint32(byte[] data, int pos) throws IOException {
+        return ((long)at(data,pos)<<24) | (at(data,pos+1)<<16) | (at(data,pos+2)<<8) | at(data,pos+3);
+    }
+
+    private static int at(byte[] data, int pos) throws EOFException {
+        if (pos>=data.length)
+            throw new EOFException("Truncated keybox");
+        return data[pos]&0xFF;
+    }
+
+    /**
+     * Length, type, version, flags, key block offset, and key block length.
+     */
+    private static final int BLOB_HEADER = 16;
+    private static final int BLOB_OPENPGP = 2;
+
+    private static final int MAGIC = 0x4B425831; // "KBX1"
+
+    private static final Map<File,KeyboxIndex> CACHE = new HashMap<File,KeyboxIndex>();
+}
@@ -0,0 +1,283 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.codehaus.plexus.component.annotations.Component;
+import org.kohsuke.maven.pgp.PassphraseValidator;
+import org.kohsuke.maven.pgp.PgpMojo;
+import org.kohsuke.maven.pgp.SecretKeyLoader;
+import org.kohsuke.maven.pgp.Signer;
+import org.kohsuke.maven.pgp.SigningKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.security.interfaces.DSAParams;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Loads a key from the storage of GnuPG 2.1+, where the public keys are in "pubring.kbx"
+ * and the secret keys are in "private-keys-v1.d", without exporting them first.
+ *
+ * <p>
+ * The specifier takes the same "id" as {@link KeyRingLoader}, and optionally "home" for the GnuPG home directory
+ * and "cache" for the directory to keep the index of the keybox in.
+ * The pass phrase is obtained through the passphrase loader to decrypt the key file.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Component(role=SecretKeyLoader.class,hint="keybox")
+public class KeyboxLoader extends SecretKeyLoader {
+    public PGPSecretKey load(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException {
+        return load(mojo,mojo.getSigningKey(),specifier);
+    }
+
+    @Override
+    public PGPSecretKey load(PgpMojo mojo, SigningKey key, String specifier) throws IOException, MojoExecutionException {
+        Map<String,String> opts = parseQueryParameters(specifier);
+        KeyboxIndex index = getIndex(opts);
+        KeyboxIndex.Key k = find(index,opts);
+        PGPPublicKey pub = index.decode(k);
+
+        File keyFile = new File(getHome(opts),"private-keys-v1.d/"+k.keygrip+".key");
+        if (!keyFile.exists())
+            throw new IOException("No secret key for "+opts.get("id")+" in "+keyFile.getParentFile()+". Perhaps it's on a smart card?");
+        final PrivateKeyFile f = new PrivateKeyFile(keyFile);
+        if (!f.isProtected())
+            return secretKey(pub,f.getSecretParameters(null));
+
+        // the pass phrase loader can't check the pass phrase against the dummy key, so we check it against the file
+        final PublicKey pk = publicKey(pub);
+        final SExpression[] secret = new SExpression[1];
+        char[] pass = mojo.loadPassPhrase(key,secretKey(pub,null),new PassphraseValidator() {
+            public boolean isValid(char[] passphrase) throws IOException {
+                try {
+                    SExpression s = f.getSecretParameters(passphrase);
+                    check(pk,s);
+                    secret[0] = s;
+                    return true;
+                } catch (IncorrectPassphraseException e) {
+                    return false;
+                }
+            }
+        }).toCharArray();
+        try {
+            if (secret[0]==null) {
+                // the pass phrase was remembered from earlier, so it wasn't validated again
+                secret[0] = f.getSecretParameters(pass);
+            }
+            return secretKey(pub,secret[0]);
+        } finally {
+            Arrays.fill(pass,'\0');
+        }
+    }
+
+    /**
+     * Public keys can be obtained without decrypting anything, such as for signing through GPG agent.
+     */
+    @Override
+    public PGPPublicKey loadPublicKey(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException {
+        Map<String,String> opts = parseQueryParameters(specifier);
+        KeyboxIndex index = getIndex(opts);
+        return index.decode(find(index,opts));
+    }
+
+    private KeyboxIndex getIndex(Map<String,String> opts) throws IOException {
+        File kbx = opts.containsKey("keybox") ? new File(opts.get("keybox")) : new File(getHome(opts),"pubring.kbx");
+        if (!kbx.exists())
+            throw new IOException("No such keybox file exists: "+kbx);
+
+        File cache = opts.containsKey("cache") ? new File(opts.get("cache"))
+                : new File(new File(System.getProperty("user.home")),".m2/pgp-keybox");
+        return KeyboxIndex.get(kbx,cache);
+    }
+
+    private KeyboxIndex.Key find(KeyboxIndex index, Map<String,String> opts) throws IOException {
+        String id = opts.get("id");
+        KeyboxIndex.Key k = index.find(id);
+        if (k==null)
+            throw new IOException("No key that matches "+id+" was found in the keybox");
+        return k;
+    }
+
+    private File getHome(Map<String,String> opts) {
+        if (opts.containsKey("home"))
+            return new File(opts.get("home"));
+        String home = System.getenv("GNUPGHOME");
+        return home!=null ? new File(home) : new File(new File(System.getProperty("user.home")),".gnupg");
+    }
+
+    /**
+     * Builds an OpenPGP secret key whose secret parameters aren't encrypted, from the parameters
+     * decrypted from the key file, after making sure they belong to the public key.
+     *
+     * @param secret
+     *      If null, dummy parameters are used, to give the passphrase loader a key to work with
+     *      before the real one is decrypted.
+     */
+    private PGPSecretKey secretKey(PGPPublicKey pub, SExpression secret) throws IOException {
+        PublicKey k = publicKey(pub);
+        if (secret!=null)
+            check(k,secret);
+
+        ByteArrayOutputStream mpis = new ByteArrayOutputStream();
+        if (k instanceof RSAPublicKey) {
+            BigInteger d,p,q;
+            if (secret!=null) {
+                d = secret.findInteger("d");
+                p = secret.findInteger("p");
+                q = secret.findInteger("q");
+            } else {
+                d = BigInteger.ONE;
+                p = BigInteger.valueOf(3);
+                q = BigInteger.valueOf(5);
+            }
+            if (p.compareTo(q)>0) {// OpenPGP wants p<q
+                BigInteger t = p; p = q; q = t;
+            }
+            mpi(mpis,d);
+            mpi(mpis,p);
+            mpi(mpis,q);
+            mpi(mpis,p.modInverse(q));
+        } else
+        if (k instanceof DSAPublicKey) {
+            BigInteger x = secret!=null ? secret.findInteger("x") : BigInteger.ONE;
+            mpi(mpis,x);
+        } else {
+            throw new IOException("Unsupported key algorithm: "+pub.getAlgorithm());
+        }
+
+        // secret key packet is the public key packet, followed by the unencrypted secret parameters and the checksum
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(publicKeyPacketBody(pub.getEncoded()));
+        body.write(0);  // not encrypted
+        byte[] m = mpis.toByteArray();
+        body.write(m);
+        int sum = 0;
+        for (byte b : m)
+            sum += b&0xFF;
+        body.write(sum>>8);
+        body.write(sum);
+        Arrays.fill(m,(byte)0);
+
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        packet.write(0xC0|SECRET_KEY_TAG);
+        int len = body.size();
+        if (len<192) {
+            packet.write(len);
+        } else
+        if (len<8384) {
+            packet.write(((len-192)>>8)+192);
+            packet.write(len-192);
+        } else {
+            packet.write(0xFF);
+            packet.write(len>>24);
+            packet.write(len>>16);
+            packet.write(len>>8);
+            packet.write(len);
+        }
+        body.writeTo(packet);
+
+        try {
+            return new PGPSecretKeyRing(packet.toByteArray()).getSecretKey();
+        } catch (PGPException e) {
+            throw (IOException)new IOException("Failed to build the secret key").initCause(e);
+        }
+    }
+
+    private static PublicKey publicKey(PGPPublicKey pub) throws IOException {
+        try {
+            return pub.getKey(Signer.PROVIDER);
+        } catch (PGPException e) {
+            throw (IOException)new IOException("Unsupported key").initCause(e);
+        }
+    }
+
+    /**
+     * Makes sure that the secret parameters decrypted from the key file belong to the public key,
+     * which is how a wrong pass phrase is caught.
+     */
+    private static void check(PublicKey k, SExpression secret) throws IOException {
+        boolean ok;
+        try {
+            if (k instanceof RSAPublicKey) {
+                BigInteger p = secret.findInteger("p"), q = secret.findInteger("q");
+                ok = p.multiply(q).equals(((RSAPublicKey)k).getModulus());
+            } else
+            if (k instanceof DSAPublicKey) {
+                BigInteger x = secret.findInteger("x");
+                DSAParams params = ((DSAPublicKey)k).getParams();
+                ok = params.getG().modPow(x,params.getP()).equals(((DSAPublicKey)k).getY());
+            } else {
+                return; // rejected when the key is built
+            }
+        } catch (IOException e) {
+            ok = false; // the parameters are missing, so the decryption produced garbage
+        }
+        if (!ok)
+            throw new IncorrectPassphraseException("Incorrect pass phrase, or the secret key doesn't match the public key");
+    }
+
+    /**
+     * Writes an OpenPGP multi-precision integer, which is the bit length followed by the magnitude.
+     */
+    private static void mpi(ByteArrayOutputStream out, BigInteger v) {
+        byte[] b = v.toByteArray();
+        int off = b[0]==0 && b.length>1 ? 1 : 0;
+        out.write(v.bitLength()>>8);
+        out.write(v.bitLength());
+        out.write(b,off,b.length-off);
+    }
+
+    /**
+     * Extracts the body of the first packet, which is the public key (or sub-key) packet.
+     */
+    private static byte[] publicKeyPacketBody(byte[] data) throws IOException {
+        int b = data[0]&0xFF;
+        int hlen, len;
+        if ((b&0x40)!=0) {// new format
+            int l = data[1]&0xFF;
+            if (l<192) {
+                hlen = 2;
+                len = l;
+            } else
+            if (l<=223) {
+                hlen = 3;
+                len = ((l-192)<<8) + (data[2]&0xFF) + 192;
+            } else {
+                hlen = 6;
+                len = ((data[2]&0xFF)<<24) | ((data[3]&0xFF)<<16) | ((data[4]&0xFF)<<8) | (data[5]&0xFF);
+            }
+        } else {// old format
+            switch (b&3) {
+            case 0:
+                hlen = 2;
+                len = data[1]&0xFF;
+                break;
+            case 1:
+                hlen = 3;
+                len = ((data[1]&0xFF)<<8) | (data[2]&0xFF);
+                break;
+            case 2:
+                hlen = 5;
+                len = ((data[1]&0xFF)<<24) | ((data[2]&0xFF)<<16) | ((data[3]&0xFF)<<8) | (data[4]&0xFF);
+                break;
+            default:
+                throw new IOException("Unexpected public key packet length");
+            }
+        }
+        byte[] body = new byte[len];
+        System.arraycopy(data,hlen,body,0,len);
+        return body;
+    }
+
+    private static final int SECRET_KEY_TAG = 5;
+}
@@ -0,0 +1,75 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.util.encoders.Hex;
+import org.kohsuke.maven.pgp.Signer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.RSAPublicKey;
+
+/**
+ * Computes the keygrip, which is how GPG agent identifies keys, independent of the OpenPGP key ID.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class Keygrip {
+    /**
+     * Returns the keygrip in 40 upper case hex digits.
+     */
+    static String of(PGPPublicKey key) throws IOException {
+        PublicKey k;
+        try {
+            k = key.getKey(Signer.PROVIDER);
+        } catch (PGPException e) {
+            throw (IOException)new IOException("Unsupported key").initCause(e);
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        if (k instanceof RSAPublicKey) {
+            // for RSA, it's just the modulus
+            buf.write(bytes(((RSAPublicKey)k).getModulus()));
+        } else
+        if (k instanceof DSAPublicKey) {
+            DSAPublicKey d = (DSAPublicKey)k;
+            param(buf,'p',d.getParams().getP());
+            param(buf,'q',d.getParams().getQ());
+            param(buf,'g',d.getParams().getG());
+            param(buf,'y',d.getY());
+        } else {
+            throw new IOException("Unsupported key algorithm: "+key.getAlgorithm());
+        }
+
+        try {
+            return new String(Hex.encode(MessageDigest.getInstance("SHA-1").digest(buf.toByteArray()))).toUpperCase();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes "(1:p3:xxx)"
+     */
+    private static void param(ByteArrayOutputStream buf, char name, BigInteger value) throws IOException {
+        byte[] data = bytes(value);
+        buf.write(("(1:"+name+data.length+":").getBytes("US-ASCII"));
+        buf.write(data);
+        buf.write(')');
+    }
+
+    /**
+     * libgcrypt's standard MPI format, which is two's complement.
+     * That is, a leading 0 is added when the most significant bit is set.
+     */
+    private static byte[] bytes(BigInteger i) {
+        return i.toByteArray();
+    }
+
+    private Keygrip() {}
+}
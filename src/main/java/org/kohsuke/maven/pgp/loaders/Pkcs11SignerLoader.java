@@ -0,0 +1,244 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.codehaus.plexus.component.annotations.Component;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PgpMojo;
+import org.kohsuke.maven.pgp.PrivateKeyDigestSigner;
+import org.kohsuke.maven.pgp.Signer;
+import org.kohsuke.maven.pgp.SignerLoader;
+import org.kohsuke.maven.pgp.SigningKey;
+
+import javax.security.auth.login.LoginException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Signs with a key that's kept in a PKCS#11 token, such as a hardware security module or SoftHSM,
+ * through the SunPKCS11 provider of the JDK.
+ *
+ * <p>
+ * The specifier is either "config=path/to/pkcs11.cfg" in the format of SunPKCS11, or
+ * "library=path/to/lib.so" with optionally "slot=N" or "slotListIndex=N". Then
+ * "alias=ALIAS" selects the key in the token, which otherwise is the one that matches the public key.
+ * "sessions=N" limits the number of signatures computed concurrently, which defaults to the number of processors.
+ * The PIN of the token is obtained through the passphrase loader.
+ *
+ * <p>
+ * The token doesn't hold the OpenPGP public key, which is loaded from the secretkey parameter,
+ * or from "publickey=path/to/key.asc" (with optionally "id=KEYID") if it's given.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Component(role=SignerLoader.class,hint="pkcs11")
+public class Pkcs11SignerLoader extends SignerLoader {
+    /**
+     * Providers by their configurations, as a PKCS#11 library should be loaded once per JVM.
+     */
+    private final Map<String,Provider> providers = new HashMap<String,Provider>();
+
+    @Override
+    public DigestSigner load(PgpMojo mojo, PGPPublicKey publicKey, String specifier) throws IOException, MojoExecutionException {
+        return load(mojo,mojo.getSigningKey(),publicKey,specifier);
+    }
+
+    @Override
+    public DigestSigner load(PgpMojo mojo, SigningKey key, PGPPublicKey publicKey, String specifier) throws IOException, MojoExecutionException {
+        Map<String,String> opts = parseQueryParameters(specifier);
+        int sessions = getSessions(opts);
+        Provider provider = getProvider(opts);
+
+        char[] pin = mojo.loadPassPhrase(key,null).toCharArray();
+        KeyStore ks;
+        try {
+            ks = KeyStore.getInstance("PKCS11",provider);
+            ks.load(null,pin);
+        } catch (GeneralSecurityException e) {
+            throw (IOException)new IOException("Failed to open the PKCS#11 token").initCause(e);
+        } catch (IOException e) {
+            if (!isLoginFailure(e))
+                throw e;
+            // so that the wrong PIN isn't given out again on the next attempt
+            mojo.forgetPassPhrase(key,null);
+            throw (IOException)new IOException("Failed to log into the PKCS#11 token. Is the PIN correct?").initCause(e);
+        } finally {
+            Arrays.fill(pin,'\0');
+        }
+
+        return new PrivateKeyDigestSigner(findKey(ks,opts.get("alias"),publicKey),provider,sessions);
+    }
+
+    private static int getSessions(Map<String,String> opts) throws IOException {
+        String v = opts.get("sessions");
+        if (v==null)
+            return Runtime.getRuntime().availableProcessors();
+        try {
+            int n = Integer.parseInt(v);
+            if (n>0)
+                return n;
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IOException("sessions needs to be a positive integer, but it's "+v);
+    }
+
+    /**
+     * SunPKCS11 reports a rejected PIN as an {@link IOException} caused by a {@link LoginException}.
+     */
+    private static boolean isLoginFailure(Throwable t) {
+        for (; t!=null; t=t.getCause())
+            if (t instanceof LoginException)
+                return true;
+        return false;
+    }
+
+    @Override
+    public PGPPublicKey loadPublicKey(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException {
+        Map<String,String> opts = parseQueryParameters(specifier);
+        String file = opts.get("publickey");
+        if (file==null)
+            return null;
+
+        String id = opts.get("id");
+        InputStream in = PGPUtil.getDecoderStream(new FileInputStream(file));
+        try {
+            PGPPublicKeyRingCollection rings = new PGPPublicKeyRingCollection(in);
+            for (Iterator itr = rings.getKeyRings(); itr.hasNext(); ) {
+                PGPPublicKeyRing ring = (PGPPublicKeyRing) itr.next();
+                for (Iterator jtr = ring.getPublicKeys(); jtr.hasNext(); ) {
+                    PGPPublicKey k = (PGPPublicKey) jtr.next();
+                    String hex = Long.toHexString(k.getKeyID()).toUpperCase();
+                    if (id==null || hex.endsWith(id.toUpperCase()))
+                        return k;
+                }
+            }
+            throw new IOException("No key that matches "+id+" was found in "+file);
+        } catch (PGPException e) {
+            throw (IOException)new IOException("Failed to read the public key from "+file).initCause(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Finds the private key by the alias, or the one whose certificate has the given public key.
+     */
+    private PrivateKey findKey(KeyStore ks, String alias, PGPPublicKey publicKey) throws IOException {
+        try {
+            if (alias!=null) {
+                Key k = ks.getKey(alias,null);
+                if (!(k instanceof PrivateKey))
+                    throw new IOException("No private key "+alias+" in the PKCS#11 token");
+                return (PrivateKey)k;
+            }
+
+            PublicKey pub = publicKey.getKey(Signer.PROVIDER);
+            for (Enumeration<String> e = ks.aliases(); e.hasMoreElements(); ) {
+                String a = e.nextElement();
+                Certificate c = ks.getCertificate(a);
+                if (ks.isKeyEntry(a) && c!=null && isSameKey(c.getPublicKey(),pub))
+                    return (PrivateKey)ks.getKey(a,null);
+            }
+            throw new IOException("No private key for "+Long.toHexString(publicKey.getKeyID()).toUpperCase()+" in the PKCS#11 token." +
+                    " The key needs a certificate in the token, or specify the alias");
+        } catch (PGPException e) {
+            throw (IOException)new IOException("Unsupported key").initCause(e);
+        } catch (GeneralSecurityException e) {
+            throw (IOException)new IOException("Failed to find the key in the PKCS#11 token").initCause(e);
+        }
+    }
+
+    /**
+     * Compares the key material, as different providers encode the same key differently.
+     */
+    private static boolean isSameKey(PublicKey a, PublicKey b) {
+        if (a instanceof RSAPublicKey && b instanceof RSAPublicKey)
+            return ((RSAPublicKey)a).getModulus().equals(((RSAPublicKey)b).getModulus());
+        if (a instanceof DSAPublicKey && b instanceof DSAPublicKey)
+            return ((DSAPublicKey)a).getY().equals(((DSAPublicKey)b).getY());
+        return false;
+    }
+
+    private Provider getProvider(Map<String,String> opts) throws IOException {
+        String config;
+        if (opts.containsKey("config")) {
+            config = new File(opts.get("config")).getAbsolutePath();
+        } else
+        if (opts.containsKey("library")) {
+            config = "name = pgp-maven-plugin\nlibrary = "+opts.get("library")+"\n";
+            if (opts.containsKey("slot"))
+                config += "slot = "+opts.get("slot")+"\n";
+            if (opts.containsKey("slotListIndex"))
+                config += "slotListIndex = "+opts.get("slotListIndex")+"\n";
+        } else {
+            throw new IOException("Either config or library needs to be specified for PKCS#11");
+        }
+
+        synchronized (providers) {
+            Provider p = providers.get(config);
+            if (p==null) {
+                if (opts.containsKey("config")) {
+                    p = createProvider(config);
+                } else {
+                    File f = File.createTempFile("pkcs11","cfg");
+                    try {
+                        Writer w = new OutputStreamWriter(new FileOutputStream(f),"UTF-8");
+                        try {
+                            w.write(config);
+                        } finally {
+                            w.close();
+                        }
+                        p = createProvider(f.getPath());
+                    } finally {
+                        f.delete();
+                    }
+                }
+                providers.put(config,p);
+            }
+            return p;
+        }
+    }
+
+    /**
+     * SunPKCS11 is configured differently before and after Java 9, so both are done reflectively.
+     */
+    private static Provider createProvider(String configFile) throws IOException {
+        try {
+            Provider base = Security.getProvider("SunPKCS11");
+            if (base!=null) // Java 9 and later
+                return (Provider)Provider.class.getMethod("configure",String.class).invoke(base,configFile);
+            return (Provider)Class.forName("sun.security.pkcs11.SunPKCS11").getConstructor(String.class).newInstance(configFile);
+        } catch (InvocationTargetException e) {
+            throw (IOException)new IOException("Failed to load the PKCS#11 library with "+configFile).initCause(e.getCause());
+        } catch (Exception e) {
+            throw (IOException)new IOException("PKCS#11 isn't supported in this JVM").initCause(e);
+        }
+    }
+}
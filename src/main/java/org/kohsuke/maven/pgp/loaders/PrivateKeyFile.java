@@ -0,0 +1,265 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.codehaus.plexus.util.IOUtil;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A private key file in "~/.gnupg/private-keys-v1.d", which GPG agent of GnuPG 2.1+ keeps keys in.
+ *
+ * <p>
+ * The file is either a canonical S-expression, or the extended format of GnuPG 2.2.20+,
+ * which is a set of "Name: value" lines whose "Key" item is an S-expression in the advanced encoding.
+ * Either way, the key is "(private-key (rsa (n ...) (e ...) (d ...) ...))", or
+ * "(protected-private-key (rsa (n ...) (e ...) (protected MODE PARAMS DATA) ...))"
+ * if the secret parameters are encrypted with a pass phrase.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class PrivateKeyFile {
+    private final File file;
+    private final SExpression key;
+
+    PrivateKeyFile(File file) throws IOException {
+        this.file = file;
+
+        byte[] data;
+        InputStream in = new FileInputStream(file);
+        try {
+            data = IOUtil.toByteArray(in);
+        } finally {
+            in.close();
+        }
+
+        if (data.length>0 && data[0]=='(')
+            key = SExpression.parse(data);
+        else
+            key = SExpression.parseAdvanced(extendedItem(new String(data,"UTF-8"),"Key"));
+    }
+
+    /**
+     * Finds the value of the given item in the extended format, joining the continuation lines.
+     */
+    private String extendedItem(String text, String name) throws IOException {
+        StringBuilder value = null;
+        for (String line : text.split("\r?\n")) {
+            if (value!=null) {
+                if (line.length()>0 && Character.isWhitespace(line.charAt(0))) {
+                    value.append('\n').append(line);
+                    continue;
+                }
+                break;
+            }
+            if (line.regionMatches(true,0,name+":",0,name.length()+1))
+                value = new StringBuilder(line.substring(name.length()+1));
+        }
+        if (value==null)
+            throw new IOException("No "+name+" item in "+file);
+        return value.toString();
+    }
+
+    /**
+     * Whether the secret parameters are encrypted, and therefore a pass phrase is needed.
+     */
+    boolean isProtected() {
+        return "protected-private-key".equals(key.getName());
+    }
+
+    /**
+     * Name of the public key algorithm, such as "rsa" and "dsa".
+     */
+    String getAlgorithm() throws IOException {
+        return algorithm().getName();
+    }
+
+    private SExpression algorithm() throws IOException {
+        List<SExpression> l = key.getList();
+        if (l.size()<2 || l.get(1).isAtom())
+            throw new IOException("Unexpected key format in "+file+": "+key.getName());
+        return l.get(1);
+    }
+
+    /**
+     * Returns the S-expression that contains the secret parameters, decrypting them if necessary.
+     *
+     * @param passphrase
+     *      Ignored if the key isn't protected.
+     * @throws IncorrectPassphraseException
+     *      if the pass phrase is evidently incorrect. The caller still needs to check the parameters against
+     *      the public key, as a wrong pass phrase can also produce parameters that happen to parse.
+     */
+    SExpression getSecretParameters(char[] passphrase) throws IOException {
+        if (!isProtected())
+            return key;
+
+        SExpression p = key.find("protected");
+        if (p==null || p.getList().size()<4)
+            throw new IOException("Malformed protected key in "+file);
+        String mode = p.getList().get(1).getString();
+        List<SExpression> params = p.getList().get(2).getList();
+        byte[] data = p.getList().get(3).getBytes();
+
+        boolean ocb;
+        if (mode.equals("openpgp-s2k3-sha1-aes-cbc"))   ocb = false;
+        else if (mode.equals("openpgp-s2k3-ocb-aes"))   ocb = true;
+        else
+            throw new IOException("Unsupported protection mode "+mode+" in "+file);
+
+        // ((sha1 SALT COUNT) IV)
+        if (params.size()<2 || params.get(0).getList().size()<3)
+            throw new IOException("Malformed protection parameters in "+file);
+        List<SExpression> s2k = params.get(0).getList();
+        if (!s2k.get(0).getString().equals("sha1"))
+            throw new IOException("Unsupported S2K hash "+s2k.get(0)+" in "+file);
+        byte[] salt = s2k.get(1).getBytes();
+        long count = Long.parseLong(s2k.get(2).getString());
+        byte[] iv = params.get(1).getBytes();
+
+        byte[] kek = s2k(passphrase,salt,count);
+        try {
+            byte[] plain = ocb ? decryptOCB(kek,iv,data) : decryptCBC(kek,iv,data);
+            try {
+                return SExpression.parse(plain);
+            } catch (IOException e) {
+                throw new IncorrectPassphraseException("Incorrect pass phrase for "+file);
+            } finally {
+                Arrays.fill(plain,(byte)0);
+            }
+        } finally {
+            Arrays.fill(kek,(byte)0);
+        }
+    }
+
+    /**
+     * OpenPGP iterated and salted S2K with SHA-1, which produces the AES-128 key.
+     */
+    private static byte[] s2k(char[] passphrase, byte[] salt, long count) throws IOException {
+        if (count<256)      // the coded form
+            count = (16L+(count&15)) << ((count>>4)+6);
+
+        byte[] pass = new String(passphrase).getBytes("UTF-8");
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            count = Math.max(count,salt.length+pass.length);
+            while (count>0) {
+                int n = (int)Math.min(count,salt.length);
+                sha1.update(salt,0,n);
+                count -= n;
+                n = (int)Math.min(count,pass.length);
+                sha1.update(pass,0,n);
+                count -= n;
+            }
+            return Arrays.copyOf(sha1.digest(),16);
+        } catch (GeneralSecurityException e) {
+            throw new AssertionError(e);
+        } finally {
+            Arrays.fill(pass,(byte)0);
+        }
+    }
+
+    /**
+     * The plain text is "(((d ...) (p ...) ...) (hash sha1 MIC))" followed by the padding, which we ignore.
+     * A wrong pass phrase produces garbage that fails to parse, and the caller checks the parameters anyway.
+     */
+    private static byte[] decryptCBC(byte[] kek, byte[] iv, byte[] data) throws IOException {
+        try {
+            Cipher c = Cipher.getInstance("AES/CBC/NoPadding");
+            c.init(Cipher.DECRYPT_MODE,new SecretKeySpec(kek,"AES"),new IvParameterSpec(iv));
+            return c.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw (IOException)new IOException("Failed to decrypt the key").initCause(e);
+        }
+    }
+
+    /**
+     * OCB mode of RFC 7253 with a 128 bit tag, which the JCE doesn't offer, built on AES in the ECB mode.
+     *
+     * <p>
+     * The tag covers the public parameters as the associated data. We don't check it, and instead rely on
+     * the caller checking the decrypted parameters against the public key, which also catches
+     * a wrong pass phrase.
+     */
+    private static byte[] decryptOCB(byte[] kek, byte[] nonce, byte[] data) throws IOException {
+        if (data.length<16 || nonce.length>15)
+            throw new IOException("Malformed OCB encrypted key");
+        try {
+            Cipher enc = Cipher.getInstance("AES/ECB/NoPadding");
+            enc.init(Cipher.ENCRYPT_MODE,new SecretKeySpec(kek,"AES"));
+            Cipher dec = Cipher.getInstance("AES/ECB/NoPadding");
+            dec.init(Cipher.DECRYPT_MODE,new SecretKeySpec(kek,"AES"));
+
+            int len = data.length-16;   // the tag is at the end
+            byte[] plain = new byte[len];
+
+            // L_*, L_$, and then L_i as needed
+            byte[] lStar = enc.doFinal(new byte[16]);
+            byte[] l = twice(lStar);    // L_$
+            byte[][] ls = new byte[32][];
+            for (int i=0; i<ls.length; i++)
+                ls[i] = l = twice(l);
+
+            // Nonce = 0000000 (tag length mod 128) || 0* || 1 || N
+            byte[] n = new byte[16];
+            System.arraycopy(nonce,0,n,16-nonce.length,nonce.length);
+            n[15-nonce.length] |= 1;
+            int bottom = n[15]&0x3F;
+            n[15] &= 0xC0;
+            byte[] ktop = enc.doFinal(n);
+            byte[] stretch = new byte[24];
+            System.arraycopy(ktop,0,stretch,0,16);
+            for (int i=0; i<8; i++)
+                stretch[16+i] = (byte)(ktop[i]^ktop[i+1]);
+            byte[] offset = new byte[16];
+            int shift = bottom%8, skip = bottom/8;
+            for (int i=0; i<16; i++)
+                offset[i] = (byte)(((stretch[i+skip]&0xFF)<<shift | (stretch[i+skip+1]&0xFF)>>>(8-shift)));
+
+            byte[] block = new byte[16];
+            int i=0;
+            for (int b=1; i+16<=len; b++, i+=16) {
+                xor(offset,ls[Integer.numberOfTrailingZeros(b)]);
+                for (int j=0; j<16; j++)
+                    block[j] = (byte)(data[i+j]^offset[j]);
+                block = dec.doFinal(block);
+                for (int j=0; j<16; j++)
+                    plain[i+j] = (byte)(block[j]^offset[j]);
+            }
+            if (i<len) {
+                xor(offset,lStar);
+                byte[] pad = enc.doFinal(offset);
+                for (int j=0; i+j<len; j++)
+                    plain[i+j] = (byte)(data[i+j]^pad[j]);
+            }
+            Arrays.fill(block,(byte)0);
+            return plain;
+        } catch (GeneralSecurityException e) {
+            throw (IOException)new IOException("Failed to decrypt the key").initCause(e);
+        }
+    }
+
+    /**
+     * Doubling in GF(2^128).
+     */
+    private static byte[] twice(byte[] s) {
+        byte[] r = new byte[16];
+        for (int i=0; i<15; i++)
+            r[i] = (byte)((s[i]<<1) | ((s[i+1]&0xFF)>>>7));
+        r[15] = (byte)((s[15]<<1) ^ ((s[0]&0x80)!=0 ? 0x87 : 0));
+        return r;
+    }
+
+    private static void xor(byte[] a, byte[] b) {
+        for (int i=0; i<a.length; i++)
+            a[i] ^= b[i];
+    }
+}
@@ -0,0 +1,57 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.codehaus.plexus.component.annotations.Component;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PgpMojo;
+import org.kohsuke.maven.pgp.SignerLoader;
+import org.kohsuke.maven.pgp.daemon.SigningClient;
+import org.kohsuke.maven.pgp.daemon.SigningDaemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Signs through {@link SigningDaemon} on another machine over TCP.
+ * Only the digest, a few dozen bytes, is sent for each artifact.
+ *
+ * <p>
+ * The specifier is "host=HOST&port=PORT", optionally followed by "&token=FILE"
+ * that points to the file containing the shared secret the daemon requires,
+ * and "&tls=true" for a daemon that listens with "-tls".
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Component(role=SignerLoader.class,hint="remote")
+public class RemoteSignerLoader extends SignerLoader {
+    @Override
+    public PGPPublicKey loadPublicKey(PgpMojo mojo, String specifier) throws IOException, MojoExecutionException {
+        return getClient(specifier).getPublicKey();
+    }
+
+    @Override
+    public DigestSigner load(PgpMojo mojo, PGPPublicKey publicKey, String specifier) throws IOException, MojoExecutionException {
+        SigningClient client = getClient(specifier);
+        if (client.getPublicKey().getKeyID()!=publicKey.getKeyID())
+            throw new MojoExecutionException("Signing daemon signs with a different key than "+Long.toHexString(publicKey.getKeyID()).toUpperCase());
+        return client.asDigestSigner();
+    }
+
+    private SigningClient getClient(String specifier) throws IOException, MojoExecutionException {
+        Map<String,String> opts = parseQueryParameters(specifier);
+        String host = opts.get("host");
+        String port = opts.get("port");
+        if (host==null || port==null)
+            throw new MojoExecutionException("The remote signer needs to be specified as remote:host=HOST&port=PORT[&token=FILE][&tls=true]");
+
+        String token = opts.get("token");
+        try {
+            return SigningClient.get(host, Integer.parseInt(port), token!=null ? SigningDaemon.readToken(new File(token)) : null,
+                    Boolean.valueOf(opts.get("tls")));
+        } catch (NumberFormatException e) {
+            throw new MojoExecutionException("Invalid port number: "+port,e);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import org.bouncycastle.util.encoders.Base64;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * S-expression, as used by GPG agent and libgcrypt to represent keys and signatures.
+ *
+ * <p>
+ * An S-expression is either an atom, which is a byte string, or a list of S-expressions.
+ * This class parses the canonical encoding, such as "(7:sig-val(3:rsa(1:s3:...)))",
+ * as well as the advanced encoding used in GnuPG key files.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class SExpression {
+    /**
+     * Non-null if this is an atom.
+     */
+    private final byte[] atom;
+    /**
+     * Non-null if this is a list.
+     */
+    private final List<SExpression> list;
+
+    SExpression(byte[] atom) {
+        this.atom = atom;
+        this.list = null;
+    }
+
+    SExpression(List<SExpression> list) {
+        this.atom = null;
+        this.list = list;
+    }
+
+    boolean isAtom() {
+        return atom!=null;
+    }
+
+    byte[] getBytes() {
+        if (atom==null)     throw new IllegalStateException("Not an atom");
+        return atom;
+    }
+
+    String getString() {
+        try {
+            return new String(getBytes(),"UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Interprets the atom as an unsigned big-endian integer.
+     */
+    BigInteger getInteger() {
+        return new BigInteger(1,getBytes());
+    }
+
+    List<SExpression> getList() {
+        if (list==null)     return Collections.emptyList();
+        return list;
+    }
+
+    /**
+     * Name of the list, which is its first element.
+     */
+    String getName() {
+        if (list==null || list.isEmpty() || !list.get(0).isAtom())
+            return null;
+        return list.get(0).getString();
+    }
+
+    /**
+     * Finds the first list with the given name, searching this list and its descendants depth first.
+     *
+     * @return
+     *      null if not found.
+     */
+    SExpression find(String name) {
+        if (name.equals(getName()))
+            return this;
+        for (SExpression e : getList()) {
+            SExpression r = e.find(name);
+            if (r!=null)    return r;
+        }
+        return null;
+    }
+
+    /**
+     * For a list like "(n #00AB..#)", returns the value as an integer.
+     */
+    BigInteger findInteger(String name) throws IOException {
+        SExpression e = find(name);
+        if (e==null || e.getList().size()<2 || !e.getList().get(1).isAtom())
+            throw new IOException("No '"+name+"' in "+this);
+        return e.getList().get(1).getInteger();
+    }
+
+    /**
+     * Parses the canonical encoding.
+     */
+    static SExpression parse(byte[] data) throws IOException {
+        int[] pos = new int[1];
+        SExpression r = parse(data,pos);
+        return r;
+    }
+
+    /**
+     * Parses one S-expression at the given position in the canonical encoding,
+     * and updates the position to the end of it.
+     */
+    static SExpression parse(byte[] data, int[] pos) throws IOException {
+        if (pos[0]>=data.length)
+            throw new IOException("Unexpected end of S-expression");
+
+        if (data[pos[0]]=='(') {
+            pos[0]++;
+            List<SExpression> items = new ArrayList<SExpression>();
+            while (true) {
+                if (pos[0]>=data.length)
+                    throw new IOException("Unterminated S-expression");
+                if (data[pos[0]]==')') {
+                    pos[0]++;
+                    return new SExpression(items);
+                }
+                items.add(parse(data,pos));
+            }
+        }
+
+        // atom: LENGTH:BYTES
+        int len = 0;
+        while (pos[0]<data.length && data[pos[0]]>='0' && data[pos[0]]<='9')
+            len = len*10 + (data[pos[0]++]-'0');
+        if (pos[0]>=data.length || data[pos[0]]!=':')
+            throw new IOException("Malformed S-expression at "+pos[0]);
+        pos[0]++;
+        if (pos[0]+len>data.length)
+            throw new IOException("Truncated S-expression");
+        byte[] atom = new byte[len];
+        System.arraycopy(data,pos[0],atom,0,len);
+        pos[0]+=len;
+        return new SExpression(atom);
+    }
+
+    /**
+     * Parses the advanced (human readable) encoding, such as {@code (rsa (n #00AB..#) (e "\x01\x00\x01"))},
+     * which GnuPG uses in the extended key file format.
+     */
+    static SExpression parseAdvanced(String text) throws IOException {
+        int[] pos = new int[1];
+        SExpression r = parseAdvanced(text,pos);
+        if (r==null)
+            throw new IOException("Unexpected ')' in S-expression");
+        return r;
+    }
+
+    /**
+     * @return
+     *      null if the list ends at the given position.
+     */
+    private static SExpression parseAdvanced(String text, int[] pos) throws IOException {
+        int i = pos[0];
+        while (i<text.length() && Character.isWhitespace(text.charAt(i)))
+            i++;
+        if (i>=text.length())
+            throw new IOException("Unexpected end of S-expression");
+
+        char ch = text.charAt(i);
+        switch (ch) {
+        case '(':
+            pos[0] = i+1;
+            List<SExpression> items = new ArrayList<SExpression>();
+            SExpression e;
+            while ((e=parseAdvanced(text,pos))!=null)
+                items.add(e);
+            return new SExpression(items);
+        case ')':
+            pos[0] = i+1;
+            return null;
+        case '#': {
+            int end = text.indexOf('#',i+1);
+            if (end<0)  throw new IOException("Unterminated hex string in S-expression");
+            pos[0] = end+1;
+            return new SExpression(Hex.decode(text.substring(i+1,end).replaceAll("\\s","")));
+        }
+        case '|': {
+            int end = text.indexOf('|',i+1);
+            if (end<0)  throw new IOException("Unterminated base64 string in S-expression");
+            pos[0] = end+1;
+            return new SExpression(Base64.decode(text.substring(i+1,end).replaceAll("\\s","")));
+        }
+        case '"':
+            return new SExpression(quoted(text,i+1,pos));
+        }
+
+        int start = i;
+        if (Character.isDigit(ch)) {
+            // verbatim "LENGTH:BYTES"
+            while (i<text.length() && Character.isDigit(text.charAt(i)))
+                i++;
+            if (i>=text.length() || text.charAt(i)!=':')
+                throw new IOException("Malformed S-expression at "+start);
+            int len = Integer.parseInt(text.substring(start,i));
+            if (i+1+len>text.length())
+                throw new IOException("Truncated S-expression");
+            pos[0] = i+1+len;
+            return new SExpression(text.substring(i+1,i+1+len).getBytes("ISO-8859-1"));
+        }
+
+        while (i<text.length() && isTokenChar(text.charAt(i)))
+            i++;
+        if (i==start)
+            throw new IOException("Unexpected '"+ch+"' in S-expression");
+        pos[0] = i;
+        return new SExpression(text.substring(start,i).getBytes("UTF-8"));
+    }
+
+    /**
+     * Decodes the C-like escapes in a quoted string that starts at the given position.
+     */
+    private static byte[] quoted(String text, int i, int[] pos) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        while (true) {
+            if (i>=text.length())
+                throw new IOException("Unterminated string in S-expression");
+            char ch = text.charAt(i++);
+            if (ch=='"')
+                break;
+            if (ch!='\\') {
+                byte[] b = String.valueOf(ch).getBytes("UTF-8");
+                buf.write(b,0,b.length);
+                continue;
+            }
+            if (i>=text.length())
+                throw new IOException("Unterminated string in S-expression");
+            ch = text.charAt(i++);
+            switch (ch) {
+            case 'b':   buf.write('\b'); break;
+            case 't':   buf.write('\t'); break;
+            case 'v':   buf.write(0x0B); break;
+            case 'n':   buf.write('\n'); break;
+            case 'f':   buf.write('\f'); break;
+            case 'r':   buf.write('\r'); break;
+            case 'x':
+                if (i+2>text.length())
+                    throw new IOException("Truncated escape in S-expression");
+                buf.write(Integer.parseInt(text.substring(i,i+2),16));
+                i+=2;
+                break;
+            case '\n': // line continuation
+                break;
+            default:
+                if (ch>='0' && ch<='7') {
+                    if (i+2>text.length())
+                        throw new IOException("Truncated escape in S-expression");
+                    buf.write(Integer.parseInt(text.substring(i-1,i+2),8));
+                    i+=2;
+                } else {
+                    buf.write(ch);  // '"', '\'', '\\'
+                }
+            }
+        }
+        pos[0] = i;
+        return buf.toByteArray();
+    }
+
+    private static boolean isTokenChar(char ch) {
+        return Character.isLetterOrDigit(ch) || "-./_:*+=".indexOf(ch)>=0;
+    }
+
+    @Override
+    public String toString() {
+        if (atom!=null) {
+            for (byte b : atom)
+                if (b<0x20 || b>=0x7F)
+                    return "#"+new BigInteger(1,atom).toString(16)+"#";
+            return getString();
+        }
+        StringBuilder b = new StringBuilder("(");
+        for (SExpression e : list) {
+            if (b.length()>1)   b.append(' ');
+            b.append(e);
+        }
+        return b.append(')').toString();
+    }
+}
@@ -0,0 +1,101 @@
+package org.kohsuke.maven.pgp.util;
+
+import com.sun.jna.Native;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Random;
+
+import static org.kohsuke.maven.pgp.util.UnixDomainSocket.*;
+
+/**
+ * Server side of a Unix domain socket.
+ *
+ * <p>
+ * The socket file is only accessible to the current user, as anyone who can connect to it
+ * gets to use whatever the server offers.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see UnixDomainSocket
+ */
+public class UnixDomainServerSocket {
+    private final int fd;
+    private final String path;
+    private volatile boolean closed;
+
+    private static final Random RANDOM = new SecureRandom();
+
+    private UnixDomainServerSocket(int fd, String path) {
+        this.fd = fd;
+        this.path = path;
+    }
+
+    /**
+     * Listens on the socket at the given path, replacing a stale socket file left by an earlier server.
+     *
+     * <p>
+     * The socket is bound in a private directory next to the path, and only moved to the path once its permission is
+     * restricted, so that nobody else can connect to it in between, regardless of umask.
+     */
+    public static UnixDomainServerSocket listen(String path) throws IOException {
+        File dir = new File(new File(path).getAbsoluteFile().getParentFile(),
+                ".pgp-"+Long.toString(Math.abs(RANDOM.nextLong()),36));
+        String tmp = new File(dir,"s").getPath();
+
+        if (LIBC.mkdir(dir.getPath(),0700)!=0)
+            throw new IOException("Failed to create "+dir+": errno="+Native.getLastError());
+        try {
+            if (LIBC.chmod(dir.getPath(),0700)!=0)
+                throw new IOException("Failed to protect "+dir+": errno="+Native.getLastError());
+
+            int fd = LIBC.socket(AF_UNIX,SOCK_STREAM,0);
+            if (fd<0)
+                throw new IOException("Failed to create a socket: errno="+Native.getLastError());
+
+            if (LIBC.bind(fd,address(tmp),SOCKADDR_LEN)!=0 || LIBC.chmod(tmp,0600)!=0
+             || LIBC.listen(fd,64)!=0 || LIBC.rename(tmp,path)!=0) {
+                int errno = Native.getLastError();
+                LIBC.close(fd);
+                LIBC.unlink(tmp);
+                throw new IOException("Failed to listen on "+path+": errno="+errno);
+            }
+            return new UnixDomainServerSocket(fd,path);
+        } finally {
+            LIBC.rmdir(dir.getPath());
+        }
+    }
+
+    /**
+     * Waits for the next client to connect.
+     */
+    public UnixDomainSocket accept() throws IOException {
+        while (true) {
+            int s = LIBC.accept(fd,null,null);
+            if (s>=0)
+                return new UnixDomainSocket(s,path);
+            if (closed)
+                throw new IOException("Socket "+path+" is closed");
+            if (Native.getLastError()!=EINTR)
+                throw new IOException("Failed to accept a connection on "+path+": errno="+Native.getLastError());
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops listening, and removes the socket file.
+     */
+    public synchronized void close() {
+        if (closed)     return;
+        closed = true;
+        LIBC.close(fd);
+        LIBC.unlink(path);
+    }
+}
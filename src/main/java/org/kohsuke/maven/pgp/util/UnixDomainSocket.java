@@ -0,0 +1,166 @@
+package org.kohsuke.maven.pgp.util;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Client side of a Unix domain socket, which the JDK doesn't support.
+ *
+ * <p>
+ * The socket is driven by libc through JNA, so this doesn't depend on JDK internals.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class UnixDomainSocket {
+    private final int fd;
+    private final String path;
+    private volatile boolean closed;
+
+    private final InputStream in = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b,0,1)<0 ? -1 : b[0]&0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len==0)     return 0;
+            byte[] buf = off==0 ? b : new byte[len];
+            int r;
+            do {
+                r = LIBC.read(fd,buf,new NativeLong(len)).intValue();
+            } while (r<0 && Native.getLastError()==EINTR);
+            if (r<0)
+                throw new IOException("Failed to read from "+path+": errno="+Native.getLastError());
+            if (r==0)
+                return -1;
+            if (buf!=b)
+                System.arraycopy(buf,0,b,off,r);
+            return r;
+        }
+
+        @Override
+        public void close() throws IOException {
+            UnixDomainSocket.this.close();
+        }
+    };
+
+    private final OutputStream out = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte)b},0,1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            byte[] buf = b;
+            if (off!=0) {
+                buf = new byte[len];
+                System.arraycopy(b,off,buf,0,len);
+            }
+            while (len>0) {
+                int r = LIBC.write(fd,buf,new NativeLong(len)).intValue();
+                if (r<0) {
+                    if (Native.getLastError()==EINTR)   continue;
+                    throw new IOException("Failed to write to "+path+": errno="+Native.getLastError());
+                }
+                len -= r;
+                if (len>0) {
+                    byte[] rest = new byte[len];
+                    System.arraycopy(buf,r,rest,0,len);
+                    buf = rest;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            UnixDomainSocket.this.close();
+        }
+    };
+
+    UnixDomainSocket(int fd, String path) {
+        this.fd = fd;
+        this.path = path;
+    }
+
+    /**
+     * Connects to the socket at the given path.
+     */
+    public static UnixDomainSocket connect(String path) throws IOException {
+        int fd = LIBC.socket(AF_UNIX,SOCK_STREAM,0);
+        if (fd<0)
+            throw new IOException("Failed to create a socket: errno="+Native.getLastError());
+
+        if (LIBC.connect(fd,address(path),SOCKADDR_LEN)!=0) {
+            int errno = Native.getLastError();
+            LIBC.close(fd);
+            throw new IOException("Failed to connect to "+path+": errno="+errno);
+        }
+        return new UnixDomainSocket(fd,path);
+    }
+
+    static sockaddr_un address(String path) throws IOException {
+        sockaddr_un adr = new sockaddr_un();
+        adr.sun_family = AF_UNIX;
+        byte[] bytes = path.getBytes();
+        if (bytes.length>=adr.sun_path.length)
+            throw new IOException("Socket path is too long: "+path);
+        System.arraycopy(bytes,0,adr.sun_path,0,bytes.length);
+        return adr;
+    }
+
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized void close() {
+        if (closed)     return;
+        closed = true;
+        LIBC.close(fd);
+    }
+
+    interface LIBC extends Library {
+        int socket(int namespace, int style, int protocol);
+        int connect(int socket, sockaddr_un adr, int len);
+        NativeLong read(int fd, byte[] buf, NativeLong count);
+        NativeLong write(int fd, byte[] buf, NativeLong count);
+        int close(int fd);
+        int bind(int socket, sockaddr_un adr, int len);
+        int listen(int socket, int backlog);
+        int accept(int socket, Pointer adr, Pointer len);
+        int unlink(String path);
+        int chmod(String path, int mode);
+        int mkdir(String path, int mode);
+        int rmdir(String path);
+        int rename(String from, String to);
+    }
+
+    public static class sockaddr_un extends Structure {
+        public short sun_family;
+        public byte[] sun_path = new byte[108];
+    }
+
+    static final LIBC LIBC = (LIBC)Native.loadLibrary("c",LIBC.class);
+
+    static final int AF_UNIX = 1;
+    static final int SOCK_STREAM = 1;
+    static final int SOCKADDR_LEN = 2/*sizeof(short)*/+108;
+    static final int EINTR = 4;
+}
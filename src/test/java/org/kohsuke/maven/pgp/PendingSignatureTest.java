@@ -0,0 +1,67 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPUtil;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Date;
+
+/**
+ * Signatures assembled from the digest have to verify just like those BouncyCastle generates.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class PendingSignatureTest extends TestCase {
+    private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes();
+
+    public void testRSA() throws Exception {
+        verify(TestKeys.get("RSA1024"), PGPUtil.SHA1);
+        verify(TestKeys.get("RSA1024"), PGPUtil.SHA256);
+        verify(TestKeys.get("RSA1024"), PGPUtil.SHA512);
+    }
+
+    public void testDSA() throws Exception {
+        verify(TestKeys.get("DSA1024"), PGPUtil.SHA1);
+        verify(TestKeys.get("DSA1024"), PGPUtil.SHA256);
+    }
+
+    public void testMultipleKeys() throws Exception {
+        PGPKeyPair a = TestKeys.get("RSA1024"), b = TestKeys.get("DSA1024");
+        Signer s = new Signer(a.getPrivateKey(),a.getPublicKey()).and(new Signer(b.getPrivateKey(),b.getPublicKey()));
+        try {
+            s.digest(new File("pom.xml"));
+            fail();
+        } catch (IllegalStateException e) {
+            // the digest is only good for one of the keys
+        }
+    }
+
+    private void verify(PGPKeyPair kp, int hashAlgorithm) throws Exception {
+        Date now = new Date(1500000000123L);
+        MessageDigest md = PendingSignature.newDigest(hashAlgorithm);
+        md.update(DATA);
+        PendingSignature p = PendingSignature.create(kp.getKeyID(), kp.getPublicKey().getAlgorithm(), hashAlgorithm, md, now);
+        assertEquals(1500000000000L, p.getCreationTime().getTime());
+
+        BigInteger[] values = new PrivateKeyDigestSigner(kp.getPrivateKey()).sign(p);
+        PGPSignature sig = p.complete(values);
+
+        assertEquals(PGPSignature.BINARY_DOCUMENT, sig.getSignatureType());
+        assertEquals(kp.getKeyID(), sig.getKeyID());
+        assertEquals(hashAlgorithm, sig.getHashAlgorithm());
+        assertEquals(p.getCreationTime(), sig.getCreationTime());
+
+        sig.initVerify(kp.getPublicKey(), Signer.PROVIDER);
+        sig.update(DATA);
+        assertTrue(sig.verify());
+
+        // and a different document doesn't verify
+        sig.initVerify(kp.getPublicKey(), Signer.PROVIDER);
+        sig.update(DATA,1,DATA.length-1);
+        assertFalse(sig.verify());
+    }
+}
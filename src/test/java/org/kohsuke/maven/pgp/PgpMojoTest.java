@@ -0,0 +1,38 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class PgpMojoTest extends TestCase {
+    /**
+     * The entries of the keys parameter don't borrow the pass phrase from PGP_PASSPHRASE,
+     * which is meant for the key of the secretkey parameter.
+     */
+    public void testNoEnvironmentFallbackForKeys() throws Exception {
+        PgpMojo mojo = new PgpMojo();
+        SigningKey k = new SigningKey();
+        k.secretkey = "keyfile:key.asc";
+        try {
+            mojo.loadPassPhrase(k,null);
+            fail();
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("<keys>"));
+        }
+    }
+
+    public void testSigningKey() throws Exception {
+        PgpMojo mojo = new PgpMojo();
+        mojo.secretkey = "keyfile:key.asc";
+        mojo.passphrase = "file:pass.txt";
+        mojo.signerSpec = "gpg-agent:";
+
+        SigningKey k = mojo.getSigningKey();
+        assertEquals("keyfile:key.asc", k.secretkey);
+        assertEquals("file:pass.txt", k.passphrase);
+        assertEquals("gpg-agent:", k.signer);
+        assertSame(k, mojo.getSigningKey());
+    }
+}
@@ -0,0 +1,98 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import java.security.interfaces.DSAPrivateKey;
+import java.security.spec.DSAPrivateKeySpec;
+import java.util.Date;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class PrivateKeyDigestSignerTest extends TestCase {
+    public void testDecodeDerSequence() throws Exception {
+        assertDer("3006020105020107", 5, 7);
+        // leading zeros that keep the integers positive
+        assertDer("30080202008002020100", 0x80, 0x100);
+        // long form length
+        assertDer("3081060201050201FF", 5, -1);
+    }
+
+    public void testDecodeMalformedDer() throws Exception {
+        for (String der : new String[]{"3106020105020107", "3006030105020107", "300602010502010700", "3007020105020107", "30060201050201"}) {
+            try {
+                PrivateKeyDigestSigner.decodeDerSequence(Hex.decode(der));
+                fail(der);
+            } catch (SignatureException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void assertDer(String der, long r, long s) throws SignatureException {
+        BigInteger[] v = PrivateKeyDigestSigner.decodeDerSequence(Hex.decode(der));
+        assertEquals(2, v.length);
+        assertEquals(BigInteger.valueOf(r), v[0]);
+        assertEquals(BigInteger.valueOf(s), v[1]);
+    }
+
+    /**
+     * The per-signature secret "k" of the DSA test vectors in RFC 6979 section A.2.1,
+     * which are also what BouncyCastle's HMacDSAKCalculator produces for them.
+     */
+    private static final Object[][] RFC6979_A21 = {
+        {"sample", PGPUtil.SHA1,   "SHA-1",   "7BDB6B0FF756E1BB5D53583EF979082F9AD5BD5B"},
+        {"sample", PGPUtil.SHA224, "SHA-224", "562097C06782D60C3037BA7BE104774344687649"},
+        {"sample", PGPUtil.SHA256, "SHA-256", "519BA0546D0C39202A7D34D7DFA5E760B318BCFB"},
+        {"sample", PGPUtil.SHA384, "SHA-384", "95897CD7BBB944AA932DBC579C1C09EB6FCFC595"},
+        {"sample", PGPUtil.SHA512, "SHA-512", "09ECE7CA27D0F5A4DD4E556C9DF1D21D28104F8B"},
+        {"test",   PGPUtil.SHA1,   "SHA-1",   "5C842DF4F9E344EE09F056838B42C7A17F4A6433"},
+        {"test",   PGPUtil.SHA224, "SHA-224", "4598B8EFC1A53BC8AECD58D1ABBB0C0C71E67297"},
+        {"test",   PGPUtil.SHA256, "SHA-256", "5A67592E8128E03A417B0484410FB72C0B630E1A"},
+        {"test",   PGPUtil.SHA384, "SHA-384", "220156B761F6CA5E6C9F1B9CF9C24BE25F98CD89"},
+        {"test",   PGPUtil.SHA512, "SHA-512", "65D2C2EEB175E370F28C75BFCDC028D22C7DBE9C"},
+    };
+
+    /**
+     * Checks the signatures against the "k" of RFC 6979.
+     *
+     * <p>
+     * "k" only depends on q, the private key x, and the digest, so the key uses q and x of the RFC,
+     * but p and g that were generated for q, which are shorter to write down than those of the RFC.
+     */
+    public void testSignDeterministically() throws Exception {
+        BigInteger q = new BigInteger("996F967F6C8E388D9E28D01E205FBA957A5698B1",16);
+        BigInteger x = new BigInteger("411602CB19A6CCC34494D79D98EF1E7ED5AF25F7",16);
+        BigInteger p = new BigInteger(
+                "A3D2ABCA91911ED5BC99B4A84BBDAAA26817CD723A316318735C21B195672C52C6BD932DD4B77F058E330763E3D0364C"+
+                "065889FA229AFE7D46DF79D90CD19FB6F57CCC681751A2E6212C2B830C00EA298510918AF87CF8BEEAEF4D8EEB0037C2"+
+                "C392E5FF171057C720ECB3AC18C2E0BAF497F8A9D9411168E30442E5D39A36F5",16);
+        BigInteger g = new BigInteger(
+                "4BF690AD580D2D2BBB7C5E41E3A1071D4D4FCB7345364BCE0C54A29B380E34B93FC6179198DA0900CD4FCB9CB81046D1"+
+                "7CC0AEF6066BD61ADA856D319BDB1F6CBC9D9FAFC72485F05C72171CCBFCD2982D45B0B165BFAC577090ED16C9F214A3"+
+                "8C27C2ED4B4246D3456C9535B01104D3D69098FAAB222ECA5DA5366438B82027",16);
+        DSAPrivateKey key = (DSAPrivateKey)KeyFactory.getInstance("DSA").generatePrivate(new DSAPrivateKeySpec(x,p,q,g));
+
+        for (Object[] v : RFC6979_A21) {
+            byte[] h = MessageDigest.getInstance((String)v[2]).digest(((String)v[0]).getBytes("US-ASCII"));
+            BigInteger k = new BigInteger((String)v[3],16);
+            BigInteger z = new BigInteger(1,h);
+            if (h.length*8>q.bitLength())
+                z = z.shiftRight(h.length*8-q.bitLength());
+            BigInteger r = g.modPow(k,p).mod(q);
+            BigInteger s = k.modInverse(q).multiply(z.add(x.multiply(r))).mod(q);
+
+            BigInteger[] sig = PrivateKeyDigestSigner.signDeterministically(key,
+                    new PendingSignature(1, PGPPublicKey.DSA, (Integer)v[1], new Date(), h));
+            assertEquals(v[0]+" with "+v[2], r, sig[0]);
+            assertEquals(v[0]+" with "+v[2], s, sig[1]);
+        }
+    }
+}
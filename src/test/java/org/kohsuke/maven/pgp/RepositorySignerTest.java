@@ -0,0 +1,103 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPUtil;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class RepositorySignerTest extends TestCase {
+    private File dir;
+    private Signer signer, other;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("repo","");
+        dir.delete();
+        dir.mkdirs();
+
+        PGPKeyPair a = TestKeys.get("RSA1024"), b = TestKeys.get("DSA1024");
+        signer = new Signer(a.getPrivateKey(),a.getPublicKey());
+        other = new Signer(b.getPrivateKey(),b.getPublicKey());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testSign() throws Exception {
+        File f = write("org/example/foo/1.0/foo-1.0.jar");
+        File g = write("org/example/foo/1.0/foo-1.0.pom");
+
+        assertTrue(run("both"));
+        assertTrue(signer.verify(f,asc(f)));
+        assertTrue(signer.verify(f,sig(f)));
+        assertTrue(signer.verify(g,asc(g)));
+        assertEquals(6, f.getParentFile().list().length);  // no temporary files left behind
+    }
+
+    /**
+     * A newer signature by another key, or with another hash algorithm, isn't mistaken for ours.
+     */
+    public void testForeignSignature() throws Exception {
+        File f = write("foo.jar");
+        other.sign(f,asc(f));
+        assertTrue(run("armored"));
+        assertTrue(signer.verify(f,asc(f)));
+
+        signer.withHashAlgorithm(PGPUtil.SHA512).sign(f,asc(f));
+        assertTrue(run("armored"));
+        assertTrue(signer.verify(f,asc(f)));
+    }
+
+    public void testKeepUpToDate() throws Exception {
+        File f = write("foo.jar");
+        assertTrue(run("armored"));
+        long timestamp = asc(f).lastModified()-10000;
+        asc(f).setLastModified(timestamp);
+        f.setLastModified(timestamp-10000);
+
+        assertTrue(run("armored"));
+        assertEquals(timestamp, asc(f).lastModified());
+    }
+
+    /**
+     * The walk terminates, rather than going around the loop until the path gets too long.
+     */
+    public void testSymlinkLoop() throws Exception {
+        File f = write("a/foo.jar");
+        File loop = new File(dir,"a/loop");
+        Files.createSymbolicLink(loop.toPath(), dir.toPath());
+        try {
+            assertTrue(run("armored"));
+            assertTrue(signer.verify(f,asc(f)));
+        } finally {
+            loop.delete();  // or tearDown would follow it
+        }
+    }
+
+    private boolean run(String format) throws Exception {
+        return new RepositorySigner(signer,format,false,null,null,2).run(dir);
+    }
+
+    private File write(String path) throws Exception {
+        File f = new File(dir,path);
+        f.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(f,"contents of "+path);
+        return f;
+    }
+
+    private static File asc(File f) {
+        return new File(f.getPath()+".asc");
+    }
+
+    private static File sig(File f) {
+        return new File(f.getPath()+".sig");
+    }
+}
@@ -0,0 +1,98 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPUtil;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * {@link ResumableDigest} has to agree with the JDK, and pick up where it left off from its state.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class ResumableDigestTest extends TestCase {
+    private static final int[] ALGORITHMS = {PGPUtil.SHA1, PGPUtil.SHA224, PGPUtil.SHA256, PGPUtil.SHA384, PGPUtil.SHA512};
+    private static final int[] LENGTHS = {0, 1, 55, 56, 63, 64, 65, 111, 112, 127, 128, 129, 1000};
+
+    private final byte[] data = new byte[1000];
+
+    @Override
+    protected void setUp() throws Exception {
+        new Random(0).nextBytes(data);
+    }
+
+    public void testDigest() throws Exception {
+        for (int h : ALGORITHMS) {
+            for (int len : LENGTHS) {
+                ResumableDigest md = ResumableDigest.newInstance(h);
+                md.update(data,0,len);
+                assertTrue(h+"/"+len, Arrays.equals(expected(h,len), md.digest()));
+
+                // byte at a time, and the digest is reset afterward
+                for (int i=0; i<len; i++)
+                    md.update(data[i]);
+                assertTrue(h+"/"+len, Arrays.equals(expected(h,len), md.digest()));
+            }
+        }
+    }
+
+    public void testResume() throws Exception {
+        for (int h : ALGORITHMS) {
+            for (int len : LENGTHS) {
+                ResumableDigest md = ResumableDigest.newInstance(h);
+                md.update(data,0,len);
+                byte[] state = md.getState();
+
+                ResumableDigest r = ResumableDigest.resume(h,state);
+                assertEquals(h, r.getHashAlgorithm());
+                assertTrue(Arrays.equals(state, r.getState()));
+                r.update(data,len,data.length-len);
+                assertTrue(h+"/"+len, Arrays.equals(expected(h,data.length), r.digest()));
+            }
+        }
+    }
+
+    public void testClone() throws Exception {
+        ResumableDigest md = ResumableDigest.newInstance(PGPUtil.SHA256);
+        md.update(data,0,100);
+        MessageDigest c = (MessageDigest)md.clone();
+        md.update(data,100,900);
+        c.update(data,100,900);
+        assertTrue(Arrays.equals(md.digest(), c.digest()));
+    }
+
+    public void testBadState() throws Exception {
+        byte[] state = ResumableDigest.newInstance(PGPUtil.SHA256).getState();
+        try {
+            ResumableDigest.resume(PGPUtil.SHA512,state);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The daemon rebuilds the signature from the state of the document digest, and has to get the same one as the client.
+     */
+    public void testPendingSignature() throws Exception {
+        Date now = new Date();
+        ResumableDigest md = ResumableDigest.newInstance(PGPUtil.SHA256);
+        md.update(data);
+        PendingSignature p = PendingSignature.create(1L, PublicKeyAlgorithmTags.RSA_GENERAL, PGPUtil.SHA256, md, now);
+
+        PendingSignature q = PendingSignature.create(1L, PublicKeyAlgorithmTags.RSA_GENERAL, PGPUtil.SHA256,
+                ResumableDigest.resume(PGPUtil.SHA256,p.getDocumentState()), p.getCreationTime());
+        assertTrue(Arrays.equals(p.getDigest(), q.getDigest()));
+    }
+
+    private byte[] expected(int h, int len) throws Exception {
+        MessageDigest md = PendingSignature.newDigest(h);
+        md.update(data,0,len);
+        return md.digest();
+    }
+}
@@ -0,0 +1,92 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.bcpg.ArmoredInputStream;
+import org.bouncycastle.openpgp.PGPKeyPair;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link SigningContext} armors the signatures by itself, which has to agree with BouncyCastle.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SigningContextTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("context","");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * The armored signature decodes to the binary one, with a valid checksum.
+     * DSA signatures vary in length, so the repetitions cover every padding of the last group.
+     */
+    public void testArmorRoundTrip() throws Exception {
+        PGPKeyPair rsa = TestKeys.get("RSA1024"), dsa = TestKeys.get("DSA1024");
+        Signer[] signers = {
+            new Signer(rsa.getPrivateKey(),rsa.getPublicKey()),
+            new Signer(dsa.getPrivateKey(),dsa.getPublicKey()),
+            new Signer(rsa.getPrivateKey(),rsa.getPublicKey()).and(new Signer(dsa.getPrivateKey(),dsa.getPublicKey()))
+        };
+        File file = new File(dir,"foo.jar"), asc = new File(dir,"foo.jar.asc"), sig = new File(dir,"foo.jar.sig");
+        for (Signer signer : signers) {
+            SigningContext context = signer.newContext();
+            for (int i=0; i<20; i++) {
+                FileUtils.writeStringToFile(file,"contents #"+i);
+                context.sign(file,asc,sig);
+
+                InputStream in = new ArmoredInputStream(new FileInputStream(asc));
+                try {
+                    // ArmoredInputStream fails at the end if the checksum doesn't match
+                    assertTrue(Arrays.equals(FileUtils.readFileToByteArray(sig), IOUtils.toByteArray(in)));
+                } finally {
+                    in.close();
+                }
+                assertTrue(signer.verify(file,asc));
+
+                BufferedReader r = new BufferedReader(new FileReader(asc));
+                try {
+                    String line;
+                    while ((line=r.readLine())!=null)
+                        assertTrue(line, line.length()<=64 || line.startsWith("-----"));
+                } finally {
+                    r.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Small files are read, and big ones are mapped.
+     */
+    public void testCopy() throws Exception {
+        for (long size : new long[]{0, 100, Signer.MAPPED_THRESHOLD-1, Signer.MAPPED_THRESHOLD+1}) {
+            byte[] data = new byte[(int)size];
+            new Random(size).nextBytes(data);
+            File f = new File(dir,"data");
+            FileUtils.writeByteArrayToFile(f,data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Signer.copy(f,out,new byte[1000]);
+            assertTrue(String.valueOf(size), Arrays.equals(data, out.toByteArray()));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.bouncycastle.openpgp.PGPKeyPair;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class SigningOutputStreamTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("presigned","");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+    }
+
+    public void testPresigned() throws Exception {
+        PGPKeyPair kp = TestKeys.get("RSA1024");
+        Signer signer = new Signer(kp.getPrivateKey(),kp.getPublicKey());
+        File file = new File(dir,"foo.jar");
+        File signature = new File(dir,"foo.jar.asc");
+
+        OutputStream o = new SigningOutputStream(signer,file,signature);
+        o.write("hello world".getBytes("US-ASCII"));
+        o.close();
+
+        assertTrue(SigningOutputStream.isPresigned(signer,file,signature));
+
+        // a different key doesn't match
+        PGPKeyPair other = TestKeys.get("DSA1024");
+        assertFalse(SigningOutputStream.isPresigned(new Signer(other.getPrivateKey(),other.getPublicKey()),file,signature));
+
+        // modified afterward
+        long timestamp = file.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(file,"rw");
+        raf.write('H');
+        raf.close();
+        file.setLastModified(timestamp+2000);
+        assertFalse(SigningOutputStream.isPresigned(signer,file,signature));
+    }
+}
@@ -0,0 +1,65 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class SigningSessionTest extends TestCase {
+    public void testCloseForgetsPassphrasesAndClosesResources() {
+        SigningSession session = new SigningSession();
+        final boolean[] closed = new boolean[1];
+        session.putPassphrase(1L,"secret");
+        session.closeAtEnd(new Closeable() {
+            public void close() {
+                closed[0] = true;
+            }
+        });
+        assertEquals("secret",session.getPassphrase(1L));
+        assertNull(session.getPassphrase(2L));
+
+        session.close();
+        assertNull(session.getPassphrase(1L));
+        assertTrue(closed[0]);
+    }
+
+    /**
+     * Background jobs that nobody waited for are finished, not abandoned, and reported.
+     */
+    public void testJoinAbandoned() throws Exception {
+        SigningSession session = new SigningSession();
+        final boolean[] done = new boolean[1];
+        session.submit("a", new Callable<Void>() {
+            public Void call() throws Exception {
+                Thread.sleep(100);
+                done[0] = true;
+                return null;
+            }
+        });
+        final IOException failure = new IOException("disk full");
+        session.submit("b", new Callable<Void>() {
+            public Void call() throws Exception {
+                throw failure;
+            }
+        });
+        session.submit("c", new Callable<Void>() {
+            public Void call() throws Exception {
+                return null;
+            }
+        });
+        session.take("c").get();   // as "await" would
+
+        Map<Object,Throwable> left = session.joinAbandoned();
+        assertTrue(done[0]);
+        assertEquals(2, left.size());
+        assertNull(left.get("a"));
+        assertSame(failure, left.get("b"));
+        assertTrue(session.joinAbandoned().isEmpty());
+        session.close();
+    }
+}
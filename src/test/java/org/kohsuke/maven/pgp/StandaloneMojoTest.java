@@ -0,0 +1,112 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Runs the gpg-agent loaders outside Maven, against an agent whose pinentry answers from a file.
+ * Skipped if GnuPG isn't installed.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class StandaloneMojoTest extends TestCase {
+    private File home;
+    private String socket;
+
+    @Override
+    protected void setUp() throws Exception {
+        home = File.createTempFile("gnupg","");
+        home.delete();
+        home.mkdirs();
+
+        File pinentry = new File(home,"pinentry");
+        FileUtils.writeStringToFile(pinentry,
+            "#!/bin/sh\n" +
+            "echo 'OK Pleased to meet you'\n" +
+            "while read cmd rest; do\n" +
+            "  case \"$cmd\" in\n" +
+            "  GETPIN)\n" +
+            "    n=$(( $(cat "+home+"/count 2>/dev/null || echo 0) + 1 ))\n" +
+            "    echo $n > "+home+"/count\n" +
+            "    pin=$(sed -n \"${n}p\" "+home+"/pins)\n" +
+            "    [ -z \"$pin\" ] && pin=$(tail -n 1 "+home+"/pins)\n" +
+            "    echo \"D $pin\"; echo OK;;\n" +
+            "  BYE) echo OK; exit 0;;\n" +
+            "  *) echo OK;;\n" +
+            "  esac\n" +
+            "done\n");
+        pinentry.setExecutable(true);
+        FileUtils.writeStringToFile(new File(home,"gpg-agent.conf"),"pinentry-program "+pinentry+"\n");
+
+        try {
+            exec("gpg-connect-agent","--homedir",home.getPath(),"/bye");
+            socket = exec("gpgconf","--homedir",home.getPath(),"--list-dirs","agent-socket").trim();
+        } catch (IOException e) {
+            System.err.println("Skipping "+getName()+" as GnuPG isn't available: "+e.getMessage());
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (socket!=null)
+            exec("gpgconf","--homedir",home.getPath(),"--kill","gpg-agent");
+        FileUtils.deleteDirectory(home);
+    }
+
+    /**
+     * The pass phrase loader asks again when the agent gives a wrong one.
+     */
+    public void testPassphraseLoader() throws Exception {
+        if (socket==null)   return;
+        FileUtils.writeStringToFile(new File(home,"pins"),"wrong\ntest\n");
+
+        PGPSecretKeyRing ring = TestKeys.generateKeyRing("Test <test@example.org>", TestKeys.get("RSA1024"));
+        StandaloneMojo mojo = new StandaloneMojo();
+        mojo.passphrase = "gpg-agent:"+socket;
+        assertEquals("test", mojo.loadPassPhrase(ring.getSecretKey()));
+        assertEquals("2", FileUtils.readFileToString(new File(home,"count")).trim());
+
+        // remembered in the session
+        assertEquals("test", mojo.loadPassPhrase(ring.getSecretKey()));
+        assertEquals("2", FileUtils.readFileToString(new File(home,"count")).trim());
+    }
+
+    /**
+     * The agent signs with the key it holds, which it unlocks through its pinentry.
+     */
+    public void testSignerLoader() throws Exception {
+        if (socket==null)   return;
+        FileUtils.writeStringToFile(new File(home,"pins"),"test\n");
+        File fixture = new File(getClass().getResource("loaders/alice").toURI());
+        FileUtils.copyDirectory(new File(fixture,"private-keys-v1.d"), new File(home,"private-keys-v1.d"));
+
+        StandaloneMojo mojo = new StandaloneMojo();
+        mojo.secretkey = "keybox:home="+fixture+"&cache="+new File(home,"cache")+"&id=alice@example.org";
+        mojo.signerSpec = "gpg-agent:"+socket;
+        Signer signer = mojo.createSigner();
+
+        File file = new File(home,"foo.jar"), signature = new File(home,"foo.jar.asc");
+        FileUtils.writeStringToFile(file,"contents");
+        signer.sign(file,signature);
+        assertTrue(signer.verify(file,signature));
+    }
+
+    private static String exec(String... cmd) throws Exception {
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        InputStream in = p.getInputStream();
+        try {
+            String out = IOUtils.toString(in);
+            if (p.waitFor()!=0)
+                throw new IOException(cmd[0]+" failed: "+out);
+            return out;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.kohsuke.maven.pgp;
+
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRingGenerator;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates throw-away keys for tests.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class TestKeys {
+    private static final Map<String,PGPKeyPair> KEYS = new HashMap<String,PGPKeyPair>();
+
+    /**
+     * Returns a key pair of the given type, which is shared by all the tests.
+     *
+     * @param type
+     *      "RSA" or "DSA" followed by the number of bits, such as "RSA1024".
+     */
+    public static synchronized PGPKeyPair get(String type) throws Exception {
+        PGPKeyPair kp = KEYS.get(type);
+        if (kp==null) {
+            KEYS.put(type, kp=generate(type));
+        }
+        return kp;
+    }
+
+    public static PGPKeyPair generate(String type) throws Exception {
+        int bits = Integer.parseInt(type.substring(3));
+        if (type.startsWith("RSA")) {
+            KeyPairGenerator g = KeyPairGenerator.getInstance("RSA", Signer.PROVIDER);
+            g.initialize(bits);
+            return new PGPKeyPair(PGPPublicKey.RSA_GENERAL, g.generateKeyPair(), new Date());
+        }
+        if (type.startsWith("DSA")) {
+            KeyPairGenerator g = KeyPairGenerator.getInstance("DSA");
+            g.initialize(bits);
+            return new PGPKeyPair(PGPPublicKey.DSA, g.generateKeyPair(), new Date());
+        }
+        throw new IllegalArgumentException("Unknown key type: "+type);
+    }
+
+    /**
+     * Generates a passphrase protected key ring of the given primary key and subkeys.
+     */
+    public static PGPSecretKeyRing generateKeyRing(String userId, PGPKeyPair primary, PGPKeyPair... subkeys) throws Exception {
+        PGPKeyRingGenerator g = new PGPKeyRingGenerator(PGPSignature.POSITIVE_CERTIFICATION, primary, userId,
+                SymmetricKeyAlgorithmTags.CAST5, PASSPHRASE, true, null, null, new SecureRandom(), Signer.PROVIDER);
+        for (PGPKeyPair k : subkeys)
+            g.addSubKey(k);
+        return g.generateSecretKeyRing();
+    }
+
+    public static final char[] PASSPHRASE = "test".toCharArray();
+
+    private TestKeys() {}
+}
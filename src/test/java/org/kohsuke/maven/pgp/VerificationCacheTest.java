@@ -0,0 +1,87 @@
+package org.kohsuke.maven.pgp;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPUtil;
+
+import java.io.File;
+import java.security.SignatureException;
+import java.util.Collections;
+
+/**
+ * Remembered verifications must not outlive the contents or the signature they were made against.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class VerificationCacheTest extends TestCase {
+    private File dir, file, signature;
+    private Signer signer;
+    private Verifier verifier;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("cache","");
+        dir.delete();
+        dir.mkdirs();
+        file = new File(dir,"a.jar");
+        signature = new File(dir,"a.jar.asc");
+        FileUtils.writeStringToFile(file,"original contents");
+
+        PGPKeyPair kp = TestKeys.get("RSA1024");
+        PGPSecretKeyRing ring = TestKeys.generateKeyRing("Test <test@example.org>", kp);
+        verifier = new Verifier(new PGPPublicKeyRingCollection(Collections.singleton(
+                new PGPPublicKeyRing(ring.getPublicKey().getEncoded()))));
+        signer = new Signer(kp.getPrivateKey(), kp.getPublicKey());
+        signer.sign(file,signature);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testRemembered() throws Exception {
+        assertFalse(new VerificationCache(dir).verify(verifier,file,signature));
+
+        VerificationCache cache = new VerificationCache(dir);
+        assertFalse(cache.verify(verifier,file,signature));
+        cache.save();
+        assertTrue(new VerificationCache(dir).verify(verifier,file,signature));
+    }
+
+    /**
+     * A file that was modified afterward is verified again.
+     */
+    public void testContentsChanged() throws Exception {
+        VerificationCache cache = new VerificationCache(dir);
+        assertFalse(cache.verify(verifier,file,signature));
+        cache.save();
+
+        long timestamp = file.lastModified();
+        FileUtils.writeStringToFile(file,"tampered contents");
+        file.setLastModified(timestamp+2000);
+
+        try {
+            new VerificationCache(dir).verify(verifier,file,signature);
+            fail();
+        } catch (SignatureException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A different signature of the same contents is verified on its own.
+     */
+    public void testSignatureChanged() throws Exception {
+        VerificationCache cache = new VerificationCache(dir);
+        assertFalse(cache.verify(verifier,file,signature));
+        cache.save();
+
+        signer.withHashAlgorithm(PGPUtil.SHA512).sign(file,signature);
+        assertFalse(new VerificationCache(dir).verify(verifier,file,signature));
+    }
+}
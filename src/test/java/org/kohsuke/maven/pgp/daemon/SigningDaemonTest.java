@@ -0,0 +1,154 @@
+package org.kohsuke.maven.pgp.daemon;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PrivateKeyDigestSigner;
+import org.kohsuke.maven.pgp.Signer;
+import org.kohsuke.maven.pgp.TestKeys;
+import org.kohsuke.maven.pgp.loaders.RemoteSignerLoader;
+import org.kohsuke.maven.pgp.util.UnixDomainServerSocket;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+/**
+ * Signs through a daemon in the same JVM, the same way builds do over TCP and the Unix domain socket.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SigningDaemonTest extends TestCase {
+    private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes();
+
+    private PGPKeyPair key;
+    private SigningDaemon daemon;
+    private InetSocketAddress address;
+    private File token, file;
+
+    @Override
+    protected void setUp() throws Exception {
+        key = TestKeys.get("RSA1024");
+        daemon = new SigningDaemon(key.getPublicKey(), new PrivateKeyDigestSigner(key.getPrivateKey()), 2);
+        daemon.setToken("secret".getBytes("UTF-8"));
+        address = daemon.startLocal();
+
+        token = File.createTempFile("token",".txt");
+        FileUtils.writeStringToFile(token,"secret\n");
+        file = File.createTempFile("artifact",".jar");
+        FileUtils.writeByteArrayToFile(file,DATA);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        daemon.shutdown();
+        token.delete();
+        file.delete();
+    }
+
+    public void testRemoteSigner() throws Exception {
+        RemoteSignerLoader loader = new RemoteSignerLoader();
+        String spec = "host=127.0.0.1&port="+address.getPort()+"&token="+token.getPath();
+        assertEquals(key.getKeyID(), loader.loadPublicKey(null,spec).getKeyID());
+
+        DigestSigner ds = loader.load(null,key.getPublicKey(),spec);
+        for (int h : new int[]{PGPUtil.SHA1, PGPUtil.SHA256, PGPUtil.SHA512}) {
+            PGPSignature[] sigs = new Signer(key.getPublicKey(),ds,h).sign(file);
+            assertEquals(1, sigs.length);
+            assertEquals(h, sigs[0].getHashAlgorithm());
+
+            sigs[0].initVerify(key.getPublicKey(), Signer.PROVIDER);
+            sigs[0].update(DATA);
+            assertTrue(sigs[0].verify());
+        }
+        ds.close();
+    }
+
+    public void testUnixDomainSocket() throws Exception {
+        File dir = File.createTempFile("daemon","");
+        dir.delete();
+        dir.mkdirs();
+        final UnixDomainServerSocket server = UnixDomainServerSocket.listen(new File(dir,"s.sock").getPath());
+        try {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        daemon.serve(server);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }.start();
+
+            // nothing else is left behind in the directory
+            assertEquals(1, dir.list().length);
+
+            SigningClient client = new SigningClient(server.getPath());
+            byte[] armored = client.signFiles(PGPUtil.SHA256, Arrays.asList(file)).get(0);
+            client.close();
+            assertTrue(new Signer(key.getPrivateKey(),key.getPublicKey()).verify(file,write(armored)));
+        } finally {
+            server.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private File write(byte[] signature) throws IOException {
+        File f = new File(file.getPath()+".asc");
+        f.deleteOnExit();
+        FileUtils.writeByteArrayToFile(f,signature);
+        return f;
+    }
+
+    public void testWrongToken() throws Exception {
+        SigningClient client = new SigningClient("127.0.0.1",address.getPort(),"wrong".getBytes("UTF-8"));
+        try {
+            client.getPublicKey();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Invalid token"));
+        }
+    }
+
+    /**
+     * Any user of the machine can connect to the loopback interface, so TCP isn't served without a token.
+     */
+    public void testTokenRequiredOnLoopback() throws Exception {
+        SigningDaemon d = new SigningDaemon(key.getPublicKey(), new PrivateKeyDigestSigner(key.getPrivateKey()), 1);
+        try {
+            d.startLocal();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    /**
+     * A client with another token or TLS setting doesn't reuse the connection of the first one.
+     */
+    public void testSharedClients() throws Exception {
+        byte[] secret = "secret".getBytes("UTF-8");
+        SigningClient c = SigningClient.get("127.0.0.1",address.getPort(),secret);
+        assertSame(c, SigningClient.get("127.0.0.1",address.getPort(),"secret".getBytes("UTF-8"),false));
+        assertNotSame(c, SigningClient.get("127.0.0.1",address.getPort(),"wrong".getBytes("UTF-8")));
+        assertNotSame(c, SigningClient.get("127.0.0.1",address.getPort(),null));
+        assertNotSame(c, SigningClient.get("127.0.0.1",address.getPort(),secret,true));
+    }
+
+    public void testNoToken() throws Exception {
+        SigningClient client = new SigningClient("127.0.0.1",address.getPort(),null);
+        try {
+            client.signFiles(PGPUtil.SHA256, Arrays.asList(file));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
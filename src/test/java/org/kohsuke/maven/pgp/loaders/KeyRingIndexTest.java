@@ -0,0 +1,148 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import junit.framework.TestCase;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.util.encoders.Hex;
+import org.kohsuke.maven.pgp.TestKeys;
+import org.kohsuke.maven.pgp.loaders.KeyRingIndex.Packet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class KeyRingIndexTest extends TestCase {
+    private PGPSecretKeyRing rsa, dsa;
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        rsa = TestKeys.generateKeyRing("Alice <alice@example.org>", TestKeys.get("RSA1024"), TestKeys.generate("RSA1024"));
+        dsa = TestKeys.generateKeyRing("Bob <bob@example.org>", TestKeys.get("DSA1024"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (file!=null)
+            file.delete();
+    }
+
+    public void testPacketsInOldFormat() throws Exception {
+        byte[] data = rsa.getEncoded();
+        assertTags(KeyRingIndex.packets(data), 5, 13, 2, 7, 2);
+    }
+
+    public void testPacketsInNewFormat() throws Exception {
+        byte[] old = rsa.getEncoded();
+        byte[] data = toNewFormat(old);
+        List<Packet> packets = KeyRingIndex.packets(data);
+        assertTags(packets, 5, 13, 2, 7, 2);
+
+        // same bodies as the old format
+        List<Packet> oldPackets = KeyRingIndex.packets(old);
+        for (int i=0; i<packets.size(); i++) {
+            Packet p = packets.get(i), o = oldPackets.get(i);
+            assertEquals(o.end-o.body, p.end-p.body);
+            for (int j=0; j<p.end-p.body; j++)
+                assertEquals(old[o.body+j], data[p.body+j]);
+        }
+        assertEquals(data.length, packets.get(packets.size()-1).end);
+    }
+
+    public void testTruncated() throws Exception {
+        byte[] data = rsa.getEncoded();
+        byte[] truncated = new byte[data.length-1];
+        System.arraycopy(data,0,truncated,0,truncated.length);
+        try {
+            KeyRingIndex.packets(truncated);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testFind() throws Exception {
+        KeyRingIndex idx = index(rsa.getEncoded(), toNewFormat(dsa.getEncoded()));
+
+        for (PGPSecretKeyRing ring : new PGPSecretKeyRing[]{rsa,dsa}) {
+            for (Iterator itr=ring.getSecretKeys(); itr.hasNext(); ) {
+                PGPSecretKey k = (PGPSecretKey)itr.next();
+                long id = k.getKeyID();
+                assertEquals(id, idx.find(String.format("%016X",id)).getKeyID());
+                assertEquals(id, idx.find(String.format("0x%08x",id&0xFFFFFFFFL)).getKeyID());
+                assertEquals(id, idx.find(new String(Hex.encode(k.getPublicKey().getFingerprint()))).getKeyID());
+            }
+        }
+
+        // user IDs belong to the primary key
+        assertEquals(rsa.getSecretKey().getKeyID(), idx.find("alice@example.org").getKeyID());
+        assertEquals(dsa.getSecretKey().getKeyID(), idx.find("Bob").getKeyID());
+        assertEquals(rsa.getSecretKey().getKeyID(), idx.find(null).getKeyID());
+        assertNull(idx.find("carol"));
+        assertNull(idx.find("0123456789ABCDEF"));
+    }
+
+    /**
+     * A key ring that can't be read is skipped, and the rest are still indexed.
+     */
+    public void testUnsupportedAlgorithm() throws Exception {
+        byte[] bad = rsa.getEncoded();
+        bad[KeyRingIndex.packets(bad).get(0).body+5] = 99;
+
+        KeyRingIndex idx = index(bad, dsa.getEncoded());
+        assertNull(idx.find("alice"));
+        assertEquals(dsa.getSecretKey().getKeyID(), idx.find("bob").getKeyID());
+        assertEquals(dsa.getSecretKey().getKeyID(), idx.find(null).getKeyID());
+    }
+
+    private KeyRingIndex index(byte[]... rings) throws IOException {
+        file = File.createTempFile("secring", ".gpg");
+        FileOutputStream o = new FileOutputStream(file);
+        try {
+            for (byte[] r : rings)
+                o.write(r);
+        } finally {
+            o.close();
+        }
+        return KeyRingIndex.get(file,null);
+    }
+
+    private static void assertTags(List<Packet> packets, int... tags) {
+        assertEquals(tags.length, packets.size());
+        for (int i=0; i<tags.length; i++)
+            assertEquals(tags[i], packets.get(i).tag);
+    }
+
+    /**
+     * Rewrites the packet headers in the new format, with the longest length encoding of each packet
+     * so that all of them are exercised.
+     */
+    private static byte[] toNewFormat(byte[] data) throws IOException {
+        ByteArrayOutputStream o = new ByteArrayOutputStream();
+        for (Packet p : KeyRingIndex.packets(data)) {
+            int len = p.end-p.body;
+            o.write(0xC0|p.tag);
+            if (len<192 && p.tag!=13) {
+                o.write(len);
+            } else
+            if (len>=192 && len<=8383 && p.tag!=2) {
+                o.write(((len-192)>>8)+192);
+                o.write((len-192)&0xFF);
+            } else {
+                o.write(255);
+                o.write(len>>>24);
+                o.write(len>>16);
+                o.write(len>>8);
+                o.write(len);
+            }
+            o.write(data,p.body,len);
+        }
+        return o.toByteArray();
+    }
+}
@@ -0,0 +1,33 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import junit.framework.TestCase;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.File;
+
+/**
+ * Looks up keys in the keyboxes that GnuPG wrote.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class KeyboxIndexTest extends TestCase {
+    public void testRSA() throws Exception {
+        assertKey("alice", "E4214DDDF8124924CDDD9D20BEFAEBD74978C327", "C57D7E7E32642C9120C4235EEEC724AEE8A98B66");
+    }
+
+    public void testDSA() throws Exception {
+        assertKey("carol", "69F86DA18D77882BFA2F584B8FD94124C50DAB9D", "66390562A1722AB78F3CEE389F2446505292D0E4");
+    }
+
+    private void assertKey(String name, String fingerprint, String keygrip) throws Exception {
+        File kbx = new File(getClass().getResource(name+"/pubring.kbx").toURI());
+        KeyboxIndex index = KeyboxIndex.get(kbx,null);
+        for (String id : new String[]{fingerprint, fingerprint.substring(24), fingerprint.substring(32), name+"@example.org"}) {
+            KeyboxIndex.Key k = index.find(id);
+            assertNotNull(id, k);
+            assertEquals(keygrip, k.keygrip);
+            assertEquals(fingerprint, new String(Hex.encode(index.decode(k).getFingerprint())).toUpperCase());
+        }
+        assertNull(index.find("DEADBEEF"));
+    }
+}
@@ -0,0 +1,71 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.kohsuke.maven.pgp.PassphraseLoader;
+import org.kohsuke.maven.pgp.PgpMojo;
+import org.kohsuke.maven.pgp.Signer;
+import org.kohsuke.maven.pgp.SigningKey;
+
+import java.io.File;
+
+/**
+ * The pass phrase is checked against the key file, not against the key the passphrase loader is given.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class KeyboxLoaderTest extends TestCase {
+    private File cache;
+    private PgpMojo mojo;
+
+    @Override
+    protected void setUp() throws Exception {
+        cache = File.createTempFile("kbxidx","");
+        cache.delete();
+        mojo = new PgpMojo() {
+            @Override
+            protected <T> T lookup(Class<T> role, String hint) {
+                return role==PassphraseLoader.class ? role.cast(new LiteralPassPhraseLoader()) : null;
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(cache);
+    }
+
+    public void testLoad() throws Exception {
+        for (String name : new String[]{"alice","carol"}) {
+            PGPSecretKey key = load(name,"literal:test");
+            PGPPrivateKey pk = key.extractPrivateKey(new char[0], Signer.PROVIDER);
+            assertEquals(key.getKeyID(), pk.getKeyID());
+        }
+    }
+
+    public void testUnprotected() throws Exception {
+        PGPSecretKey key = load("dave",null);
+        assertNotNull(key.extractPrivateKey(new char[0], Signer.PROVIDER));
+    }
+
+    public void testWrongPassphrase() throws Exception {
+        for (String name : new String[]{"alice","carol"}) {
+            try {
+                load(name,"literal:wrong");
+                fail();
+            } catch (MojoExecutionException e) {
+                assertEquals("Passphrase is incorrect", e.getMessage());
+            }
+        }
+    }
+
+    private PGPSecretKey load(String name, String passphrase) throws Exception {
+        File home = new File(getClass().getResource(name).toURI());
+        SigningKey k = new SigningKey();
+        k.passphrase = passphrase;
+        return new KeyboxLoader().load(mojo,k,"home="+home+"&cache="+cache+"&id="+name+"@example.org");
+    }
+}
@@ -0,0 +1,32 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import junit.framework.TestCase;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPUtil;
+
+import java.io.InputStream;
+
+/**
+ * Compares against the keygrips that "gpg --with-keygrip" reports.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class KeygripTest extends TestCase {
+    public void testRSA() throws Exception {
+        assertEquals("C57D7E7E32642C9120C4235EEEC724AEE8A98B66", Keygrip.of(load("alice.pub.asc")));
+    }
+
+    public void testDSA() throws Exception {
+        assertEquals("FF3FC0FABE0D57B840D35ED13C15ADC68879373A", Keygrip.of(load("bob.pub.asc")));
+    }
+
+    static PGPPublicKey load(String name) throws Exception {
+        InputStream in = PGPUtil.getDecoderStream(KeygripTest.class.getResourceAsStream(name));
+        try {
+            return new PGPPublicKeyRing(in).getPublicKey();
+        } finally {
+            in.close();
+        }
+    }
+}
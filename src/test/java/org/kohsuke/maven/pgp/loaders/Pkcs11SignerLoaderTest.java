@@ -0,0 +1,289 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+import org.kohsuke.maven.pgp.DigestSigner;
+import org.kohsuke.maven.pgp.PassphraseLoader;
+import org.kohsuke.maven.pgp.PgpMojo;
+import org.kohsuke.maven.pgp.Signer;
+import org.kohsuke.maven.pgp.SigningKey;
+import org.kohsuke.maven.pgp.TestKeys;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.AuthProvider;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The tests other than {@link #testInvalidSessions()} run against a token of SoftHSM, and are skipped
+ * if it isn't installed. SoftHSM keeps its tokens where SOFTHSM2_CONF says, which the POM points to the build directory.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class Pkcs11SignerLoaderTest extends TestCase {
+    /**
+     * Rejected before the library is loaded or the PIN is asked for.
+     */
+    public void testInvalidSessions() throws Exception {
+        for (String v : new String[]{"0", "-1", "four"}) {
+            try {
+                new Pkcs11SignerLoader().load(new PgpMojo(),new SigningKey(),null,"library=/no/such/lib.so&sessions="+v);
+                fail(v);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("sessions"));
+            }
+        }
+    }
+
+    /**
+     * Signatures are computed concurrently with a pool of sessions that's smaller than the number of threads.
+     */
+    public void testPooledSigning() throws Exception {
+        if (!isAvailable())     return;
+        final Signer signer = load("RSA1024","sessions=2",new Pins(PIN));
+
+        final File dir = createTempDir();
+        try {
+            final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+            Thread[] threads = new Thread[8];
+            for (int i=0; i<threads.length; i++) {
+                final File file = new File(dir,"file"+i), signature = new File(dir,"file"+i+".asc");
+                FileUtils.writeStringToFile(file,"contents "+i);
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j=0; j<4; j++) {
+                                signer.sign(file,signature);
+                                assertTrue(signer.verify(file,signature));
+                            }
+                        } catch (Throwable t) {
+                            errors.add(t);
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread t : threads)
+                t.join();
+            if (!errors.isEmpty())
+                throw (Exception)new Exception(errors.size()+" threads failed").initCause(errors.get(0));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Without an alias, the key is the one whose certificate has the same RSA modulus or DSA y,
+     * among the other keys in the token.
+     */
+    public void testMatchPublicKey() throws Exception {
+        if (!isAvailable())     return;
+        for (String type : new String[]{"RSA1024","DSA1024"})
+            assertSigns(load(type,"",new Pins(PIN)));
+    }
+
+    /**
+     * A rejected PIN is forgotten by the passphrase loader, so that the next attempt asks for it again.
+     */
+    public void testWrongPin() throws Exception {
+        if (!isAvailable())     return;
+        // so that the token isn't left logged in by the other tests
+        ((AuthProvider)provider).logout();
+
+        Pins pins = new Pins("0000",PIN);
+        try {
+            load("RSA1024","",pins);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("PIN"));
+        }
+        assertEquals(1, pins.forgotten);
+
+        assertSigns(load("RSA1024","",pins));
+        assertEquals(1, pins.forgotten);
+    }
+
+    private static void assertSigns(Signer signer) throws Exception {
+        File file = File.createTempFile("pkcs11",".txt"), signature = new File(file.getPath()+".asc");
+        try {
+            FileUtils.writeStringToFile(file,"contents");
+            signer.sign(file,signature);
+            assertTrue(signer.verify(file,signature));
+        } finally {
+            file.delete();
+            signature.delete();
+        }
+    }
+
+    /**
+     * Loads the signer of the given test key through a new loader, which has its own provider.
+     */
+    private Signer load(String type, String opts, final Pins pins) throws Exception {
+        PgpMojo mojo = new PgpMojo() {
+            @Override
+            protected <T> T lookup(Class<T> role, String hint) {
+                return role==PassphraseLoader.class ? role.cast(pins) : null;
+            }
+        };
+        SigningKey key = new SigningKey();
+        key.passphrase = "pins:";
+
+        PGPKeyPair kp = TestKeys.get(type);
+        DigestSigner ds = new Pkcs11SignerLoader().load(mojo,key,kp.getPublicKey(),"library="+library+"&slot="+slot+"&"+opts);
+        return new Signer(kp.getPublicKey(),ds,PGPUtil.SHA256);
+    }
+
+    /**
+     * Gives out PINs in order, and counts how many times one was forgotten.
+     */
+    private static final class Pins extends PassphraseLoader {
+        private final LinkedList<String> values = new LinkedList<String>();
+        int forgotten;
+
+        Pins(String... values) {
+            Collections.addAll(this.values,values);
+        }
+
+        @Override
+        public String load(PgpMojo mojo, PGPSecretKey secretKey, String specifier) throws IOException, MojoExecutionException {
+            return values.size()>1 ? values.removeFirst() : values.getFirst();
+        }
+
+        @Override
+        public void forget(PgpMojo mojo, PGPSecretKey secretKey, String specifier) {
+            forgotten++;
+        }
+    }
+
+    private static final String PIN = "1234";
+
+    private static boolean initialized;
+    private static String library;
+    private static String slot;
+    /**
+     * Used to fill the token, and to log out of it.
+     */
+    private static Provider provider;
+
+    /**
+     * Creates the token once for all the tests, as SoftHSM only looks for tokens when the library is first loaded.
+     */
+    private static synchronized boolean isAvailable() throws Exception {
+        if (!initialized) {
+            initialized = true;
+            try {
+                init();
+            } catch (IOException e) {
+                library = null;
+                System.err.println("Skipping the PKCS#11 tests as SoftHSM isn't available: "+e.getMessage());
+            }
+        }
+        return library!=null;
+    }
+
+    private static void init() throws Exception {
+        String conf = System.getenv("SOFTHSM2_CONF");
+        if (conf==null)
+            throw new IOException("SOFTHSM2_CONF isn't set");
+        for (String path : LIBRARIES)
+            if (new File(path).exists())
+                library = path;
+        if (library==null)
+            throw new IOException("libsofthsm2.so isn't found");
+        if (Security.getProvider("SunPKCS11")==null)
+            throw new IOException("SunPKCS11 isn't available");
+
+        File tokens = new File(new File(conf).getParentFile(),"softhsm2-tokens");
+        FileUtils.deleteDirectory(tokens);
+        tokens.mkdirs();
+        FileUtils.writeStringToFile(new File(conf),
+                "directories.tokendir = "+tokens.getAbsolutePath()+"\nobjectstore.backend = file\nlog.level = ERROR\n");
+
+        String out = exec("softhsm2-util","--init-token","--free","--label","pgp-maven-plugin","--pin",PIN,"--so-pin","5678");
+        Matcher m = Pattern.compile("slot (\\d+)").matcher(out);
+        if (!m.find())
+            throw new IOException("Unexpected output from softhsm2-util: "+out);
+        slot = m.group(1);
+
+        File cfg = File.createTempFile("softhsm",".cfg");
+        try {
+            FileUtils.writeStringToFile(cfg,"name = test\nlibrary = "+library+"\nslot = "+slot+"\n");
+            provider = (Provider)Provider.class.getMethod("configure",String.class).invoke(Security.getProvider("SunPKCS11"),cfg.getPath());
+        } finally {
+            cfg.delete();
+        }
+
+        // a key of each kind that's used by the tests, plus one that's there to be told apart from them
+        KeyStore ks = KeyStore.getInstance("PKCS11",provider);
+        ks.load(null,PIN.toCharArray());
+        store(ks,"decoy",TestKeys.generate("RSA1024"));
+        store(ks,"rsa",TestKeys.get("RSA1024"));
+        store(ks,"dsa",TestKeys.get("DSA1024"));
+    }
+
+    /**
+     * Stores the key with a self-signed certificate, which is how the loader finds it.
+     */
+    private static void store(KeyStore ks, String alias, PGPKeyPair kp) throws Exception {
+        PrivateKey key = kp.getPrivateKey().getKey();
+        X509V3CertificateGenerator g = new X509V3CertificateGenerator();
+        X500Principal name = new X500Principal("CN="+alias);
+        g.setSerialNumber(BigInteger.ONE);
+        g.setIssuerDN(name);
+        g.setSubjectDN(name);
+        g.setNotBefore(new Date());
+        g.setNotAfter(new Date(System.currentTimeMillis()+24L*60*60*1000));
+        g.setPublicKey(kp.getPublicKey().getKey(Signer.PROVIDER));
+        g.setSignatureAlgorithm(key.getAlgorithm().equals("RSA") ? "SHA1withRSA" : "SHA1withDSA");
+        ks.setKeyEntry(alias,key,null,new Certificate[]{g.generate(key)});
+    }
+
+    private static String exec(String... cmd) throws Exception {
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        InputStream in = p.getInputStream();
+        try {
+            String out = IOUtils.toString(in);
+            if (p.waitFor()!=0)
+                throw new IOException(cmd[0]+" failed: "+out);
+            return out;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("pkcs11","");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static final String[] LIBRARIES = {
+        "/usr/lib/softhsm/libsofthsm2.so",
+        "/usr/lib/x86_64-linux-gnu/softhsm/libsofthsm2.so",
+        "/usr/lib64/pkcs11/libsofthsm2.so",
+        "/usr/local/lib/softhsm/libsofthsm2.so",
+        "/opt/homebrew/lib/softhsm/libsofthsm2.so",
+    };
+}
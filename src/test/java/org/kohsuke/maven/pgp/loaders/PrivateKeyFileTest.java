@@ -0,0 +1,63 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import junit.framework.TestCase;
+import org.kohsuke.maven.pgp.Signer;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.security.interfaces.RSAPublicKey;
+
+/**
+ * Decrypts the key files that GnuPG wrote, in both the canonical and the extended format.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class PrivateKeyFileTest extends TestCase {
+    /**
+     * Extended format, openpgp-s2k3-ocb-aes.
+     */
+    public void testOCB() throws Exception {
+        PrivateKeyFile f = load("alice/private-keys-v1.d/C57D7E7E32642C9120C4235EEEC724AEE8A98B66.key");
+        assertTrue(f.isProtected());
+        assertEquals("rsa", f.getAlgorithm());
+
+        SExpression s = f.getSecretParameters("test".toCharArray());
+        BigInteger n = ((RSAPublicKey)KeygripTest.load("alice.pub.asc").getKey(Signer.PROVIDER)).getModulus();
+        assertEquals(n, s.findInteger("p").multiply(s.findInteger("q")));
+    }
+
+    /**
+     * Canonical format, openpgp-s2k3-sha1-aes-cbc.
+     */
+    public void testCBC() throws Exception {
+        PrivateKeyFile f = load("carol/private-keys-v1.d/66390562A1722AB78F3CEE389F2446505292D0E4.key");
+        assertTrue(f.isProtected());
+        assertEquals("dsa", f.getAlgorithm());
+        assertNotNull(f.getSecretParameters("test".toCharArray()).findInteger("x"));
+    }
+
+    public void testUnprotected() throws Exception {
+        PrivateKeyFile f = load("dave/private-keys-v1.d/041DA02EB508FB32A02AA639F1BE7016570C69E1.key");
+        assertFalse(f.isProtected());
+        assertEquals("rsa", f.getAlgorithm());
+        assertNotNull(f.getSecretParameters(null).findInteger("d"));
+    }
+
+    public void testWrongPassphrase() throws Exception {
+        assertIncorrect("alice/private-keys-v1.d/C57D7E7E32642C9120C4235EEEC724AEE8A98B66.key");
+        assertIncorrect("carol/private-keys-v1.d/66390562A1722AB78F3CEE389F2446505292D0E4.key");
+    }
+
+    private void assertIncorrect(String name) throws Exception {
+        try {
+            load(name).getSecretParameters("wrong".toCharArray());
+            fail();
+        } catch (IncorrectPassphraseException e) {
+            // expected
+        }
+    }
+
+    static PrivateKeyFile load(String name) throws Exception {
+        return new PrivateKeyFile(new File(PrivateKeyFileTest.class.getResource(name).toURI()));
+    }
+}
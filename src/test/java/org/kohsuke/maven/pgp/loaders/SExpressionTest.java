@@ -0,0 +1,80 @@
+package org.kohsuke.maven.pgp.loaders;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class SExpressionTest extends TestCase {
+    public void testCanonical() throws Exception {
+        SExpression e = SExpression.parse(bytes("(7:sig-val(3:dsa(1:r2:\u0001\u0002)(1:s1:\u00FF)))"));
+        assertEquals("sig-val", e.getName());
+        assertEquals(2, e.getList().size());
+        assertEquals("dsa", e.getList().get(1).getName());
+        assertEquals(BigInteger.valueOf(0x102), e.findInteger("r"));
+        assertEquals(BigInteger.valueOf(0xFF), e.findInteger("s"));  // unsigned
+        assertNull(e.find("rsa"));
+    }
+
+    public void testCanonicalPosition() throws Exception {
+        byte[] data = bytes("(1:a)3:xyz");
+        int[] pos = new int[1];
+        assertEquals("a", SExpression.parse(data,pos).getName());
+        assertEquals(5, pos[0]);
+        assertEquals("xyz", SExpression.parse(data,pos).getString());
+        assertEquals(data.length, pos[0]);
+    }
+
+    public void testCanonicalMalformed() throws Exception {
+        assertMalformed("(3:abc");
+        assertMalformed("(5:abc)");
+        assertMalformed("abc");
+        assertMalformed("");
+    }
+
+    public void testAdvanced() throws Exception {
+        SExpression e = SExpression.parseAdvanced(
+                "(protected-private-key\n (rsa (n #00AB\n CD#)\n  (e \"\\x01\\000\\x01\")\n  (comment |aGVsbG8=|)\n  (v 3:a b)))");
+        assertEquals("protected-private-key", e.getName());
+        assertEquals(new BigInteger("ABCD",16), e.findInteger("n"));
+        assertEquals(BigInteger.valueOf(0x10001), e.findInteger("e"));
+        assertEquals("hello", e.find("comment").getList().get(1).getString());
+        assertEquals("a b", e.find("v").getList().get(1).getString());
+    }
+
+    public void testAdvancedEscapes() throws Exception {
+        SExpression e = SExpression.parseAdvanced("\"a\\tb\\n\\\"c\\\\\"");
+        assertEquals("a\tb\n\"c\\", e.getString());
+    }
+
+    public void testAdvancedMalformed() throws Exception {
+        for (String s : new String[]{"(a", "#0A", "\"abc", ")", "(a [b])"}) {
+            try {
+                SExpression.parseAdvanced(s);
+                fail(s);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testToString() throws Exception {
+        assertEquals("(rsa (s #1ff#))", SExpression.parse(bytes("(3:rsa(1:s2:\u0001\u00FF))")).toString());
+    }
+
+    private static void assertMalformed(String s) throws Exception {
+        try {
+            SExpression.parse(bytes(s));
+            fail(s);
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] bytes(String s) throws Exception {
+        return s.getBytes("ISO-8859-1");
+    }
+}